@@ -1,8 +1,26 @@
 public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 	String label;
 
+	// Filled in by SymbolTable.intern(), -1 until then
+	int id = -1;
+
+	// Worked out once here rather than on every isTerminal()/hashCode() call
+	final byte kind;
+	private final int hash;
+
 	public AlphabetCharacter(String label) {
 		this.label = label.trim();
+		this.hash = this.label.hashCode();
+
+		if ("lambda".equals(this.label)) {
+			kind = SymbolTable.LAMBDA;
+		} else if ("$".equals(this.label)) {
+			kind = SymbolTable.EOF;
+		} else if (isTerminalToken(this.label)) {
+			kind = SymbolTable.TERMINAL;
+		} else {
+			kind = SymbolTable.NON_TERMINAL;
+		}
 	}
 
 	public AlphabetCharacter(AlphabetCharacter toBeCloned) {
@@ -19,7 +37,7 @@ public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 	 * @return see above
 	 */
 	public boolean isTerminal() {
-		return isTerminalToken(this.label);
+		return kind == SymbolTable.TERMINAL;
 	}
 
 	/**
@@ -27,7 +45,7 @@ public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 	 * @return see above
 	 */
 	public boolean isNonTerminal() {
-		return !isTerminalToken(label) && !isLambda() && !isEOF();
+		return kind == SymbolTable.NON_TERMINAL;
 	}
 
 	/**
@@ -35,11 +53,19 @@ public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 	 * @return == "lambda"
 	 */
 	public boolean isLambda() {
-		return "lambda".equals(label);
+		return kind == SymbolTable.LAMBDA;
 	}
 	
 	public boolean isEOF() {
-		return "$".equals(label);
+		return kind == SymbolTable.EOF;
+	}
+
+	/**
+	 * The id this symbol was given by its grammar's SymbolTable
+	 * @return the id, or -1 if it was never interned
+	 */
+	public int getId() {
+		return id;
 	}
 
 	public boolean equals(String a) {
@@ -48,7 +74,7 @@ public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 
 	@Override
 	public int hashCode() {
-		return this.toString().hashCode();
+		return hash;
 	}
 
 	@Override
@@ -61,7 +87,7 @@ public class AlphabetCharacter implements Comparable<AlphabetCharacter> {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		AlphabetCharacter that = (AlphabetCharacter) o;
-		return label.equals(that.label);
+		return hash == that.hash && label.equals(that.label);
 	}
 
 	@Override
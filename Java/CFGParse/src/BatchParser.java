@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Parses many .tok files with one grammar, on a pool of threads, handing back a Result per file as each one
+ * finishes.
+ *  <p>The tables are built once and shared: the parsers keep no state between parses. Every file is read through a
+ *  MappedTokenSource, and at most maxInFlight files are being parsed (or waiting for their result to be taken) at any
+ *  time, so memory stays bounded however many files there are. With LL1Parser no tree is built at all.</p>
+ */
+public class BatchParser {
+    /**
+     * What parsing one file came to
+     */
+    public static class Result {
+        public final Path file;
+        // The number of nodes of the parse tree, or -1 if it failed
+        public final long nodes;
+        // Why it failed, or null if it didn't
+        public final Throwable error;
+        public final long millis;
+
+        Result(Path file, long nodes, Throwable error, long millis) {
+            this.file = file;
+            this.nodes = nodes;
+            this.error = error;
+            this.millis = millis;
+        }
+
+        public boolean succeeded() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            if (succeeded()) {
+                return "OK " + file + " (" + nodes + " nodes, " + millis + " ms)";
+            }
+
+            return "FAILED " + file + ": " + error;
+        }
+    }
+
+    /**
+     * Parses one token stream, counting the nodes of its tree
+     */
+    private interface ParseFunction {
+        long parse(TokenSource tokens) throws Exception;
+    }
+
+    private final SymbolTable symbols;
+    private final ParseFunction parseFunction;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+
+    /**
+     * Initializes a batch parser that uses an LL(1) parser
+     * @param parser - the parser
+     * @param grammar - its grammar
+     * @param pool - runs the parses, e.g. a ForkJoinPool or a fixed thread pool
+     * @param maxInFlight - the most files to have open at once; e.g. twice the pool's size
+     */
+    public BatchParser(LL1Parser parser, CFG grammar, ExecutorService pool, int maxInFlight) {
+        this(grammar.getSymbolTable(), tokens -> {
+            long[] nodes = new long[1];
+            parser.parse(tokens, grammar.getStartingSymbol(), new ParseListener() {
+                @Override
+                public void enterNonterminal(AlphabetCharacter nonTerminal, ProductionRule rule) {
+                    nodes[0]++;
+                }
+
+                @Override
+                public void terminal(AlphabetCharacter terminal) {
+                    nodes[0]++;
+                }
+
+                @Override
+                public void exitNonterminal(AlphabetCharacter nonTerminal) {
+                }
+            });
+            return nodes[0];
+        }, pool, maxInFlight);
+    }
+
+    /**
+     * Initializes a batch parser that uses a shift-reduce parser
+     * @param parser - the parser
+     * @param grammar - its grammar
+     * @param pool - runs the parses
+     * @param maxInFlight - the most files to have open at once
+     */
+    public BatchParser(ShiftReduceParser parser, CFG grammar, ExecutorService pool, int maxInFlight) {
+        this(grammar.getSymbolTable(), tokens -> countNodes(parser.parse(tokens)), pool, maxInFlight);
+    }
+
+    private BatchParser(SymbolTable symbols, ParseFunction parseFunction, ExecutorService pool, int maxInFlight) {
+        this.symbols = symbols;
+        this.parseFunction = parseFunction;
+        this.pool = pool;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Parses every file, handing each one's result to onResult as soon as it's done (so not in order). onResult is
+     * only ever called from the calling thread, one result at a time.
+     * @param files - the files; only pulled from as there's room for more
+     * @param onResult - gets the results
+     * @return the number of files that failed
+     */
+    public int parseAll(Iterator<Path> files, Consumer<Result> onResult) throws InterruptedException {
+        BlockingQueue<Result> finished = new LinkedBlockingQueue<>();
+        int inFlight = 0;
+        int failures = 0;
+
+        while (inFlight > 0 || files.hasNext()) {
+            while (inFlight < maxInFlight && files.hasNext()) {
+                Path file = files.next();
+                pool.execute(() -> {
+                    try {
+                        finished.add(parse(file));
+                    } catch (Throwable e) {
+                        // Still report it, or we'd wait for it forever
+                        finished.add(new Result(file, -1, e, 0));
+                    }
+                });
+                inFlight++;
+            }
+
+            Result result = finished.take();
+            inFlight--;
+            if (!result.succeeded()) {
+                failures++;
+            }
+            onResult.accept(result);
+        }
+
+        return failures;
+    }
+
+    /**
+     * Parses one file, on the calling thread
+     * @param file - a .tok file
+     * @return how it went
+     */
+    public Result parse(Path file) {
+        long start = System.nanoTime();
+        try (MappedTokenSource tokens = new MappedTokenSource(file, symbols)) {
+            long nodes = parseFunction.parse(tokens);
+            return new Result(file, nodes, null, (System.nanoTime() - start) / 1000000);
+        } catch (Exception | StackOverflowError e) {
+            return new Result(file, -1, e, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * The .tok files under a directory (all the way down), or the file itself if it isn't one. Found as they're
+     * needed, so the stream has to be closed.
+     * @param path - a directory or a file
+     * @return the files
+     */
+    public static Stream<Path> tokenFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Stream.of(path);
+        }
+
+        return Files.walk(path).filter(p -> p.toString().endsWith(".tok") && Files.isRegularFile(p));
+    }
+
+    private static long countNodes(ParseTreeNode root) {
+        long count = 0;
+        Deque<ParseTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ParseTreeNode node = stack.pop();
+            count++;
+            for (ParseTreeNode child : node.children) {
+                stack.push(child);
+            }
+        }
+
+        return count;
+    }
+}
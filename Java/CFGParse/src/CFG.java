@@ -1,7 +1,8 @@
 import java.util.*;
-import java.io.File;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Represents a CFG to be used in an LL(1) parser.
@@ -12,8 +13,14 @@ public class CFG {
 	private Set<AlphabetCharacter> terminals = new TreeSet<>();
 	private Set<AlphabetCharacter> derivesToLambdaSet = new TreeSet<>();
 
-	// nonterminal -> list[production rules]
-	private Map<AlphabetCharacter, ArrayList<ProductionRule>> productions = new HashMap<>();
+	// Every symbol is interned once; everything below is indexed by symbol id
+	private SymbolTable symbols = new SymbolTable();
+	private GrammarAnalysis analysis;
+
+	// All production rules in file order (ProductionRule.index is the position in here),
+	// and symbol id -> list[production rules] with that symbol on the LHS
+	private ArrayList<ProductionRule> productionRules = new ArrayList<>();
+	private ArrayList<ArrayList<ProductionRule>> productions = new ArrayList<>();
 	private AlphabetCharacter startingSymbol = null;
 
 	/**
@@ -21,75 +28,73 @@ public class CFG {
 	 * @param inFile Name of the file to be read in
 	 */
 	public CFG(String inFile) throws Exception {
-		File file = new File(inFile);
-		Scanner scanner = new Scanner(file);
-		AlphabetCharacter currentLHS = null;
-
-		// Read file 1 line at a time
-		while (scanner.hasNextLine()) {
-			String line = scanner.nextLine();
-			// Skip spurious empty lines (thx Keith)
-			if (line.length() < 1) {
-				continue;
-			}
+		this(Paths.get(inFile));
+	}
 
-			// If this is a proper file, there's 2 cases here:
-			// a) [lhs] -> [rhs]
-			// b)       | [rhs], which uses the previously parsed LHS
-			Pattern case1 = Pattern.compile("(?<LHS>.+) -> (?<RHS>.+)");
-			Pattern case2 = Pattern.compile("(?: +)\\| (?<RHS>.+)");
-			ProductionRule currentRHS = new ProductionRule();
-			Matcher m = case1.matcher(line);
-
-			// If the first line matches, then extract the two sides and move on
-			if (m.matches()) {
-				currentLHS = new AlphabetCharacter(m.group("LHS"));
-			} else {
-				// Else, hope its an alternation line
-				m = case2.matcher(line);
+	/**
+	 * Builds the CFG from a (UTF-8) file
+	 * @param inFile the file to be read in
+	 */
+	public CFG(Path inFile) throws Exception {
+		new GrammarReader(this).read(inFile);
+	}
 
-				if (!m.matches()) {
-					throw new Exception("Invalid line: " + line);
-				}
-			}
+	/**
+	 * Builds the CFG from a stream of UTF-8 text. The stream isn't closed.
+	 * @param in the grammar
+	 */
+	public CFG(InputStream in) throws Exception {
+		new GrammarReader(this).read(in);
+	}
 
-			// Treat the string "lambda" as 1 character.
-			if (m.group("RHS").equals("lambda")) {
-				AlphabetCharacter c = new AlphabetCharacter("lambda");
-				currentRHS.addCharacterToRHS(c);
-			} else {
-				// Add all space-delimited characters on the rightSideString to the appropriate set and to production object
-				String[] tokens = m.group("RHS").split(" ");
-				for (String token : tokens) {
-					AlphabetCharacter c = new AlphabetCharacter(token);
-
-					if (c.isNonTerminal()) {
-						nonTerminals.add(c);
-					} else if (!c.isEOF() && !c.isLambda()) {
-						terminals.add(c);
-					}
-
-					currentRHS.addCharacterToRHS(c);
-				}
-			}
+	/**
+	 * Builds the CFG from a Reader. The reader isn't closed.
+	 * @param in the grammar
+	 */
+	public CFG(Reader in) throws Exception {
+		new GrammarReader(this).read(in);
+	}
 
-			// Add the productionrule to the map
-			if (!productions.containsKey(currentLHS)) {
-				productions.put(currentLHS, new ArrayList<>());
-			}
+	/**
+	 * An empty grammar, for CompiledGrammar to fill in with addLoadedRule() and finishLoading(GrammarAnalysis)
+	 */
+	CFG() {
+	}
 
-			currentRHS.lhs = currentLHS;
-			productions.get(currentLHS).add(currentRHS);
-			nonTerminals.add(currentLHS);
+	/**
+	 * Called by GrammarReader for every rule it reads. The symbols must already be interned in this CFG's table.
+	 * @param lhs - the left-hand side
+	 * @param rhs - the right-hand side
+	 */
+	void addLoadedRule(AlphabetCharacter lhs, ArrayList<AlphabetCharacter> rhs) {
+		for (AlphabetCharacter c : rhs) {
+			addToSymbolSets(c);
+		}
 
-			// The starting symbol is always the first one in the file
-			if (startingSymbol == null) {
-				startingSymbol = currentLHS;
-			}
+		ProductionRule p = new ProductionRule(lhs, rhs);
+		addToProductions(p);
+		nonTerminals.add(lhs);
+
+		// The starting symbol is always the first one in the file
+		if (startingSymbol == null) {
+			startingSymbol = lhs;
 		}
+	}
+
+	/**
+	 * Called by GrammarReader once every rule has been read
+	 */
+	void finishLoading() {
+		// Generate the derivesToLambda, First, Follow and predict sets
+		analyze();
+	}
 
-		// Generate the derivesToLambda set
-		generateDerivesToLambdaSet();
+	/**
+	 * Same as above, but with an analysis that was computed earlier (see CompiledGrammar)
+	 * @param cached - the derivesToLambda, First, Follow and predict sets of this grammar
+	 */
+	void finishLoading(GrammarAnalysis cached) {
+		setAnalysis(cached);
 	}
 
 	/**
@@ -98,7 +103,45 @@ public class CFG {
 	 * @return - a list of the RHSs
 	 */
 	public ArrayList<ProductionRule> getProductionsOf(AlphabetCharacter nonTerminal) {
-		return productions.get(nonTerminal);
+		return getProductionsOf(symbols.idOf(nonTerminal));
+	}
+
+	/**
+	 * Same as above, but by symbol id
+	 * @param id - the id of the LHS
+	 * @return - the rules, or null if id isn't a non-terminal with productions
+	 */
+	public ArrayList<ProductionRule> getProductionsOf(int id) {
+		if (id < 0 || id >= productions.size()) {
+			return null;
+		}
+
+		return productions.get(id);
+	}
+
+	/**
+	 * Returns the production rule with the given index
+	 * @param index - see ProductionRule.getIndex()
+	 * @return the rule
+	 */
+	public ProductionRule getProductionRule(int index) {
+		return productionRules.get(index);
+	}
+
+	/**
+	 * Returns every production rule of this grammar, in the order they were read
+	 * @return the rules
+	 */
+	public List<ProductionRule> getProductionRules() {
+		return productionRules;
+	}
+
+	/**
+	 * The table every symbol of this grammar is interned in
+	 * @return the symbol table
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
 	}
 
 	/**
@@ -109,10 +152,188 @@ public class CFG {
 		Set<AlphabetCharacter> result = new HashSet<>();
 		result.addAll(nonTerminals);
 		result.addAll(terminals);
-		result.add(new AlphabetCharacter("$"));
+		result.add(symbols.get(SymbolTable.EOF_ID));
 		return result;
 	}
 
+	/**
+	 * Whether the symbol with this id derives to lambda
+	 * @param id - the symbol's id
+	 * @return see above
+	 */
+	public boolean derivesToLambda(int id) {
+		return analysis.derivesToLambda(id);
+	}
+
+	/**
+	 * Adds the rule lhs -> rhs to this grammar. Only the derivesToLambda/First/Follow/predict sets that depend on the
+	 * new rule are recomputed.
+	 * @param lhs - the left-hand side
+	 * @param rhs - the right-hand side; an empty list is the same as lambda
+	 * @return what changed, for patchParsingTable() and SLRParser.applyGrammarChange()
+	 */
+	public GrammarChange addProductionRule(AlphabetCharacter lhs, List<AlphabetCharacter> rhs) {
+		ProductionRule p = new ProductionRule();
+		p.lhs = symbols.intern(lhs);
+		addToSymbolSets(p.lhs);
+
+		for (AlphabetCharacter c : rhs) {
+			AlphabetCharacter interned = symbols.intern(c);
+			addToSymbolSets(interned);
+			p.addCharacterToRHS(interned);
+		}
+
+		if (p.rhs.isEmpty()) {
+			p.addCharacterToRHS(symbols.get(SymbolTable.LAMBDA_ID));
+		}
+
+		if (startingSymbol == null) {
+			startingSymbol = p.lhs;
+		}
+
+		addToProductions(p);
+		GrammarChange change = analysis.ruleAdded(p);
+		updateDerivesToLambdaSet(change);
+
+		return change;
+	}
+
+	/**
+	 * Removes a rule from this grammar. The last rule of the grammar takes over the removed rule's index.
+	 * Only the derivesToLambda/First/Follow/predict sets that depended on the rule are recomputed.
+	 * @param p - the rule (or one equal to it)
+	 * @return what changed, for patchParsingTable() and SLRParser.applyGrammarChange()
+	 */
+	public GrammarChange removeProductionRule(ProductionRule p) throws Exception {
+		ProductionRule rule = findProductionRule(p);
+		if (rule == null) {
+			throw new Exception("No such production rule: " + p);
+		}
+
+		int oldIndex = rule.index;
+		ProductionRule moved = productionRules.remove(productionRules.size() - 1);
+		if (moved == rule) {
+			moved = null;
+		} else {
+			productionRules.set(oldIndex, moved);
+			moved.index = oldIndex;
+		}
+		rule.index = -1;
+
+		ArrayList<ProductionRule> lhsRules = productions.get(rule.lhs.id);
+		lhsRules.removeIf(r -> r == rule);
+		if (lhsRules.isEmpty()) {
+			productions.set(rule.lhs.id, null);
+		}
+
+		GrammarChange change = analysis.ruleRemoved(rule, oldIndex, moved);
+		updateDerivesToLambdaSet(change);
+
+		// Drop symbols that aren't used anywhere anymore
+		removeFromSymbolSetsIfUnused(rule.lhs);
+		for (AlphabetCharacter c : rule.rhs) {
+			removeFromSymbolSetsIfUnused(c);
+		}
+
+		return change;
+	}
+
+	/**
+	 * Brings an LL1ParsingTable generated by generateParsingTable() up to date with a change, rebuilding only the rows
+	 * of the non-terminals whose predict sets changed
+	 * @param table - the table to patch; left as it is, so parses using it aren't disturbed
+	 * @param change - returned by addProductionRule()/removeProductionRule()
+	 * @return the patched table
+	 * @throws LL1ConflictException if the grammar isn't LL(1) anymore
+	 */
+	public LL1ParsingTable patchParsingTable(LL1ParsingTable table, GrammarChange change) throws Exception {
+		LL1ParsingTable.Builder result = new LL1ParsingTable.Builder(table);
+		result.ensureCapacity(symbols.size());
+
+		BitSet rows = change.affectedNonTerminals;
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			result.clearRow(row);
+			addToParsingTable(result, row);
+		}
+
+		return result.build();
+	}
+
+	/**
+	 * The index of p in this grammar, or of the rule equal to it
+	 * @param p - a production rule
+	 * @return the index, or -1 if this grammar doesn't have the rule
+	 */
+	int indexOf(ProductionRule p) {
+		ProductionRule rule = findProductionRule(p);
+		return rule == null ? -1 : rule.index;
+	}
+
+	private ProductionRule findProductionRule(ProductionRule p) {
+		if (p.index >= 0 && p.index < productionRules.size() && productionRules.get(p.index) == p) {
+			return p;
+		}
+
+		ArrayList<ProductionRule> candidates = p.lhs == null ? null : getProductionsOf(p.lhs);
+		if (candidates == null) {
+			return null;
+		}
+
+		for (ProductionRule candidate : candidates) {
+			if (candidate.equals(p)) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+
+	private void addToSymbolSets(AlphabetCharacter c) {
+		if (c.isNonTerminal()) {
+			nonTerminals.add(c);
+		} else if (!c.isEOF() && !c.isLambda()) {
+			terminals.add(c);
+		}
+	}
+
+	private void removeFromSymbolSetsIfUnused(AlphabetCharacter c) {
+		if (c == startingSymbol || getProductionsOf(c.id) != null || !analysis.getRulesContaining(c.id).isEmpty()) {
+			return;
+		}
+
+		nonTerminals.remove(c);
+		terminals.remove(c);
+	}
+
+	private void updateDerivesToLambdaSet(GrammarChange change) {
+		BitSet changed = change.derivesToLambdaChanged;
+		for (int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)) {
+			if (analysis.derivesToLambda(id)) {
+				derivesToLambdaSet.add(symbols.get(id));
+			} else {
+				derivesToLambdaSet.remove(symbols.get(id));
+			}
+		}
+	}
+
+	/**
+	 * Numbers p and files it under its LHS
+	 * @param p - a rule whose lhs has been interned
+	 */
+	private void addToProductions(ProductionRule p) {
+		p.index = productionRules.size();
+		productionRules.add(p);
+
+		while (productions.size() <= p.lhs.id) {
+			productions.add(null);
+		}
+
+		if (productions.get(p.lhs.id) == null) {
+			productions.set(p.lhs.id, new ArrayList<>());
+		}
+		productions.get(p.lhs.id).add(p);
+	}
+
 	/**
 	 * Useful for debugging. Prints the derivesToLambda set
 	 */
@@ -128,7 +349,7 @@ public class CFG {
 	 * Prints the first set of every LHS. Good for debugging.
 	 */
 	public void printAllFirstSets() {
-		for (AlphabetCharacter l : productions.keySet()) {
+		for (AlphabetCharacter l : lhsSymbols()) {
 			StringBuilder result = new StringBuilder("First(" + l + ") = {");
 			Set<AlphabetCharacter> firstSet = firstSetOf(l);
 			for (AlphabetCharacter c : firstSet) {
@@ -149,9 +370,9 @@ public class CFG {
 	 * Derives the followSet of every non-terminal and prints the result. Useful for debugging
 	 */
 	public void printAllFollowSets() {
-		for (AlphabetCharacter l : productions.keySet()) {
+		for (AlphabetCharacter l : lhsSymbols()) {
 			StringBuilder result = new StringBuilder("Follow(" + l + ") = {");
-			Set<AlphabetCharacter> followSet = deriveFollowSetOfNonTerminal(l, new HashSet<>());
+			Set<AlphabetCharacter> followSet = analysis.toSymbolSet(analysis.getFollowSet(l.id));
 			for (AlphabetCharacter c : followSet) {
 				result.append(c).append(", ");
 			}
@@ -170,10 +391,10 @@ public class CFG {
 	 * Prints the predictSet() of every production rule
 	 */
 	public void printAllPredictSets() {
-		for (Map.Entry<AlphabetCharacter, ArrayList<ProductionRule>> entry : productions.entrySet()) {
-			for (ProductionRule p : entry.getValue()) {
-				StringBuilder result = new StringBuilder("Predict(" + entry.getKey() + " " + p.toString().trim() + ") = {");
-				Set<AlphabetCharacter> predictSet = getPredictSetOfProductionRule(entry.getKey(), p);
+		for (AlphabetCharacter l : lhsSymbols()) {
+			for (ProductionRule p : getProductionsOf(l.id)) {
+				StringBuilder result = new StringBuilder("Predict(" + l + " " + p.toString().trim() + ") = {");
+				Set<AlphabetCharacter> predictSet = getPredictSetOfProductionRule(l, p);
 
 				for (AlphabetCharacter c : predictSet) {
 					result.append(c).append(", ");
@@ -195,14 +416,14 @@ public class CFG {
 	 * @return true if they are, false otherwise
 	 */
 	public boolean arePredictSetsDisjoint() {
-		for (Map.Entry<AlphabetCharacter, ArrayList<ProductionRule>> entry : productions.entrySet()) {
-			Set<AlphabetCharacter> predictSets = new TreeSet<>();
-			for (ProductionRule p : entry.getValue()) {
-				Set<AlphabetCharacter> tempSet = getPredictSetOfProductionRule(entry.getKey(), p);
+		for (AlphabetCharacter l : lhsSymbols()) {
+			BitSet predictSets = new BitSet();
+			for (ProductionRule p : getProductionsOf(l.id)) {
+				BitSet tempSet = analysis.getPredictSet(p.index);
 
 				// If disjoint, union. Else, return false.
-				if (Collections.disjoint(tempSet, predictSets)) {
-					predictSets.addAll(tempSet);
+				if (!tempSet.intersects(predictSets)) {
+					predictSets.or(tempSet);
 				} else {
 					return false;
 				}
@@ -228,6 +449,14 @@ public class CFG {
 		return nonTerminals;
 	}
 
+	/**
+	 * Returns all terminals.
+	 * @return the terminals
+	 */
+	public Set<AlphabetCharacter> getTerminals() {
+		return terminals;
+	}
+
 	/**
 	 * Returns the start symbol of this CFG, usually "S" or "START"
 	 * @return - the start symbol
@@ -239,26 +468,39 @@ public class CFG {
 	/**
 	 * Generates and returns the LL1ParsingTable of this grammar (if possible)
 	 * @return - the result
+	 * @throws LL1ConflictException if the grammar isn't LL(1)
 	 */
 	public LL1ParsingTable generateParsingTable() throws Exception {
-		LL1ParsingTable result = new LL1ParsingTable();
+		LL1ParsingTable.Builder result = new LL1ParsingTable.Builder(symbols);
 
 		// For every non-terminal, look at every production rule
-		for (Map.Entry<AlphabetCharacter, ArrayList<ProductionRule>> entry : productions.entrySet()) {
-			AlphabetCharacter nonTerminal = entry.getKey();
+		for (AlphabetCharacter nonTerminal : lhsSymbols()) {
+			addToParsingTable(result, nonTerminal.id);
+		}
 
-			// For every production rule, generate the predict set
-			for (ProductionRule p : entry.getValue()) {
-				Set<AlphabetCharacter> predictSet = getPredictSetOfProductionRule(entry.getKey(), p);
+		return result.build();
+	}
 
-				// For every terminal in the predict set, add to the LL1 table.
-				for (AlphabetCharacter terminal : predictSet) {
-					result.addProductionRule(nonTerminal, terminal, p);
-				}
-			}
+	/**
+	 * Fills in the row of one non-terminal of an LL1ParsingTable
+	 * @param table - the table
+	 * @param nonTerminal - the id of the non-terminal
+	 */
+	private void addToParsingTable(LL1ParsingTable.Builder table, int nonTerminal) throws Exception {
+		ArrayList<ProductionRule> rules = getProductionsOf(nonTerminal);
+		if (rules == null) {
+			return;
 		}
 
-		return result;
+		// For every production rule, look up the predict set
+		for (ProductionRule p : rules) {
+			BitSet predictSet = analysis.getPredictSet(p.index);
+
+			// For every terminal in the predict set, add to the LL1 table.
+			for (int terminal = predictSet.nextSetBit(0); terminal >= 0; terminal = predictSet.nextSetBit(terminal + 1)) {
+				table.addProductionRule(nonTerminal, terminal, p);
+			}
+		}
 	}
 
 	/**
@@ -268,209 +510,71 @@ public class CFG {
 	 * @return the result
 	 */
 	private Set<AlphabetCharacter> getPredictSetOfProductionRule(AlphabetCharacter LHS, ProductionRule p) {
-		Set<AlphabetCharacter> result = deriveFirstSetOfProductionRule(p.rhs, new HashSet<>());
-
-		if (entireRuleDerivesToLambda(p)) {
-			result.addAll(deriveFollowSetOfNonTerminal(LHS, new HashSet<>()));
-		}
-
-		return result;
+		return analysis.toSymbolSet(analysis.getPredictSet(p.index));
 	}
 
 	/**
-	 * Calls derivesToLambda? on all non-terminals
+	 * Runs the grammar analysis (derivesToLambda, First, Follow and predict sets) and caches the result
 	 */
-	private void generateDerivesToLambdaSet() {
-		for (AlphabetCharacter l : productions.keySet()) {
-			if (this.derivesToLambda(l, new Stack<>())) {
-				derivesToLambdaSet.add(l);
-			}
-		}
+	private void analyze() {
+		setAnalysis(new GrammarAnalysis(this));
 	}
 
-	/**
-	 * Creates the first set of AlphabetCharacter l by calling deriveFirstSet() on all production rules
-	 * @param l - Alphabet character to find the firstSet of
-	 * @return the resulting set
-	 */
-	public Set<AlphabetCharacter> firstSetOf(AlphabetCharacter l) {
-		if (!productions.containsKey(l)) {
-			return new TreeSet<>();
-		}
+	private void setAnalysis(GrammarAnalysis analysis) {
+		this.analysis = analysis;
 
-		Set<AlphabetCharacter> firstSet = new TreeSet<>();
-		for (ProductionRule rhs : productions.get(l)) {
-			firstSet.addAll(deriveFirstSetOfProductionRule(rhs.rhs, new TreeSet<>()));
-		}
-
-		return firstSet;
+		derivesToLambdaSet = analysis.toSymbolSet(analysis.getDerivesToLambda());
 	}
 
 	/**
-	 * Implements the derivesToLambda procedure given in Keith's pseudocode
-	 * @param l - AlphabetCharacter asked about
-	 * @param charStack - An empty stack
-	 * @return yes or no
+	 * The cached derivesToLambda/First/Follow/predict sets of this grammar
+	 * @return the analysis
 	 */
-	private boolean derivesToLambda(AlphabetCharacter l, Stack<Pair<ProductionRule, AlphabetCharacter>> charStack) {
-		for (ProductionRule p : productions.get(l)) {
-			if (p.isLambdaProduction()) {
-				return true;
-			}
-
-			if (p.containsTerminal()) {
-				continue;
-			}
-
-			boolean allDeriveToLambda = true;
-			for (AlphabetCharacter xi : p.rhs) {
-				Pair<ProductionRule, AlphabetCharacter> thisPair = new Pair<>(p, xi);
-				if (charStack.contains(thisPair)) {
-					continue;
-				}
-
-				charStack.push(thisPair);
-				allDeriveToLambda = derivesToLambda(xi, charStack);
-				charStack.pop();
-
-				if (!allDeriveToLambda) {
-					break;
-				}
-			}
+	public GrammarAnalysis getAnalysis() {
+		return analysis;
+	}
 
-			if (allDeriveToLambda) {
-				return true;
+	/**
+	 * Every symbol that has at least one production rule, in id order
+	 * @return see above
+	 */
+	private List<AlphabetCharacter> lhsSymbols() {
+		List<AlphabetCharacter> result = new ArrayList<>();
+		for (int id = 0; id < productions.size(); id++) {
+			if (productions.get(id) != null) {
+				result.add(symbols.get(id));
 			}
 		}
 
-		return false;
+		return result;
 	}
 
 	/**
-	 * Implements deriveFirstSet() of his follow code.
-	 * 	To find the firstSet of a non-terminal, call this function every production rule of said character
-	 * @param xBeta - the RHS of a production rule.
-	 * @param visitedSet - just pass an empty set on first call. This is how we track what we've visited in this recursive function
-	 * @return The first set of this xBeta
+	 * Returns the first set of AlphabetCharacter l
+	 * @param l - Alphabet character to find the firstSet of
+	 * @return the resulting set
 	 */
-	private Set<AlphabetCharacter> deriveFirstSetOfProductionRule(ArrayList<AlphabetCharacter> xBeta, Set<AlphabetCharacter> visitedSet) {
-		//xBeta is a valid sequence of grammar elements and visitedSet is an empty set
-		// If xBeta is empty, return an empty set
-		if (xBeta.isEmpty()) {
+	public Set<AlphabetCharacter> firstSetOf(AlphabetCharacter l) {
+		if (getProductionsOf(l) == null) {
 			return new TreeSet<>();
 		}
 
-		AlphabetCharacter x = xBeta.get(0); // x is first symbol in sequence of grammar elements
-
-		// Deep-copy xBeta to beta, so that we don't change the original ArrayList passed in.
-		ArrayList<AlphabetCharacter> beta = new ArrayList<>(xBeta.size());
-		for (AlphabetCharacter gamma : xBeta) {
-			beta.add(new AlphabetCharacter(gamma.label));
-		}
-        beta.remove(0);
-
-        if (!x.isNonTerminal()) { //if x is a terminal then return x
-            Set<AlphabetCharacter> xSet = new TreeSet<>();
-
-            // Only add to set if *not* lambda
-            if (!x.isLambda()) {
-				xSet.add(x);
-			}
-            return xSet;
-        }
-
-        Set<AlphabetCharacter> F = new TreeSet<>();
-
-        if (!visitedSet.contains(x)) { //if x is not in set visitedSet
-            visitedSet.add(x);
-            for (ProductionRule p : productions.get(x)) {
-                ArrayList<AlphabetCharacter> rightHandSide = p.rhs; //let rightHandSide be the RHS of p
-                F.addAll(deriveFirstSetOfProductionRule(rightHandSide, visitedSet));
-            }
-        }
-
-        if (derivesToLambda(x, new Stack<>())) {
-			F.addAll(deriveFirstSetOfProductionRule(beta, visitedSet));
-        }
-
-        return F;
-    }
+		return analysis.toSymbolSet(analysis.getFirstSet(symbols.idOf(l)));
+	}
 
 	/**
-	 * Derives the followSet of a nonterminal A
+	 * Returns the followSet of a nonterminal A
 	 * @param A - a nonterminal
-	 * @param visitedSet - initially an empty set.
+	 * @param visitedSet - unused, the follow sets are all computed up front now. Kept so existing callers still work.
 	 * @return the followSet of nonterminal A
 	 */
 	public Set<AlphabetCharacter> deriveFollowSetOfNonTerminal(AlphabetCharacter A, Set<AlphabetCharacter> visitedSet) {
-		if (visitedSet.contains(A)) {
+		int id = symbols.idOf(A);
+		if (id < 0) {
 			return new TreeSet<>();
 		}
 
-		visitedSet.add(A);
-		Set<AlphabetCharacter> resultingSet = new TreeSet<>();
-
-		// for each ProductionRule *p* with A on RHS
-		for (Map.Entry<AlphabetCharacter, ArrayList<ProductionRule>> entry : productions.entrySet()) {
-			ArrayList<ProductionRule> rhs = entry.getValue();
-
-			for (ProductionRule p : rhs) {
-				if (!p.rhs.contains(A)) {
-					continue;
-				}
-
-				// for each instance of A on rhs of p
-				for (int i = 0; i < p.rhs.size(); i++) {
-					AlphabetCharacter c = p.rhs.get(i);
-					if (!c.equals(A)) {
-						continue;
-					}
-
-					// Deep copy over to xBeta everything to the right of this instance of A
-					ArrayList<AlphabetCharacter> xBeta = new ArrayList<>();
-					for (int j = i + 1; j < p.rhs.size(); j++) {
-						xBeta.add(new AlphabetCharacter(p.rhs.get(j)));
-					}
-
-					if (!xBeta.isEmpty()) {
-						resultingSet.addAll(deriveFirstSetOfProductionRule(xBeta, new HashSet<>()));
-					}
-
-					ProductionRule temp = new ProductionRule(xBeta);
-					if (xBeta.isEmpty() || (!temp.containsTerminalOr$() && entireRuleDerivesToLambda(temp))) {
-						resultingSet.addAll(deriveFollowSetOfNonTerminal(entry.getKey(), visitedSet));
-					}
-				}
-			}
-		}
-
-		return resultingSet;
-	}
-
-	/**
-	 * Checks if the entire rule can become lambda
-	 * 	I don't like this, as I think this should be in ProductionRule (and this needlessly entwines the two classes)
-	 * @param p The production rule in question
-	 * @return result
-	 */
-	private boolean entireRuleDerivesToLambda(ProductionRule p) {
-		// If this is a lambda production, then duh
-		if (p.isLambdaProduction()) {
-			return true;
-		}
-
-		// If there's anything except a non-terminal, this is false.
-		if (p.containsTerminalOr$()) {
-			return false;
-		}
-
-		for (AlphabetCharacter l : p.rhs) {
-			if (!derivesToLambdaSet.contains(l)) {
-				return false;
-			}
-		}
-
-		return true;
+		return analysis.toSymbolSet(analysis.getFollowSet(id));
 	}
 
 	@Override
@@ -492,9 +596,9 @@ public class CFG {
 		out.append("Grammar Rules\n");
 		int ruleNumber = 1;
 
-		for (AlphabetCharacter key: productions.keySet()) {
-			for (int i = 0; i < productions.get(key).size(); i++) {
-				ProductionRule rhs = productions.get(key).get(i);
+		for (AlphabetCharacter key: lhsSymbols()) {
+			for (int i = 0; i < getProductionsOf(key.id).size(); i++) {
+				ProductionRule rhs = getProductionsOf(key.id).get(i);
 				// Generates: #) A ->
 				out.append(ruleNumber++).append(") ");
 				out.append(key).append(" -> ");
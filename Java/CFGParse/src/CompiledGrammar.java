@@ -0,0 +1,476 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A fully analyzed grammar: the CFG with its derivesToLambda/First/Follow/predict sets, its LL(1) table, its SLR
+ * item sets and action table, and that table compressed (see LRTable).
+ *  <p>Can be written to a compact binary file and read back (see GrammarCache). Reading maps the file, so none of the
+ *  analysis or the item set construction is redone. The grammar and its analysis are decoded; the LL(1) table is
+ *  copied out in bulk (see LL1ParsingTable.read()); the LRTable is used straight out of the mapped file; and the SLR
+ *  item sets are only decoded if getSLRParser() is called.</p>
+ *  <p>Layout (all ints big-endian; "pad" is zero bytes up to the next multiple of 4 from the start of the file):</p>
+ *  <pre>
+ *  magic, version, content hash
+ *  symbols        count, then (length, UTF-8 label) in id order
+ *  start symbol   id, or -1
+ *  rules          count, then (lhs, rhs length, rhs ids) in index order
+ *  analysis       derivesToLambda, First and Follow by symbol id, predict by rule index (each: long count, longs)
+ *  LL(1) table    0 if the grammar isn't LL(1), else 1, pad, then LL1ParsingTable.write()'s arrays
+ *  LR table       pad, then LRTable.write()'s arrays
+ *  SLR            state count, then per state: kernel item count, (rule, progress marker), transition count, (symbol, state),
+ *                 action count, (column, kind, arg)
+ *  </pre>
+ */
+public class CompiledGrammar {
+    private static final int MAGIC = 0x43464743; // "CFGC"
+    private static final int VERSION = 4;
+
+    public final CFG grammar;
+
+    // null if the grammar isn't LL(1)
+    public final LL1ParsingTable ll1Table;
+
+    // slrParser's table, compressed
+    public final LRTable lrTable;
+
+    // null until getSLRParser() decodes it from slrData, for a grammar that was read
+    private SLRParser slrParser;
+    private ByteBuffer slrData;
+
+    private CompiledGrammar(CFG grammar, LL1ParsingTable ll1Table, LRTable lrTable, SLRParser slrParser,
+                            ByteBuffer slrData) {
+        this.grammar = grammar;
+        this.ll1Table = ll1Table;
+        this.lrTable = lrTable;
+        this.slrParser = slrParser;
+        this.slrData = slrData;
+    }
+
+    /**
+     * Builds all the tables for grammar from scratch
+     * @param grammar - the CFG
+     * @return the compiled grammar
+     * @throws Exception if the LL(1) table fails for any reason but a conflict, or the SLR table can't be compressed
+     */
+    public static CompiledGrammar build(CFG grammar) throws Exception {
+        LL1ParsingTable ll1Table;
+        try {
+            ll1Table = grammar.generateParsingTable();
+        } catch (LL1ConflictException e) {
+            // Not an LL(1) grammar; anything else is a real failure
+            ll1Table = null;
+        }
+
+        SLRParser slrParser = new SLRParser(grammar);
+        return new CompiledGrammar(grammar, ll1Table, LRTable.compress(slrParser), slrParser, null);
+    }
+
+    /**
+     * The SLR item sets and action table. For a grammar that was read, they're decoded the first time this is called
+     * (read() has already checked they can be).
+     * @return the SLRParser
+     */
+    public synchronized SLRParser getSLRParser() {
+        if (slrParser == null) {
+            slrParser = readSLRParser(slrData, grammar);
+            slrData = null;
+        }
+
+        return slrParser;
+    }
+
+    /**
+     * A rough count of the bytes this grammar and its tables take up on the heap, from their sizes and typical object
+     * overheads; good for comparing grammars and budgeting a cache, not for exact accounting
+     * @return the estimate
+     */
+    public long estimateSize() {
+        SymbolTable symbols = grammar.getSymbolTable();
+        List<ProductionRule> rules = grammar.getProductionRules();
+        long size = 0;
+
+        // Symbols: the AlphabetCharacter, its label and the table's slots
+        for (int id = 0; id < symbols.size(); id++) {
+            size += 80 + 2L * symbols.get(id).label.length();
+        }
+
+        long rhsSymbols = 0;
+        for (ProductionRule p : rules) {
+            rhsSymbols += p.rhs.size();
+        }
+        size += 64L * rules.size() + 8 * rhsSymbols;
+
+        // derivesToLambda, First and Follow per symbol, predict per rule
+        long bitSetSize = 40 + 8L * ((symbols.size() + 63) / 64);
+        size += bitSetSize * (1 + 2L * symbols.size() + rules.size());
+
+        if (ll1Table != null) {
+            size += 4L * grammar.getNonTerminals().size() * (grammar.getTerminals().size() + 1) + 4 * rhsSymbols;
+        }
+
+        size += lrTable.sizeInBytes();
+
+        // SLR, if it's been built or decoded: the kernels and their views, the transitions and the action rows (a
+        // HashMap node and an SLRAction each)
+        SLRParser slrParser;
+        synchronized (this) {
+            slrParser = this.slrParser;
+        }
+        for (int i = 0; slrParser != null && i < slrParser.canonicalItemSets.size(); i++) {
+            size += 96 + 8L * slrParser.getKernel(i).size() + 48L * slrParser.getTransitions(i).size();
+            Map<AlphabetCharacter, SLRAction> row = slrParser.slrActionTable.get(i);
+            size += 64 + (row == null ? 0 : 72L * row.size());
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes this grammar in the format described above
+     * @param out - where to write it; not closed
+     * @param hash - the content hash of the grammar's source, checked by read()
+     */
+    public void write(OutputStream out, byte[] hash) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        SymbolTable symbols = grammar.getSymbolTable();
+        GrammarAnalysis analysis = grammar.getAnalysis();
+        List<ProductionRule> rules = grammar.getProductionRules();
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(hash.length);
+        data.write(hash);
+
+        data.writeInt(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) {
+            byte[] label = symbols.get(id).label.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(label.length);
+            data.write(label);
+        }
+
+        AlphabetCharacter start = grammar.getStartingSymbol();
+        data.writeInt(start == null ? -1 : start.id);
+
+        data.writeInt(rules.size());
+        for (ProductionRule p : rules) {
+            data.writeInt(p.lhs.id);
+            data.writeInt(p.rhs.size());
+            for (AlphabetCharacter x : p.rhs) {
+                data.writeInt(x.id);
+            }
+        }
+
+        writeBitSet(data, analysis.getDerivesToLambda());
+        for (int id = 0; id < symbols.size(); id++) {
+            writeBitSet(data, analysis.getFirstSet(id));
+        }
+        for (int id = 0; id < symbols.size(); id++) {
+            writeBitSet(data, analysis.getFollowSet(id));
+        }
+        for (ProductionRule p : rules) {
+            writeBitSet(data, analysis.getPredictSet(p.index));
+        }
+
+        if (ll1Table == null) {
+            data.writeInt(0);
+        } else {
+            data.writeInt(1);
+            pad(data);
+            ll1Table.write(data);
+        }
+
+        pad(data);
+        lrTable.write(data);
+
+        writeSLRParser(data);
+
+        data.flush();
+    }
+
+    // So the int arrays after it can be read as IntBuffers in place
+    private static void pad(DataOutputStream data) throws IOException {
+        while (data.size() % 4 != 0) {
+            data.writeByte(0);
+        }
+    }
+
+    private static void skipPadding(ByteBuffer in) {
+        in.position((in.position() + 3) & ~3);
+    }
+
+    private void writeSLRParser(DataOutputStream data) throws IOException {
+        SLRParser slrParser = getSLRParser();
+        int stateCount = slrParser.canonicalItemSets.size();
+
+        data.writeInt(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            LRItemSet itemSet = slrParser.getKernel(i);
+            data.writeInt(itemSet.size());
+            for (int k = 0; k < itemSet.size(); k++) {
+                data.writeInt(LRItemSet.ruleOf(itemSet.get(k)));
+                data.writeInt(LRItemSet.progressMarkerOf(itemSet.get(k)));
+            }
+
+            Map<AlphabetCharacter, Integer> transitions = slrParser.getTransitions(i);
+            data.writeInt(transitions.size());
+            for (Map.Entry<AlphabetCharacter, Integer> transition : transitions.entrySet()) {
+                data.writeInt(transition.getKey().id);
+                data.writeInt(transition.getValue());
+            }
+
+            Map<AlphabetCharacter, SLRAction> row = slrParser.slrActionTable.get(i);
+            data.writeInt(row.size());
+            for (SLRAction action : row.values()) {
+                data.writeInt(action.column.id);
+                data.writeInt(action.action.ordinal());
+                if (action.action == SLRAction.SLRActionEnum.ShiftAndGoTo) {
+                    data.writeInt(action.goToItemSet);
+                } else {
+                    data.writeInt(action.productionRuleReducedWith.index);
+                }
+            }
+        }
+    }
+
+    private static void writeBitSet(DataOutputStream data, BitSet set) throws IOException {
+        long[] words = set.toLongArray();
+        data.writeInt(words.length);
+        for (long word : words) {
+            data.writeLong(word);
+        }
+    }
+
+    /**
+     * Maps a file written by write() and rebuilds the grammar from it, with its tables as described above
+     * @param file - the file
+     * @param hash - the content hash the file must have been written with
+     * @return the grammar, or null if the file is for a different hash or an older version of this format
+     * @throws Exception if the file is corrupt
+     */
+    public static CompiledGrammar read(Path file, byte[] hash) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), hash);
+        }
+    }
+
+    /**
+     * Same as above, for a buffer holding the file
+     * @param in - the compiled grammar
+     * @param hash - the content hash the file must have been written with
+     * @return the grammar, or null if the file is for a different hash or an older version of this format
+     */
+    public static CompiledGrammar read(ByteBuffer in, byte[] hash) throws Exception {
+        if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
+        }
+
+        byte[] storedHash = new byte[count(in, 1)];
+        in.get(storedHash);
+        if (!Arrays.equals(storedHash, hash)) {
+            return null;
+        }
+
+        CFG grammar = new CFG();
+        SymbolTable symbols = grammar.getSymbolTable();
+
+        int symbolCount = count(in, 4);
+        byte[] label = new byte[64];
+        for (int id = 0; id < symbolCount; id++) {
+            int length = count(in, 1);
+            if (length > label.length) {
+                label = new byte[length];
+            }
+            in.get(label, 0, length);
+
+            if (symbols.intern(new String(label, 0, length, StandardCharsets.UTF_8)).id != id) {
+                throw new Exception("Corrupt compiled grammar: symbol " + id + " is out of order");
+            }
+        }
+
+        int start = in.getInt();
+
+        int ruleCount = count(in, 8);
+        for (int i = 0; i < ruleCount; i++) {
+            AlphabetCharacter lhs = symbols.get(in.getInt());
+            int length = count(in, 4);
+
+            ArrayList<AlphabetCharacter> rhs = new ArrayList<>(length);
+            for (int j = 0; j < length; j++) {
+                rhs.add(symbols.get(in.getInt()));
+            }
+
+            grammar.addLoadedRule(lhs, rhs);
+        }
+
+        if ((start < 0 ? null : symbols.get(start)) != grammar.getStartingSymbol()) {
+            throw new Exception("Corrupt compiled grammar: wrong starting symbol");
+        }
+
+        BitSet derivesToLambda = readBitSet(in);
+        List<BitSet> firstSets = readBitSets(in, symbolCount);
+        List<BitSet> followSets = readBitSets(in, symbolCount);
+        List<BitSet> predictSets = readBitSets(in, ruleCount);
+        grammar.finishLoading(new GrammarAnalysis(grammar, derivesToLambda, firstSets, followSets, predictSets));
+
+        LL1ParsingTable ll1Table = null;
+        if (in.getInt() != 0) {
+            skipPadding(in);
+            IntBuffer ints = in.slice().asIntBuffer();
+            ll1Table = LL1ParsingTable.read(grammar, ints);
+            in.position(in.position() + 4 * ints.position());
+        }
+
+        skipPadding(in);
+        IntBuffer ints = in.slice().asIntBuffer();
+        LRTable lrTable = LRTable.read(grammar, ints);
+        in.position(in.position() + 4 * ints.position());
+
+        ByteBuffer slrData = in.slice();
+        checkSLRParser(slrData.duplicate(), grammar, lrTable.getStateCount());
+
+        return new CompiledGrammar(grammar, ll1Table, lrTable, null, slrData);
+    }
+
+    /**
+     * Makes sure readSLRParser() will be able to decode the SLR section, without decoding it, so a bad file is found
+     * by read() and not by whoever first calls getSLRParser()
+     * @param in - the SLR section
+     * @param grammar - the grammar read so far
+     * @param stateCount - the LR table's, which the section has to match
+     * @throws Exception if it won't
+     */
+    private static void checkSLRParser(ByteBuffer in, CFG grammar, int stateCount) throws Exception {
+        int symbolCount = grammar.getSymbolTable().size();
+        int ruleCount = grammar.getProductionRules().size();
+        int kindCount = SLRAction.SLRActionEnum.values().length;
+
+        if (in.remaining() < 4 || in.getInt() != stateCount) {
+            throw new Exception("Corrupt compiled grammar: the SLR section isn't for " + stateCount + " states");
+        }
+
+        for (int i = 0; i < stateCount; i++) {
+            int itemCount = count(in, 8);
+            for (int j = 0; j < itemCount; j++) {
+                int rule = in.getInt();
+                int progressMarker = in.getInt();
+                if (rule < 0 || rule >= ruleCount || progressMarker < 0
+                        || progressMarker > grammar.getProductionRule(rule).rhs.size()) {
+                    throw new Exception("Corrupt compiled grammar: bad item in state " + i);
+                }
+            }
+
+            int transitionCount = count(in, 8);
+            for (int j = 0; j < transitionCount; j++) {
+                int symbol = in.getInt();
+                int target = in.getInt();
+                if (symbol < 0 || symbol >= symbolCount || target < 0 || target >= stateCount) {
+                    throw new Exception("Corrupt compiled grammar: bad transition in state " + i);
+                }
+            }
+
+            int actionCount = count(in, 12);
+            for (int j = 0; j < actionCount; j++) {
+                int symbol = in.getInt();
+                int kind = in.getInt();
+                int arg = in.getInt();
+                boolean shift = kind == SLRAction.SLRActionEnum.ShiftAndGoTo.ordinal();
+                if (symbol < 0 || symbol >= symbolCount || kind < 0 || kind >= kindCount
+                        || arg < 0 || arg >= (shift ? stateCount : ruleCount)) {
+                    throw new Exception("Corrupt compiled grammar: bad action in state " + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a count of entries of at least bytesEach bytes, making sure there's room for them, so nothing is ever
+     * allocated for a bad count
+     */
+    private static int count(ByteBuffer in, int bytesEach) throws Exception {
+        if (in.remaining() < 4) {
+            throw new Exception("Corrupt compiled grammar: truncated");
+        }
+
+        int count = in.getInt();
+        if (count < 0 || (long) count * bytesEach > in.remaining()) {
+            throw new Exception("Corrupt compiled grammar: truncated");
+        }
+
+        return count;
+    }
+
+    private static SLRParser readSLRParser(ByteBuffer in, CFG grammar) {
+        SymbolTable symbols = grammar.getSymbolTable();
+        SLRAction.SLRActionEnum[] kinds = SLRAction.SLRActionEnum.values();
+
+        int stateCount = in.getInt();
+        ArrayList<LRItemSet> itemSets = new ArrayList<>(stateCount);
+        ArrayList<Map<AlphabetCharacter, Integer>> transitions = new ArrayList<>(stateCount);
+        Map<Integer, Map<AlphabetCharacter, SLRAction>> actionTable = new TreeMap<>();
+
+        for (int i = 0; i < stateCount; i++) {
+            long[] items = new long[in.getInt()];
+            for (int j = 0; j < items.length; j++) {
+                items[j] = LRItemSet.pack(in.getInt(), in.getInt());
+            }
+            itemSets.add(LRItemSet.of(items, items.length));
+
+            int transitionCount = in.getInt();
+            Map<AlphabetCharacter, Integer> out = new HashMap<>();
+            for (int j = 0; j < transitionCount; j++) {
+                out.put(symbols.get(in.getInt()), in.getInt());
+            }
+            transitions.add(out);
+
+            int actionCount = in.getInt();
+            Map<AlphabetCharacter, SLRAction> row = new HashMap<>();
+            for (int j = 0; j < actionCount; j++) {
+                AlphabetCharacter column = symbols.get(in.getInt());
+                SLRAction.SLRActionEnum kind = kinds[in.getInt()];
+                int arg = in.getInt();
+
+                if (kind == SLRAction.SLRActionEnum.ShiftAndGoTo) {
+                    row.put(column, SLRAction.createShiftAndGoTo(arg, column));
+                } else {
+                    row.put(column, new SLRAction(kind, grammar.getProductionRule(arg), column));
+                }
+            }
+            actionTable.put(i, row);
+        }
+
+        return new SLRParser(grammar, itemSets, transitions, actionTable);
+    }
+
+    private static List<BitSet> readBitSets(ByteBuffer in, int count) throws Exception {
+        List<BitSet> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(readBitSet(in));
+        }
+
+        return result;
+    }
+
+    private static BitSet readBitSet(ByteBuffer in) throws Exception {
+        long[] words = new long[count(in, 8)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.getLong();
+        }
+
+        return BitSet.valueOf(words);
+    }
+}
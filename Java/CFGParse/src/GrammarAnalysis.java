@@ -0,0 +1,658 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Computes derivesToLambda, First and Follow for every symbol of a CFG at once, and the predict set of every
+ * production rule.
+ *  <p>Sets are BitSets indexed by symbol id (see SymbolTable). Each set is only ever grown, and a symbol is only
+ *  revisited when one of the sets it depends on grew, so the whole analysis is a single worklist pass over the
+ *  grammar rather than a recursive search per symbol.</p>
+ *  <p>When a rule is added to or removed from the grammar, only the symbols whose sets depend on that rule are
+ *  reset and recomputed (see ruleAdded/ruleRemoved).</p>
+ */
+public class GrammarAnalysis {
+    private final CFG grammar;
+    private final SymbolTable symbols;
+
+    private final BitSet derivesToLambda = new BitSet();
+    private final List<BitSet> firstSets = new ArrayList<>();
+    private final List<BitSet> followSets = new ArrayList<>();
+    private final List<BitSet> predictSets = new ArrayList<>();
+
+    // symbol id -> rules that have that symbol on their RHS (each rule once)
+    private final List<List<ProductionRule>> occurrences = new ArrayList<>();
+
+    /**
+     * Runs the analysis over grammar
+     * @param grammar - the CFG to analyze
+     */
+    public GrammarAnalysis(CFG grammar) {
+        this.grammar = grammar;
+        this.symbols = grammar.getSymbolTable();
+
+        ensureSymbols();
+        for (ProductionRule p : grammar.getProductionRules()) {
+            addOccurrences(p);
+        }
+
+        generateDerivesToLambda();
+        generateFirstSets();
+        generateFollowSets();
+
+        for (ProductionRule p : grammar.getProductionRules()) {
+            predictSets.add(predictSetOf(p));
+        }
+    }
+
+    /**
+     * Restores a previously computed analysis (see CompiledGrammar) instead of running it again
+     * @param grammar - the CFG the sets belong to
+     * @param derivesToLambda - by symbol id
+     * @param firstSets - by symbol id
+     * @param followSets - by symbol id
+     * @param predictSets - by production rule index
+     */
+    GrammarAnalysis(CFG grammar, BitSet derivesToLambda, List<BitSet> firstSets, List<BitSet> followSets,
+                    List<BitSet> predictSets) {
+        this.grammar = grammar;
+        this.symbols = grammar.getSymbolTable();
+
+        this.derivesToLambda.or(derivesToLambda);
+        this.firstSets.addAll(firstSets);
+        this.followSets.addAll(followSets);
+        this.predictSets.addAll(predictSets);
+
+        for (int id = 0; id < symbols.size(); id++) {
+            occurrences.add(new ArrayList<>());
+        }
+        for (ProductionRule p : grammar.getProductionRules()) {
+            addOccurrences(p);
+        }
+    }
+
+    /**
+     * Nullable symbols: a rule is nullable once every symbol on its RHS is. Keeps a count of the RHS symbols that
+     * aren't known to be nullable yet, so each occurrence of a symbol is looked at once.
+     */
+    private void generateDerivesToLambda() {
+        List<ProductionRule> rules = grammar.getProductionRules();
+        int[] remaining = new int[rules.size()];
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+
+        for (ProductionRule p : rules) {
+            if (p.isLambdaProduction()) {
+                remaining[p.index] = 0;
+            } else {
+                remaining[p.index] = p.rhs.size();
+            }
+
+            if (remaining[p.index] == 0 && !derivesToLambda.get(p.lhs.id)) {
+                derivesToLambda.set(p.lhs.id);
+                worklist.add(p.lhs.id);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            int nullable = worklist.poll();
+
+            for (ProductionRule p : occurrences.get(nullable)) {
+                // Once per occurrence of the symbol, not once per rule
+                for (AlphabetCharacter x : p.rhs) {
+                    if (x.id == nullable && --remaining[p.index] == 0 && !derivesToLambda.get(p.lhs.id)) {
+                        derivesToLambda.set(p.lhs.id);
+                        worklist.add(p.lhs.id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * First(A) ⊇ First(Xi) for every rule A → X1..Xn and every Xi whose prefix X1..Xi-1 derives to lambda.
+     * Terminals are added directly, non-terminals become edges Xi → A that First sets are pushed along.
+     */
+    private void generateFirstSets() {
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+
+        for (ProductionRule p : grammar.getProductionRules()) {
+            seedFirstSet(p, null, edges);
+        }
+
+        propagate(firstSets, edges);
+    }
+
+    /**
+     * Adds the terminals of p's nullable prefix to First(lhs), and an edge for every non-terminal in it
+     * @param p - the rule
+     * @param region - if not null, only non-terminals in here get edges; the rest are already final and are copied
+     * @param edges - from -> list[to]
+     */
+    private void seedFirstSet(ProductionRule p, BitSet region, Map<Integer, List<Integer>> edges) {
+        for (AlphabetCharacter x : p.rhs) {
+            if (x.isNonTerminal() && (region == null || region.get(x.id))) {
+                edges.computeIfAbsent(x.id, k -> new ArrayList<>()).add(p.lhs.id);
+            } else {
+                firstSets.get(p.lhs.id).or(firstSets.get(x.id));
+            }
+
+            if (!derivesToLambda.get(x.id)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * For every rule A → αBβ: Follow(B) ⊇ First(β), and Follow(B) ⊇ Follow(A) if β derives to lambda
+     */
+    private void generateFollowSets() {
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+
+        for (ProductionRule p : grammar.getProductionRules()) {
+            // Walk the RHS right to left, keeping First(β) of the suffix as we go
+            BitSet firstOfSuffix = new BitSet();
+            boolean suffixDerivesToLambda = true;
+
+            for (int i = p.rhs.size() - 1; i >= 0; i--) {
+                AlphabetCharacter x = p.rhs.get(i);
+
+                if (x.isNonTerminal()) {
+                    followSets.get(x.id).or(firstOfSuffix);
+                    if (suffixDerivesToLambda) {
+                        edges.computeIfAbsent(p.lhs.id, k -> new ArrayList<>()).add(x.id);
+                    }
+                }
+
+                if (!x.isLambda()) {
+                    if (derivesToLambda.get(x.id)) {
+                        firstOfSuffix.or(firstSets.get(x.id));
+                    } else {
+                        firstOfSuffix = (BitSet) firstSets.get(x.id).clone();
+                        suffixDerivesToLambda = false;
+                    }
+                }
+            }
+        }
+
+        propagate(followSets, edges);
+    }
+
+    /**
+     * Pushes sets along edges (from → to means sets[to] ⊇ sets[from]) until nothing changes
+     * @param sets - the sets, indexed by symbol id
+     * @param edges - from -> list[to]
+     */
+    private void propagate(List<BitSet> sets, Map<Integer, List<Integer>> edges) {
+        ArrayDeque<Integer> worklist = new ArrayDeque<>(edges.keySet());
+        BitSet queued = new BitSet();
+        for (int id : edges.keySet()) {
+            queued.set(id);
+        }
+
+        while (!worklist.isEmpty()) {
+            int from = worklist.poll();
+            queued.clear(from);
+
+            for (int to : edges.get(from)) {
+                BitSet target = sets.get(to);
+                int oldCardinality = target.cardinality();
+                target.or(sets.get(from));
+
+                if (target.cardinality() != oldCardinality && !queued.get(to) && edges.containsKey(to)) {
+                    worklist.add(to);
+                    queued.set(to);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the analysis after p was added to the grammar (it must already be in grammar.getProductionRules())
+     * @param p - the new rule
+     * @return what changed
+     */
+    GrammarChange ruleAdded(ProductionRule p) {
+        ensureSymbols();
+        addOccurrences(p);
+        predictSets.add(new BitSet());
+
+        // Adding a rule only ever grows sets, so derivesToLambda can only change if p makes its LHS nullable
+        boolean nullableMayChange = !derivesToLambda.get(p.lhs.id) && derivesToLambda(p.rhs, 0);
+        return reanalyze(p, true, nullableMayChange, null);
+    }
+
+    /**
+     * Updates the analysis after p was removed from the grammar. The grammar fills the hole p left in its rule list
+     * with its last rule, which is passed in as moved (null if p was the last rule).
+     * @param p - the removed rule
+     * @param oldIndex - p's index before it was removed
+     * @param moved - the rule that now has index oldIndex, if any
+     * @return what changed
+     */
+    GrammarChange ruleRemoved(ProductionRule p, int oldIndex, ProductionRule moved) {
+        removeOccurrences(p);
+        if (moved != null) {
+            predictSets.set(oldIndex, predictSets.get(predictSets.size() - 1));
+        }
+        predictSets.remove(predictSets.size() - 1);
+
+        return reanalyze(p, false, derivesToLambda.get(p.lhs.id), moved);
+    }
+
+    /**
+     * Resets and recomputes every set that (transitively) depends on p, and works out which predict sets changed
+     */
+    private GrammarChange reanalyze(ProductionRule p, boolean added, boolean nullableMayChange, ProductionRule moved) {
+        BitSet touched = new BitSet();
+
+        // 1. derivesToLambda
+        BitSet lambdaChanged = new BitSet();
+        if (nullableMayChange) {
+            BitSet region = nullableDependents(p.lhs.id);
+            BitSet old = (BitSet) derivesToLambda.clone();
+            recomputeDerivesToLambda(region);
+            lambdaChanged = (BitSet) old.clone();
+            lambdaChanged.xor(derivesToLambda);
+        }
+
+        // 2. First: p's LHS, plus every rule a symbol that changed nullability appears in
+        BitSet firstSeeds = new BitSet();
+        firstSeeds.set(p.lhs.id);
+        for (int x = lambdaChanged.nextSetBit(0); x >= 0; x = lambdaChanged.nextSetBit(x + 1)) {
+            for (ProductionRule r : occurrences.get(x)) {
+                firstSeeds.set(r.lhs.id);
+            }
+        }
+        BitSet firstChanged = recomputeFirstSets(firstDependents(firstSeeds));
+
+        // 3. Follow: everything on p's RHS, plus every rule a symbol whose First or nullability changed appears in
+        BitSet firstOrLambdaChanged = (BitSet) firstChanged.clone();
+        firstOrLambdaChanged.or(lambdaChanged);
+
+        BitSet followSeeds = new BitSet();
+        addNonTerminals(p, followSeeds);
+        for (int x = firstOrLambdaChanged.nextSetBit(0); x >= 0; x = firstOrLambdaChanged.nextSetBit(x + 1)) {
+            for (ProductionRule r : occurrences.get(x)) {
+                addNonTerminals(r, followSeeds);
+            }
+        }
+        BitSet followChanged = recomputeFollowSets(followDependents(followSeeds));
+
+        // 4. Predict sets of every rule that could have seen one of the above
+        touched.or(firstOrLambdaChanged);
+        touched.or(followChanged);
+        BitSet candidates = new BitSet();
+        for (int x = touched.nextSetBit(0); x >= 0; x = touched.nextSetBit(x + 1)) {
+            for (ProductionRule r : occurrences.get(x)) {
+                candidates.set(r.index);
+            }
+
+            List<ProductionRule> xsRules = grammar.getProductionsOf(x);
+            if (xsRules != null) {
+                for (ProductionRule r : xsRules) {
+                    candidates.set(r.index);
+                }
+            }
+        }
+        if (added) {
+            candidates.set(p.index);
+        }
+
+        BitSet predictChanged = new BitSet();
+        BitSet affectedNonTerminals = new BitSet();
+        affectedNonTerminals.set(p.lhs.id);
+        if (moved != null) {
+            affectedNonTerminals.set(moved.lhs.id);
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            ProductionRule r = grammar.getProductionRule(i);
+            BitSet predict = predictSetOf(r);
+            if (!predict.equals(predictSets.get(i))) {
+                predictSets.set(i, predict);
+                predictChanged.set(i);
+                affectedNonTerminals.set(r.lhs.id);
+            }
+        }
+
+        return new GrammarChange(p, added, moved, lambdaChanged, firstChanged, followChanged, predictChanged,
+                affectedNonTerminals);
+    }
+
+    /**
+     * {id} plus every symbol whose nullability could depend on it, i.e. the LHS of every rule it appears in, and so on
+     */
+    private BitSet nullableDependents(int id) {
+        BitSet region = new BitSet();
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        region.set(id);
+        worklist.add(id);
+
+        while (!worklist.isEmpty()) {
+            for (ProductionRule r : occurrences.get(worklist.poll())) {
+                if (!region.get(r.lhs.id)) {
+                    region.set(r.lhs.id);
+                    worklist.add(r.lhs.id);
+                }
+            }
+        }
+
+        return region;
+    }
+
+    private void recomputeDerivesToLambda(BitSet region) {
+        derivesToLambda.andNot(region);
+
+        // Symbols outside the region are already final; iterate the region until it stops growing
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int x = region.nextSetBit(0); x >= 0; x = region.nextSetBit(x + 1)) {
+                List<ProductionRule> xsRules = grammar.getProductionsOf(x);
+                if (derivesToLambda.get(x) || xsRules == null) {
+                    continue;
+                }
+
+                for (ProductionRule r : xsRules) {
+                    if (derivesToLambda(r.rhs, 0)) {
+                        derivesToLambda.set(x);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * seeds plus every LHS whose First set includes the First set of something in the region
+     */
+    private BitSet firstDependents(BitSet seeds) {
+        BitSet region = (BitSet) seeds.clone();
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int x = seeds.nextSetBit(0); x >= 0; x = seeds.nextSetBit(x + 1)) {
+            worklist.add(x);
+        }
+
+        while (!worklist.isEmpty()) {
+            int x = worklist.poll();
+            for (ProductionRule r : occurrences.get(x)) {
+                if (region.get(r.lhs.id) || !isInNullablePrefix(r, x)) {
+                    continue;
+                }
+
+                region.set(r.lhs.id);
+                worklist.add(r.lhs.id);
+            }
+        }
+
+        return region;
+    }
+
+    private BitSet recomputeFirstSets(BitSet region) {
+        Map<Integer, BitSet> old = saveAndClear(firstSets, region);
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+
+        for (int x = region.nextSetBit(0); x >= 0; x = region.nextSetBit(x + 1)) {
+            List<ProductionRule> xsRules = grammar.getProductionsOf(x);
+            if (xsRules == null) {
+                continue;
+            }
+
+            for (ProductionRule r : xsRules) {
+                seedFirstSet(r, region, edges);
+            }
+        }
+
+        propagate(firstSets, edges);
+        return changedSince(firstSets, old);
+    }
+
+    /**
+     * seeds plus every non-terminal whose Follow set includes the Follow set of something in the region
+     */
+    private BitSet followDependents(BitSet seeds) {
+        BitSet region = (BitSet) seeds.clone();
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int x = seeds.nextSetBit(0); x >= 0; x = seeds.nextSetBit(x + 1)) {
+            worklist.add(x);
+        }
+
+        while (!worklist.isEmpty()) {
+            List<ProductionRule> rules = grammar.getProductionsOf(worklist.poll());
+            if (rules == null) {
+                continue;
+            }
+
+            for (ProductionRule r : rules) {
+                for (int i = r.rhs.size() - 1; i >= 0; i--) {
+                    AlphabetCharacter x = r.rhs.get(i);
+                    if (x.isNonTerminal() && !region.get(x.id)) {
+                        region.set(x.id);
+                        worklist.add(x.id);
+                    }
+
+                    if (!x.isLambda() && !derivesToLambda.get(x.id)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return region;
+    }
+
+    private BitSet recomputeFollowSets(BitSet region) {
+        Map<Integer, BitSet> old = saveAndClear(followSets, region);
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+
+        for (int b = region.nextSetBit(0); b >= 0; b = region.nextSetBit(b + 1)) {
+            for (ProductionRule r : occurrences.get(b)) {
+                for (int i = 0; i < r.rhs.size(); i++) {
+                    if (r.rhs.get(i).id != b) {
+                        continue;
+                    }
+
+                    followSets.get(b).or(firstSetOf(r.rhs, i + 1));
+                    if (!derivesToLambda(r.rhs, i + 1)) {
+                        continue;
+                    }
+
+                    if (region.get(r.lhs.id)) {
+                        edges.computeIfAbsent(r.lhs.id, k -> new ArrayList<>()).add(b);
+                    } else {
+                        followSets.get(b).or(followSets.get(r.lhs.id));
+                    }
+                }
+            }
+        }
+
+        propagate(followSets, edges);
+        return changedSince(followSets, old);
+    }
+
+    private boolean isInNullablePrefix(ProductionRule r, int id) {
+        for (AlphabetCharacter x : r.rhs) {
+            if (x.id == id) {
+                return true;
+            }
+
+            if (!derivesToLambda.get(x.id)) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private Map<Integer, BitSet> saveAndClear(List<BitSet> sets, BitSet region) {
+        Map<Integer, BitSet> old = new HashMap<>();
+        for (int x = region.nextSetBit(0); x >= 0; x = region.nextSetBit(x + 1)) {
+            old.put(x, sets.get(x));
+            sets.set(x, new BitSet());
+        }
+
+        return old;
+    }
+
+    private BitSet changedSince(List<BitSet> sets, Map<Integer, BitSet> old) {
+        BitSet changed = new BitSet();
+        for (Map.Entry<Integer, BitSet> entry : old.entrySet()) {
+            if (!entry.getValue().equals(sets.get(entry.getKey()))) {
+                changed.set(entry.getKey());
+            }
+        }
+
+        return changed;
+    }
+
+    private void addNonTerminals(ProductionRule r, BitSet into) {
+        for (AlphabetCharacter x : r.rhs) {
+            if (x.isNonTerminal()) {
+                into.set(x.id);
+            }
+        }
+    }
+
+    /**
+     * Predict(A → α) = First(α), plus Follow(A) if all of α derives to lambda
+     * @param p - the rule
+     * @return the predict set
+     */
+    private BitSet predictSetOf(ProductionRule p) {
+        BitSet result = firstSetOf(p.rhs, 0);
+
+        if (derivesToLambda(p.rhs, 0)) {
+            result.or(followSets.get(p.lhs.id));
+        }
+
+        return result;
+    }
+
+    /**
+     * First of the sequence symbols[from..]
+     * @param sequence - e.g. the RHS of a rule
+     * @param from - where the sequence starts
+     * @return a new set
+     */
+    public BitSet firstSetOf(List<AlphabetCharacter> sequence, int from) {
+        BitSet result = new BitSet();
+        for (int i = from; i < sequence.size(); i++) {
+            AlphabetCharacter x = sequence.get(i);
+            if (x.isLambda()) {
+                break;
+            }
+
+            result.or(firstSets.get(x.id));
+            if (!derivesToLambda.get(x.id)) {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Whether all of sequence[from..] can become lambda
+     * @param sequence - e.g. the RHS of a rule
+     * @param from - where the sequence starts
+     * @return see above
+     */
+    public boolean derivesToLambda(List<AlphabetCharacter> sequence, int from) {
+        for (int i = from; i < sequence.size(); i++) {
+            AlphabetCharacter x = sequence.get(i);
+            if (!x.isLambda() && !derivesToLambda.get(x.id)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean derivesToLambda(int id) {
+        return derivesToLambda.get(id);
+    }
+
+    /**
+     * These getters return the cached sets themselves, don't modify them.
+     */
+    public BitSet getDerivesToLambda() {
+        return derivesToLambda;
+    }
+
+    public BitSet getFirstSet(int id) {
+        return firstSets.get(id);
+    }
+
+    public BitSet getFollowSet(int id) {
+        return followSets.get(id);
+    }
+
+    public BitSet getPredictSet(int productionIndex) {
+        return predictSets.get(productionIndex);
+    }
+
+    /**
+     * The rules that have the symbol with this id on their RHS
+     * @param id - the symbol
+     * @return the rules, each once
+     */
+    public List<ProductionRule> getRulesContaining(int id) {
+        return occurrences.get(id);
+    }
+
+    /**
+     * Turns a set of ids into the sorted set of AlphabetCharacters the rest of CFG's API hands out
+     * @param ids - the set
+     * @return a new TreeSet
+     */
+    public Set<AlphabetCharacter> toSymbolSet(BitSet ids) {
+        Set<AlphabetCharacter> result = new TreeSet<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(symbols.get(id));
+        }
+
+        return result;
+    }
+
+    /**
+     * Makes room for symbols interned since the last call. First(a) = {a} for a ∈ Σ ∪ {$}; First(λ) = {}
+     */
+    private void ensureSymbols() {
+        for (int id = firstSets.size(); id < symbols.size(); id++) {
+            BitSet first = new BitSet();
+            if (symbols.isTerminal(id) || symbols.isEOF(id)) {
+                first.set(id);
+            }
+
+            firstSets.add(first);
+            followSets.add(new BitSet());
+            occurrences.add(new ArrayList<>());
+        }
+    }
+
+    private void addOccurrences(ProductionRule p) {
+        if (p.isLambdaProduction()) {
+            return;
+        }
+
+        for (AlphabetCharacter x : p.rhs) {
+            List<ProductionRule> xsOccurrences = occurrences.get(x.id);
+            if (xsOccurrences.isEmpty() || xsOccurrences.get(xsOccurrences.size() - 1) != p) {
+                xsOccurrences.add(p);
+            }
+        }
+    }
+
+    private void removeOccurrences(ProductionRule p) {
+        for (AlphabetCharacter x : p.rhs) {
+            // By identity, another rule could be equal to p
+            occurrences.get(x.id).removeIf(r -> r == p);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+/**
+ * Keeps CompiledGrammars on disk so a grammar only has to be analyzed and have its tables built once.
+ *  <p>Compiled grammars are keyed by the SHA-256 of the .cfg file's contents: either written next to the grammar
+ *  (grammar.cfg → grammar.cfg.cfgc, with the hash checked when it's read back) or, if a cache directory is given, to
+ *  [directory]/[hash].cfgc so any number of copies of the same grammar share one entry.</p>
+ */
+public class GrammarCache {
+    public static final String EXTENSION = ".cfgc";
+
+    // null -> next to the grammar
+    private final Path directory;
+
+    /**
+     * A cache that writes compiled grammars next to their .cfg files
+     */
+    public GrammarCache() {
+        this(null);
+    }
+
+    /**
+     * @param directory - where to keep the compiled grammars; created if needed
+     */
+    public GrammarCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the compiled version of grammarFile, from the cache if it's there, else by building it (and adding it to
+     * the cache)
+     * @param grammarFile - a .cfg file
+     * @return the grammar and its tables
+     */
+    public CompiledGrammar load(Path grammarFile) throws Exception {
+        // Read the file once, so what we hash is exactly what we'd parse
+        return load(grammarFile, Files.readAllBytes(grammarFile));
+    }
+
+    /**
+     * Same as above, for contents that have already been read from grammarFile
+     * @param grammarFile - the .cfg file, which decides where the entry goes
+     * @param contents - its contents
+     * @return the grammar and its tables
+     */
+    public CompiledGrammar load(Path grammarFile, byte[] contents) throws Exception {
+        byte[] hash = hashOf(contents);
+        Path cacheFile = cacheFileFor(grammarFile, hash);
+
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                CompiledGrammar cached = CompiledGrammar.read(cacheFile, hash);
+                if (cached != null) {
+                    return cached;
+                }
+            } catch (Exception e) {
+                // Truncated or otherwise corrupt; rebuild it below
+            }
+        }
+
+        CompiledGrammar compiled = CompiledGrammar.build(new CFG(new ByteArrayInputStream(contents)));
+        try {
+            store(compiled, cacheFile, hash);
+        } catch (IOException e) {
+            // The cache is only an optimization, e.g. the directory might be read-only
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Where the compiled version of a grammar with this content hash is kept
+     * @param grammarFile - the .cfg file
+     * @param hash - the SHA-256 of its contents
+     * @return the path of the compiled grammar (which may not exist yet)
+     */
+    public Path cacheFileFor(Path grammarFile, byte[] hash) {
+        if (directory == null) {
+            return grammarFile.resolveSibling(grammarFile.getFileName() + EXTENSION);
+        }
+
+        return directory.resolve(toHex(hash) + EXTENSION);
+    }
+
+    /**
+     * The SHA-256 of contents
+     * @param contents - e.g. a .cfg file
+     * @return the hash
+     */
+    public static byte[] hashOf(byte[] contents) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(contents);
+    }
+
+    /**
+     * @param hash - e.g. from hashOf()
+     * @return the hash in lowercase hex
+     */
+    public static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, so concurrent runs never see half a file
+     */
+    private void store(CompiledGrammar compiled, Path cacheFile, byte[] hash) throws IOException {
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        Path temporary = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                compiled.write(out, hash);
+            }
+
+            try {
+                Files.move(temporary, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.BitSet;
+
+/**
+ * Describes what changed in a CFG's analysis after a production rule was added or removed, so the parsing tables
+ * built from it can be patched instead of rebuilt. Symbol sets are by symbol id, rule sets by rule index.
+ */
+public class GrammarChange {
+    public final ProductionRule rule;
+    public final boolean added;
+
+    // After a removal, the grammar's last rule is moved into the removed rule's index (null if there wasn't one)
+    public final ProductionRule movedRule;
+
+    public final BitSet derivesToLambdaChanged;
+    public final BitSet firstSetsChanged;
+    public final BitSet followSetsChanged;
+    public final BitSet predictSetsChanged;
+
+    // Non-terminals whose LL(1) table rows need to be rebuilt
+    public final BitSet affectedNonTerminals;
+
+    public GrammarChange(ProductionRule rule, boolean added, ProductionRule movedRule, BitSet derivesToLambdaChanged,
+                         BitSet firstSetsChanged, BitSet followSetsChanged, BitSet predictSetsChanged,
+                         BitSet affectedNonTerminals) {
+        this.rule = rule;
+        this.added = added;
+        this.movedRule = movedRule;
+        this.derivesToLambdaChanged = derivesToLambdaChanged;
+        this.firstSetsChanged = firstSetsChanged;
+        this.followSetsChanged = followSetsChanged;
+        this.predictSetsChanged = predictSetsChanged;
+        this.affectedNonTerminals = affectedNonTerminals;
+    }
+
+    @Override
+    public String toString() {
+        return (added ? "Added " : "Removed ") + rule + "; derivesToLambda changed: " + derivesToLambdaChanged +
+                ", First changed: " + firstSetsChanged + ", Follow changed: " + followSetsChanged +
+                ", predict changed: " + predictSetsChanged;
+    }
+}
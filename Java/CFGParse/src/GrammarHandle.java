@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A grammar that can be swapped for a new version while it's in use, e.g. when its .cfg file changes.
+ *  <p>Every version is an immutable Snapshot: the grammar, its tables and parsers, all built before the snapshot is
+ *  published with one AtomicReference swap. Parses take current() once and use it to the end, so a parse in flight
+ *  finishes on the version it started with, the next one gets the new version, and nobody ever waits for a rebuild or
+ *  sees a table that's half built. Published snapshots are never patched (see SLRParser.applyGrammarChange()); a
+ *  change is always a whole new snapshot.</p>
+ *  <p>watch() rebuilds in the background whenever the file changes. Changes that come in while a rebuild is running
+ *  are folded into one more rebuild after it. A file that doesn't parse leaves the current version in place, and is
+ *  counted in the metrics.</p>
+ */
+public class GrammarHandle implements AutoCloseable {
+    /**
+     * One version of the grammar
+     */
+    public static final class Snapshot {
+        public final CompiledGrammar compiled;
+        public final CFG grammar;
+        // null if the grammar isn't LL(1)
+        public final LL1Parser ll1Parser;
+        public final ShiftReduceParser shiftReduceParser;
+        // 1 for the first version, then one more for every reload
+        public final long version;
+
+        Snapshot(CompiledGrammar compiled, long version) throws Exception {
+            this.compiled = compiled;
+            this.grammar = compiled.grammar;
+            this.ll1Parser = compiled.ll1Table == null ? null : new LL1Parser(compiled.ll1Table);
+            this.shiftReduceParser = new ShiftReduceParser(compiled.lrTable);
+            this.version = version;
+        }
+    }
+
+    // null for a grammar that isn't from a file
+    private final Path grammarFile;
+    private final GrammarCache cache;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    // Background rebuilds: one at a time, with any changes during one folded into the next
+    private ExecutorService reloader;
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+    private WatchService watchService;
+    private Thread watcher;
+
+    // Metrics
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedReloads = new AtomicLong();
+    private final AtomicLong totalReloadNanos = new AtomicLong();
+    private volatile long lastReloadNanos;
+    private volatile Exception lastError;
+
+    /**
+     * Loads a grammar from its file
+     * @param grammarFile - the .cfg file
+     * @param cache - where to get its tables from, or null to always build them
+     */
+    public GrammarHandle(Path grammarFile, GrammarCache cache) throws Exception {
+        this.grammarFile = grammarFile;
+        this.cache = cache;
+        current.set(new Snapshot(compile(), 1));
+    }
+
+    /**
+     * A handle for a grammar that's already built, and never changes unless reload() is given a new one
+     * @param compiled - the grammar
+     */
+    public GrammarHandle(CompiledGrammar compiled) throws Exception {
+        this.grammarFile = null;
+        this.cache = null;
+        current.set(new Snapshot(compiled, 1));
+    }
+
+    /**
+     * The current version, to parse with. Never blocks.
+     * @return the snapshot
+     */
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Rebuilds the grammar from its file and publishes it, on the calling thread
+     * @return the new version
+     * @throws Exception if the file doesn't parse; the current version stays
+     */
+    public Snapshot reload() throws Exception {
+        if (grammarFile == null) {
+            throw new Exception("This grammar doesn't come from a file");
+        }
+
+        long start = System.nanoTime();
+        try {
+            return publish(compile(), start);
+        } catch (Exception e) {
+            failedReloads.incrementAndGet();
+            lastError = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes a new version built elsewhere
+     * @param compiled - the grammar
+     * @return the new version
+     */
+    public Snapshot reload(CompiledGrammar compiled) throws Exception {
+        return publish(compiled, System.nanoTime());
+    }
+
+    private Snapshot publish(CompiledGrammar compiled, long start) throws Exception {
+        // Built entirely before anyone can see it
+        Snapshot next;
+        synchronized (current) {
+            next = new Snapshot(compiled, current.get().version + 1);
+            current.set(next);
+        }
+
+        long nanos = System.nanoTime() - start;
+        lastReloadNanos = nanos;
+        totalReloadNanos.addAndGet(nanos);
+        reloads.incrementAndGet();
+        return next;
+    }
+
+    private CompiledGrammar compile() throws Exception {
+        return cache == null ? CompiledGrammar.build(new CFG(grammarFile)) : cache.load(grammarFile);
+    }
+
+    /**
+     * Starts reloading the grammar in the background whenever its file changes
+     */
+    public synchronized void watch() throws IOException {
+        if (grammarFile == null || watcher != null) {
+            return;
+        }
+
+        Path file = grammarFile.toAbsolutePath();
+        Path directory = file.getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        reloader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "grammar-reload-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (file.getFileName().equals(event.context())) {
+                            scheduleReload();
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped
+            }
+        }, "grammar-watch-" + file.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void scheduleReload() {
+        // If one's already waiting to start, it'll see this change too
+        if (reloadScheduled.compareAndSet(false, true)) {
+            reloader.execute(() -> {
+                reloadScheduled.set(false);
+                try {
+                    reload();
+                } catch (Exception e) {
+                    // Counted in reload(); the current version stays
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops watching the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher == null) {
+            return;
+        }
+
+        watchService.close();
+        watcher.interrupt();
+        reloader.shutdown();
+        watcher = null;
+    }
+
+    /**
+     * @return the current version number
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * @return how many times a new version has been published
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * @return how many reloads failed (the file didn't parse)
+     */
+    public long getFailedReloadCount() {
+        return failedReloads.get();
+    }
+
+    /**
+     * @return how long the last reload took, from starting to read the file to publishing, in ms
+     */
+    public double getLastReloadMillis() {
+        return lastReloadNanos / 1e6;
+    }
+
+    /**
+     * @return the mean time a reload took, in ms (0 if there haven't been any)
+     */
+    public double getAverageReloadMillis() {
+        long count = reloads.get();
+        return count == 0 ? 0 : totalReloadNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return why the last failed reload failed, or null if none has
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: version %d, %d reloads (%d failed), last %.1f ms, mean %.1f ms",
+                grammarFile == null ? "grammar" : grammarFile.getFileName(), getVersion(), getReloadCount(),
+                getFailedReloadCount(), getLastReloadMillis(), getAverageReloadMillis());
+    }
+}
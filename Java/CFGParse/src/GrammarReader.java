@@ -0,0 +1,271 @@
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads a .cfg file into a CFG, one line at a time, without regexes or String.split().
+ *  <p>Files are decoded in fixed-size chunks (large ones are memory-mapped), and every symbol is interned straight
+ *  from the line buffer, so the only objects allocated per line are the ProductionRule itself and any new symbols.</p>
+ *  <p>Accepts the same format the CFG constructor always has:</p>
+ *  <pre>
+ *  A -> x y
+ *     | z
+ *     | lambda
+ *  </pre>
+ */
+public class GrammarReader {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // Files bigger than this are memory-mapped rather than read through a buffer
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private static final char[] ARROW = {' ', '-', '>', ' '};
+    private static final char[] LAMBDA = {'l', 'a', 'm', 'b', 'd', 'a'};
+
+    private final CFG grammar;
+    private final SymbolTable symbols;
+
+    private char[] line = new char[256];
+    private int lineLength = 0;
+    private boolean lastWasCarriageReturn = false;
+    private boolean atStartOfInput = true;
+    private AlphabetCharacter currentLHS = null;
+
+    /**
+     * @param grammar - the CFG to add the rules to
+     */
+    GrammarReader(CFG grammar) {
+        this.grammar = grammar;
+        this.symbols = grammar.getSymbolTable();
+    }
+
+    /**
+     * Reads a UTF-8 grammar file
+     * @param path - the file
+     */
+    public void read(Path path) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > MAP_THRESHOLD && size <= Integer.MAX_VALUE) {
+                drain(newDecoder(), channel.map(FileChannel.MapMode.READ_ONLY, 0, size), CharBuffer.allocate(CHUNK_SIZE), true);
+            } else {
+                read(channel);
+            }
+        }
+
+        finish();
+    }
+
+    /**
+     * Reads a UTF-8 grammar from a stream. Doesn't close it.
+     * @param in - the stream
+     */
+    public void read(InputStream in) throws Exception {
+        read(Channels.newChannel(in));
+        finish();
+    }
+
+    /**
+     * Reads a grammar from a Reader. Doesn't close it.
+     * @param reader - the reader
+     */
+    public void read(Reader reader) throws Exception {
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            accept(chunk, 0, read);
+        }
+
+        finish();
+    }
+
+    private void read(ReadableByteChannel channel) throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        CharsetDecoder decoder = newDecoder();
+        CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            endOfInput = channel.read(bytes) == -1;
+            bytes.flip();
+            drain(decoder, bytes, chars, endOfInput);
+            bytes.compact();
+        }
+    }
+
+    /**
+     * Decodes as much of bytes as possible, passing the chars on in CHUNK_SIZE pieces
+     */
+    private void drain(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, boolean endOfInput) throws Exception {
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+            }
+
+            chars.flip();
+            accept(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            chars.clear();
+
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Splits chunk into lines (\n, \r\n or \r, same as Scanner.nextLine()) and parses every complete one
+     */
+    private void accept(char[] chunk, int offset, int length) throws Exception {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chunk[i];
+
+            // Some editors start UTF-8 files with a byte order mark, which isn't part of the first symbol
+            if (atStartOfInput) {
+                atStartOfInput = false;
+                if (c == '\uFEFF') {
+                    continue;
+                }
+            }
+
+            if (c == '\n' && lastWasCarriageReturn) {
+                lastWasCarriageReturn = false;
+                continue;
+            }
+
+            lastWasCarriageReturn = c == '\r';
+            if (c == '\n' || c == '\r') {
+                parseLine();
+                lineLength = 0;
+                continue;
+            }
+
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    private void finish() throws Exception {
+        if (lineLength > 0) {
+            parseLine();
+            lineLength = 0;
+        }
+
+        grammar.finishLoading();
+    }
+
+    /**
+     * Parses line[0..lineLength), which is either
+     *  a) [lhs] -> [rhs]
+     *  b)       | [rhs], which uses the previously parsed LHS
+     */
+    private void parseLine() throws Exception {
+        // Skip spurious empty lines (thx Keith)
+        if (lineLength < 1) {
+            return;
+        }
+
+        int rhsStart;
+        int arrow = lastArrow();
+        if (arrow >= 0) {
+            currentLHS = symbols.intern(line, 0, arrow);
+            rhsStart = arrow + ARROW.length;
+        } else {
+            // Else, hope its an alternation line: at least one space, then "| "
+            int bar = 0;
+            while (bar < lineLength && line[bar] == ' ') {
+                bar++;
+            }
+
+            boolean isAlternation = bar > 0 && bar + 2 < lineLength && line[bar] == '|' && line[bar + 1] == ' ';
+            if (!isAlternation || currentLHS == null) {
+                throw new Exception("Invalid line: " + new String(line, 0, lineLength));
+            }
+
+            rhsStart = bar + 2;
+        }
+
+        ArrayList<AlphabetCharacter> rhs = new ArrayList<>();
+        if (isLambda(rhsStart)) {
+            // Treat the string "lambda" as 1 character.
+            rhs.add(symbols.get(SymbolTable.LAMBDA_ID));
+        } else {
+            // Add all space-delimited characters on the right hand side
+            int tokenStart = rhsStart;
+            for (int i = rhsStart; i <= lineLength; i++) {
+                if (i < lineLength && line[i] != ' ') {
+                    continue;
+                }
+
+                if (!isBlank(tokenStart, i)) {
+                    rhs.add(symbols.intern(line, tokenStart, i));
+                }
+                tokenStart = i + 1;
+            }
+        }
+
+        grammar.addLoadedRule(currentLHS, rhs);
+    }
+
+    /**
+     * Position of the last " -> " with at least one char on either side of it, or -1
+     */
+    private int lastArrow() {
+        for (int i = lineLength - ARROW.length - 1; i >= 1; i--) {
+            if (matches(i, ARROW)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean isLambda(int from) {
+        return lineLength - from == LAMBDA.length && matches(from, LAMBDA);
+    }
+
+    private boolean matches(int from, char[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (line[from + i] != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] > ' ') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
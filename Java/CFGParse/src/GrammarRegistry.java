@@ -0,0 +1,249 @@
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps many grammars available while only holding the built tables of the ones that have been used recently.
+ *  <p>Grammars are registered by their contents and known by the SHA-256 of them (see GrammarCache.hashOf()), so the
+ *  same grammar registered from any number of paths is one entry, built once. Nothing is built until get() first
+ *  asks for it; if several threads ask at once, one builds while the others wait for its result.</p>
+ *  <p>Built grammars are kept until they go over the budget, in bytes (by CompiledGrammar.estimateSize()) or in
+ *  entries; then the least recently used ones are dropped, to be built again (or read back from the GrammarCache)
+ *  the next time they're asked for. The grammar that was just built is never dropped, even if it's over the budget
+ *  alone. Parses that already have a dropped grammar keep it until they finish.</p>
+ */
+public class GrammarRegistry {
+    /**
+     * A registered grammar
+     */
+    private static final class Entry {
+        final String key;
+        // Where it was first registered from, for the GrammarCache; null if it wasn't a file
+        final Path source;
+        final byte[] contents;
+
+        // The build, once one has started; null if it hasn't or the result has been dropped. Guarded by the registry.
+        FutureTask<CompiledGrammar> build;
+        long size;
+
+        Entry(String key, Path source, byte[] contents) {
+            this.key = key;
+            this.source = source;
+            this.contents = contents;
+        }
+    }
+
+    private final GrammarCache cache;
+    private final long maxBytes;
+    private final int maxEntries;
+
+    // key -> entry, for every registered grammar
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // The built grammars, least recently used first. Guarded by this.
+    private final LinkedHashMap<String, Entry> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+
+    // Metrics, guarded by this
+    private long builds;
+    private long hits;
+    private long evictions;
+
+    /**
+     * Initializes an empty registry
+     * @param cache - where to read compiled grammars from (and write them to), or null to always build them
+     * @param maxBytes - the most (estimated) bytes of built grammars to keep
+     * @param maxEntries - the most built grammars to keep
+     */
+    public GrammarRegistry(GrammarCache cache, long maxBytes, int maxEntries) {
+        this.cache = cache;
+        this.maxBytes = maxBytes;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Registers the grammar in a file, without building it
+     * @param grammarFile - a .cfg file
+     * @return its key, for get(); the same for every file with the same contents
+     */
+    public String register(Path grammarFile) throws Exception {
+        return register(grammarFile, Files.readAllBytes(grammarFile));
+    }
+
+    /**
+     * Registers a grammar from its text, without building it
+     * @param contents - what a .cfg file would hold
+     * @return its key, for get()
+     */
+    public String register(byte[] contents) throws Exception {
+        return register(null, contents);
+    }
+
+    private String register(Path source, byte[] contents) throws Exception {
+        String key = GrammarCache.toHex(GrammarCache.hashOf(contents));
+        entries.computeIfAbsent(key, k -> new Entry(k, source, contents));
+        return key;
+    }
+
+    /**
+     * Registers a grammar and gets it, in one go
+     * @param grammarFile - a .cfg file
+     * @return the grammar and its tables
+     */
+    public CompiledGrammar load(Path grammarFile) throws Exception {
+        return get(register(grammarFile));
+    }
+
+    /**
+     * The built grammar for a key, building it first if it isn't resident. Blocks while another thread is building
+     * it.
+     * @param key - from register()
+     * @return the grammar and its tables
+     * @throws Exception if there's no such grammar or it doesn't build; the next get() tries again
+     */
+    public CompiledGrammar get(String key) throws Exception {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            throw new Exception("No grammar registered as " + key);
+        }
+
+        FutureTask<CompiledGrammar> build;
+        boolean building = false;
+        synchronized (this) {
+            build = entry.build;
+            if (build == null) {
+                build = new FutureTask<>(() -> compile(entry));
+                entry.build = build;
+                building = true;
+            } else {
+                // Marks it as recently used
+                resident.get(key);
+                hits++;
+            }
+        }
+
+        if (building) {
+            build.run();
+        }
+
+        CompiledGrammar compiled;
+        try {
+            compiled = build.get();
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (entry.build == build) {
+                    entry.build = null;
+                }
+            }
+
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+
+        if (building) {
+            long size = compiled.estimateSize();
+            synchronized (this) {
+                builds++;
+                if (entry.build == build) {
+                    entry.size = size;
+                    resident.put(key, entry);
+                    residentBytes += size;
+                    evict(entry);
+                }
+            }
+        }
+
+        return compiled;
+    }
+
+    private CompiledGrammar compile(Entry entry) throws Exception {
+        if (cache != null && entry.source != null) {
+            return cache.load(entry.source, entry.contents);
+        }
+
+        return CompiledGrammar.build(new CFG(new ByteArrayInputStream(entry.contents)));
+    }
+
+    /**
+     * Drops the least recently used grammars until the rest fit the budget
+     * @param keep - the one not to drop
+     */
+    private void evict(Entry keep) {
+        Iterator<Entry> eldest = resident.values().iterator();
+        while ((residentBytes > maxBytes || resident.size() > maxEntries) && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (entry == keep) {
+                continue;
+            }
+
+            eldest.remove();
+            entry.build = null;
+            residentBytes -= entry.size;
+            evictions++;
+        }
+    }
+
+    /**
+     * @param key - from register()
+     * @return whether the grammar is built and being kept
+     */
+    public synchronized boolean isResident(String key) {
+        return resident.containsKey(key);
+    }
+
+    /**
+     * @return the number of registered grammars (with different contents)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of built grammars being kept
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * @return the estimated bytes of the built grammars being kept
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return how many times a grammar has been built (or read from the cache)
+     */
+    public synchronized long getBuildCount() {
+        return builds;
+    }
+
+    /**
+     * @return how many get()s found the grammar built or being built
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return how many built grammars have been dropped
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d grammars, %d resident (%d bytes), %d builds, %d hits, %d evictions",
+                size(), resident.size(), residentBytes, builds, hits, evictions);
+    }
+}
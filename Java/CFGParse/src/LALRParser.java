@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds LALR(1) tables: the same LR(0) item sets and GoTo()s as SLRParser, but every reduction only gets the
+ * lookaheads that can actually follow it in its state, instead of the whole Follow set of its LHS.
+ *  <p>Lookaheads are computed with DeRemer &amp; Pennello's relations over the non-terminal transitions (p, A) of the
+ *  LR(0) automaton:</p>
+ *  <pre>
+ *  DR(p, A)     = { t ∈ Σ$ | GoTo(p, A) has a transition on t }
+ *  (p, A) reads (r, C)        iff r = GoTo(p, A), r has a transition on C, and C derives to lambda
+ *  (p, A) includes (p', B)    iff B → βAγ, γ derives to lambda, and p' goes to p on β
+ *  (q, A → ω) lookback (p, A) iff p goes to q on ω
+ *
+ *  Read(p, A)   = DR(p, A) ∪ ⋃{ Read(r, C) | (p, A) reads (r, C) }
+ *  Follow(p, A) = Read(p, A) ∪ ⋃{ Follow(p', B) | (p, A) includes (p', B) }
+ *  LA(q, A → ω) = ⋃{ Follow(p, A) | (q, A → ω) lookback (p, A) }
+ *  </pre>
+ *  <p>Read and Follow are each one pass of the digraph algorithm, which handles the cycles in reads/includes by
+ *  collapsing strongly connected components, so no set is computed more than once.</p>
+ */
+public class LALRParser extends SLRParser {
+    private static final BitSet NONE = new BitSet();
+
+    // (state << 32 | rule index) -> the lookaheads to reduce with that rule on in that state.
+    // Not initialized here on purpose: SLRParser's constructor fills it in (see reduceLookaheads), before this
+    // class' field initializers would run.
+    private Map<Long, BitSet> lookaheads;
+
+    // Set while SLRParser.applyGrammarChange() runs: the item sets aren't final yet (unreachable ones are only dropped
+    // at the end), so there's no point working out lookaheads for the rows it rebuilds; all of them are rebuilt after
+    private boolean patching;
+
+    /**
+     * Constructor. Just requires a CFG.
+     * @param grammar - the CFG for this LALRParser
+     */
+    public LALRParser(CFG grammar) {
+        super(grammar);
+    }
+
+    /**
+     * Constructor that builds the item sets and the action table on a ForkJoinPool (see SLRParser)
+     * @param grammar - the CFG for this LALRParser
+     * @param pool - the pool to build on, or null to build on this thread
+     */
+    public LALRParser(CFG grammar, ForkJoinPool pool) {
+        super(grammar, pool);
+    }
+
+    /**
+     * Same as SLRParser's, but works out the lookaheads first, so the rows don't race to do it if they're built in
+     * parallel
+     * @param itemSetsOfG - the canonical item sets
+     */
+    @Override
+    public void constructSLRActionTable(ArrayList<Set<SLRItem>> itemSetsOfG) {
+        if (lookaheads == null) {
+            computeLookaheads();
+        }
+
+        super.constructSLRActionTable(itemSetsOfG);
+    }
+
+    @Override
+    protected BitSet reduceLookaheads(int i, ProductionRule p) {
+        if (patching) {
+            return NONE;
+        }
+        if (lookaheads == null) {
+            computeLookaheads();
+        }
+
+        BitSet result = lookaheads.get(key(i, p.index));
+        return result == null ? NONE : result;
+    }
+
+    /**
+     * Same as SLRParser's, but a change anywhere can change lookaheads anywhere, so every row is rebuilt (the item
+     * sets themselves are still only patched). The lookaheads are worked out once the unreachable item sets are gone,
+     * so they can't add reads or includes edges.
+     * @param change - returned by CFG.addProductionRule()/removeProductionRule()
+     */
+    @Override
+    public void applyGrammarChange(GrammarChange change) {
+        lookaheads = null;
+        patching = true;
+        try {
+            super.applyGrammarChange(change);
+        } finally {
+            patching = false;
+        }
+
+        lookaheads = null;
+        constructSLRActionTable(canonicalItemSets);
+    }
+
+    private void computeLookaheads() {
+        CFG grammar = getGrammar();
+        int stateCount = canonicalItemSets.size();
+
+        // Number the non-terminal transitions
+        Map<Long, Integer> transitionIndex = new HashMap<>();
+        List<int[]> transitions = new ArrayList<>(); // {p, A}
+        for (int p = 0; p < stateCount; p++) {
+            for (AlphabetCharacter A : getTransitions(p).keySet()) {
+                if (grammar.getProductionsOf(A.id) != null) {
+                    transitionIndex.put(key(p, A.id), transitions.size());
+                    transitions.add(new int[] {p, A.id});
+                }
+            }
+        }
+
+        // DR and reads. DR is by the symbol table, not by whether a symbol has rules: a non-terminal that's never
+        // defined can't be read past, so it's neither read nor directly read.
+        SymbolTable symbols = grammar.getSymbolTable();
+        List<BitSet> read = new ArrayList<>(transitions.size());
+        List<int[]> reads = new ArrayList<>(transitions.size());
+        for (int[] transition : transitions) {
+            int r = goTo(transition[0], transition[1]);
+            BitSet directlyReads = new BitSet();
+            List<Integer> readsOf = new ArrayList<>();
+
+            for (AlphabetCharacter X : getTransitions(r).keySet()) {
+                if (symbols.isTerminal(X.id) || symbols.isEOF(X.id)) {
+                    directlyReads.set(X.id);
+                } else if (grammar.derivesToLambda(X.id)) {
+                    readsOf.add(transitionIndex.get(key(r, X.id)));
+                }
+            }
+
+            read.add(directlyReads);
+            reads.add(toArray(readsOf));
+        }
+        digraph(reads, read);
+
+        // includes and lookback, by walking every rule B → β from every p' that has a transition on B
+        List<List<Integer>> includes = new ArrayList<>(transitions.size());
+        for (int x = 0; x < transitions.size(); x++) {
+            includes.add(new ArrayList<>());
+        }
+        Map<Long, List<Integer>> lookback = new HashMap<>();
+
+        for (int x = 0; x < transitions.size(); x++) {
+            int start = transitions.get(x)[0];
+            for (ProductionRule rule : grammar.getProductionsOf(transitions.get(x)[1])) {
+                int q = start;
+                for (int i = 0; i < rule.rhs.size(); i++) {
+                    AlphabetCharacter X = rule.rhs.get(i);
+                    if (X.isLambda()) {
+                        continue;
+                    }
+
+                    if (grammar.getProductionsOf(X.id) != null
+                            && grammar.getAnalysis().derivesToLambda(rule.rhs, i + 1)) {
+                        includes.get(transitionIndex.get(key(q, X.id))).add(x);
+                    }
+                    q = goTo(q, X.id);
+                }
+
+                lookback.computeIfAbsent(key(q, rule.index), k -> new ArrayList<>()).add(x);
+            }
+        }
+
+        List<int[]> includesArrays = new ArrayList<>(includes.size());
+        for (List<Integer> includesOf : includes) {
+            includesArrays.add(toArray(includesOf));
+        }
+        // Follow starts out as Read
+        digraph(includesArrays, read);
+
+        lookaheads = new HashMap<>();
+        for (Map.Entry<Long, List<Integer>> entry : lookback.entrySet()) {
+            BitSet result = new BitSet();
+            for (int x : entry.getValue()) {
+                result.or(read.get(x));
+            }
+
+            lookaheads.put(entry.getKey(), result);
+        }
+    }
+
+    private int goTo(int state, int symbol) {
+        return getTransitions(state).get(getGrammar().getSymbolTable().get(symbol));
+    }
+
+    /**
+     * DeRemer &amp; Pennello's digraph algorithm: makes every sets[x] the union of itself and sets[y] for every y
+     * reachable from x in relation. Iterative Tarjan, so long chains don't overflow the stack.
+     * @param relation - x -> the ys it's related to
+     * @param sets - x -> its set; replaced with the result
+     */
+    static void digraph(List<int[]> relation, List<BitSet> sets) {
+        int n = sets.size();
+        int[] depth = new int[n]; // 0 = not visited yet, MAX_VALUE = done
+        int[] low = new int[n];
+        int[] nextEdge = new int[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        int stackSize = 0;
+
+        for (int start = 0; start < n; start++) {
+            if (depth[start] != 0) {
+                continue;
+            }
+
+            int callCount = 0;
+            stack[stackSize++] = start;
+            depth[start] = low[start] = stackSize;
+            calls[callCount++] = start;
+
+            while (callCount > 0) {
+                int x = calls[callCount - 1];
+                int[] edges = relation.get(x);
+
+                if (nextEdge[x] < edges.length) {
+                    int y = edges[nextEdge[x]++];
+                    if (depth[y] == 0) {
+                        stack[stackSize++] = y;
+                        depth[y] = low[y] = stackSize;
+                        calls[callCount++] = y;
+                    } else {
+                        low[x] = Math.min(low[x], low[y]);
+                        sets.get(x).or(sets.get(y));
+                    }
+                    continue;
+                }
+
+                // x is done: if it's the root of a strongly connected component, everything in it gets x's set
+                callCount--;
+                if (low[x] == depth[x]) {
+                    int y;
+                    do {
+                        y = stack[--stackSize];
+                        depth[y] = low[y] = Integer.MAX_VALUE;
+                        if (y != x) {
+                            // A copy, so the sets can still be grown independently by a later pass
+                            sets.set(y, (BitSet) sets.get(x).clone());
+                        }
+                    } while (y != x);
+                }
+
+                if (callCount > 0) {
+                    int parent = calls[callCount - 1];
+                    low[parent] = Math.min(low[parent], low[x]);
+                    sets.get(parent).or(sets.get(x));
+                }
+            }
+        }
+    }
+
+    private static long key(int high, int low) {
+        return ((long) high << 32) | low;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * This exception is thrown when building an LL(1) table finds two rules for the same non-terminal and terminal, i.e.
+ * the grammar isn't LL(1)
+ */
+public class LL1ConflictException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param nonTerminal - the non-terminal whose row has the conflict
+     * @param terminal - the terminal both rules are predicted on
+     */
+    public LL1ConflictException(AlphabetCharacter nonTerminal, AlphabetCharacter terminal) {
+        super("Conflict in LL1Table at non-terminal: " + nonTerminal + " and terminal: " + terminal);
+    }
+}
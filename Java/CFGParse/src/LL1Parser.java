@@ -1,11 +1,21 @@
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Queue;
-import java.util.Stack;
 
+/**
+ * Parses token streams with an LL1ParsingTable.
+ *  <p>The parser only holds on to the table, and every call keeps its own state: an int[] prediction stack of symbol
+ *  ids, with an end marker below every expansion. So one parser (and table) can serve any number of parses, one after
+ *  the other or at the same time.</p>
+ *  <p>The derivation can be built as a tree (LLTabularParsing()), or streamed to a ParseListener as it's found
+ *  (parse()), without a tree ever being built.</p>
+ */
 public class LL1Parser {
-    private ParseTreeNode root;
-    private LL1ParsingTable parsingTable;
-    private AlphabetCharacter marker;
+    private static final int INITIAL_DEPTH = 64;
+
+    private final LL1ParsingTable parsingTable;
+    private final SymbolTable symbols;
 
     /**
      * Initializes this parser with the table
@@ -13,9 +23,7 @@ public class LL1Parser {
      */
     public LL1Parser(LL1ParsingTable table) {
         this.parsingTable = table;
-
-        root = new ParseTreeNode(null, new AlphabetCharacter("ROOT"));
-        marker = new AlphabetCharacter("*");
+        this.symbols = table.getSymbolTable();
     }
 
     /**
@@ -25,49 +33,113 @@ public class LL1Parser {
      * @return the root of the parse tree
      */
     public ParseTreeNode LLTabularParsing(Queue<AlphabetCharacter> tokenStream, AlphabetCharacter startingSymbol) throws LLParseException {
-        ParseTreeNode currentNode = root;
-        Stack<AlphabetCharacter> kStack = new Stack<>();
-        kStack.push(startingSymbol);
+        ParseTreeBuilder builder = new ParseTreeBuilder();
+        parse(tokenStream, startingSymbol, builder);
+        return builder.getTree();
+    }
+
+    /**
+     * Same as above, pulling the tokens from a TokenSource
+     * @param tokens - where the tokens come from, e.g. a MappedTokenSource
+     * @param startingSymbol - the starting symbol of the grammar
+     * @return the root of the parse tree
+     */
+    public ParseTreeNode LLTabularParsing(TokenSource tokens, AlphabetCharacter startingSymbol) throws LLParseException, IOException {
+        ParseTreeBuilder builder = new ParseTreeBuilder();
+        parse(tokens, startingSymbol, builder);
+        return builder.getTree();
+    }
 
-        while (!kStack.empty()) {
-            AlphabetCharacter x = kStack.pop();
+    /**
+     * Runs the LLTabularParsing algorithm, handing the derivation to a listener as it goes
+     * @param tokenStream - the stream of tokens
+     * @param startingSymbol - the starting symbol of the grammar
+     * @param listener - gets the events
+     */
+    public void parse(Queue<AlphabetCharacter> tokenStream, AlphabetCharacter startingSymbol, ParseListener listener) throws LLParseException {
+        try {
+            parse(new QueueTokenSource(tokenStream, symbols), startingSymbol, listener);
+        } catch (IOException e) {
+            // A queue doesn't do I/O
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // Check if marker first, as it'll pass the 'isTerminal()' test :/
-            if (x.equals(marker)) {
-                currentNode = currentNode.parent;
-            } else if (x.isNonTerminal()) {
+    /**
+     * Runs the LLTabularParsing algorithm, pulling the tokens from a TokenSource and handing the derivation to a
+     * listener as it goes
+     *  <p>Events come out as soon as they're known: a non-terminal is entered when it's expanded and exited once its
+     *  whole expansion has been matched. So on a parse error the listener has seen everything up to that point.</p>
+     * @param tokens - where the tokens come from, e.g. a MappedTokenSource
+     * @param startingSymbol - the starting symbol of the grammar
+     * @param listener - gets the events
+     */
+    public void parse(TokenSource tokens, AlphabetCharacter startingSymbol, ParseListener listener) throws LLParseException, IOException {
+        // The id of the token at the top of the stream and its column in the table, looked up once per token
+        int lookahead = tokens.next();
+        int column = parsingTable.columnOf(lookahead);
+
+        int start = symbols.idOf(startingSymbol);
+        if (start < 0) {
+            throw new LLParseException(startingSymbol, tokens.token(), true);
+        }
+
+        int[] kStack = new int[INITIAL_DEPTH];
+        int top = 0;
+        kStack[top++] = start;
+
+        while (top > 0) {
+            int x = kStack[--top];
+
+            if (x < 0) {
+                listener.exitNonterminal(symbols.get(nonTerminalEndingAt(x)));
+            } else if (symbols.isNonTerminal(x)) {
                 // Throw exception if we cannot find the production rule specified.
-                if (!parsingTable.doesProductionRuleExist(x, tokenStream.peek())) {
-                    throw new LLParseException(x, tokenStream.peek(), true);
+                int row = parsingTable.rowOf(x);
+                int rule = row < 0 || column < 0 ? -1 : parsingTable.predictAt(row, column);
+                if (rule < 0) {
+                    throw new LLParseException(symbols.get(x), tokens.token(), true);
                 }
 
-                ProductionRule p = parsingTable.getProductionRuleOf(x, tokenStream.peek());
-                kStack.push(marker);
-                List<AlphabetCharacter> R = p.rhs;
-                // Pushes onto the stack in reverse order
-                for (int i = R.size() - 1; i >= 0; i--) {
-                    kStack.push(R.get(i));
+                // Pushes onto the stack in reverse order, above the end marker
+                int rhsStart = parsingTable.rhsStart(rule);
+                int rhsEnd = parsingTable.rhsEnd(rule);
+                if (top + 1 + rhsEnd - rhsStart > kStack.length) {
+                    kStack = Arrays.copyOf(kStack, 2 * (top + 1 + rhsEnd - rhsStart));
+                }
+                kStack[top++] = endOf(x);
+                for (int k = rhsEnd - 1; k >= rhsStart; k--) {
+                    kStack[top++] = parsingTable.rhsSymbol(k);
                 }
 
-                ParseTreeNode n = new ParseTreeNode(currentNode, x);
-                currentNode.addChild(n);
-                currentNode = n;
-            } else if (x.isTerminal() || x.isEOF()) {
-                if (x.isTerminal()) {
+                listener.enterNonterminal(symbols.get(x), parsingTable.getRule(rule));
+            } else if (symbols.isTerminal(x) || symbols.isEOF(x)) {
+                if (symbols.isTerminal(x)) {
                     // If x does *not* match the token at the top of the stream, then ParseError.
-                    if (x != tokenStream.peek()) {
-                        throw new LLParseException(x, tokenStream.peek());
+                    if (x != lookahead) {
+                        throw new LLParseException(symbols.get(x), tokens.token());
                     }
 
-                    tokenStream.remove();
+                    lookahead = tokens.next();
+                    column = parsingTable.columnOf(lookahead);
                 }
 
-                ParseTreeNode n = new ParseTreeNode(currentNode, x);
-                currentNode.addChild(n);
+                listener.terminal(symbols.get(x));
             }
         }
+    }
 
-        // Cur now points to Root, which as a single child: the start
-        return root.children.get(0);
+    /**
+     * The end marker pushed below the expansion of a non-terminal. Always negative, so never a symbol id.
+     */
+    private static int endOf(int nonTerminal) {
+        return -2 - nonTerminal;
+    }
+
+    /**
+     * The inverse of endOf()
+     */
+    private static int nonTerminalEndingAt(int marker) {
+        return -2 - marker;
     }
 }
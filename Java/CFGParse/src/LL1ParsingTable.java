@@ -1,38 +1,105 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
  * Represents an LL(1) table
+ *  <p>The table is one dense int[] of production rule indices, a row per non-terminal and a column per terminal (and
+ *  $), so a prediction is one array load once a symbol's row or column is known. The RHS of every rule in the table is
+ *  also kept, flattened into one int[] of symbol ids (without lambda), for parsers that push expansions as ints.</p>
+ *  <p>Immutable: it's filled in by a Builder (see CFG.generateParsingTable()), and patching it makes a new one (see
+ *  CFG.patchParsingTable()), so any number of threads can share one.</p>
  */
-public class LL1ParsingTable {
-    // Maps non terminals -> [ map of terminal -> production rule that triggered it, if it exists ]
-    private Map<AlphabetCharacter, Map<AlphabetCharacter, ProductionRule>> ll1Table;
+public final class LL1ParsingTable {
+    private static final int NONE = -1;
+
+    // Symbols of the grammar this table was built for
+    private final SymbolTable symbols;
+
+    // symbol id -> its row (non-terminals) or column (terminals and $), or NONE
+    private final int[] rowOf;
+    private final int[] columnOf;
+    private final int rowCount;
+    private final int columnCount;
+
+    // row * columnCount + column -> index of the production rule that triggered it, or NONE
+    private final int[] predictions;
+
+    // rule index -> the rule, for every rule that's been added
+    private final ProductionRule[] rules;
+
+    // Flattened RHSs: rule r's RHS is rhs[rhsStart[r]] to rhs[rhsStart[r + 1] - 1]
+    private final int[] rhsStart;
+    private final int[] rhs;
+
+    private LL1ParsingTable(SymbolTable symbols, int[] rowOf, int[] columnOf, int rowCount, int columnCount,
+                            int[] predictions, ProductionRule[] rules, int[] rhsStart, int[] rhs) {
+        this.symbols = symbols;
+        this.rowOf = rowOf;
+        this.columnOf = columnOf;
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.predictions = predictions;
+        this.rules = rules;
+        this.rhsStart = rhsStart;
+        this.rhs = rhs;
+    }
 
     /**
-     * Initializes the table
+     * Writes the table's arrays, as: row count, column count, then rowOf, columnOf, the predictions, and the
+     * flattened RHSs' starts and symbols, each as (length, ints)
+     * @param data - where to write it
      */
-    public LL1ParsingTable() {
-        ll1Table = new HashMap<>();
+    void write(DataOutputStream data) throws IOException {
+        data.writeInt(rowCount);
+        data.writeInt(columnCount);
+        for (int[] array : new int[][] {rowOf, columnOf, predictions, rhsStart, rhs}) {
+            data.writeInt(array.length);
+            for (int value : array) {
+                data.writeInt(value);
+            }
+        }
     }
 
     /**
-     * Adds a production rule for this nonTerminal/terminal combination
-     * @param nonTerminal -
-     * @param terminal -
-     * @param productionRule -
+     * Reads a table written by write(). The arrays are copied in bulk, so the table doesn't depend on the
+     * file staying mapped.
+     * @param grammar - the grammar the table was built for
+     * @param in - the ints write() wrote; left after them
+     * @return the table
+     * @throws Exception if the arrays don't fit together
      */
-    public void addProductionRule(AlphabetCharacter nonTerminal, AlphabetCharacter terminal, ProductionRule productionRule) throws Exception {
-        // Initialize as appropriately if needed
-        if (!ll1Table.containsKey(nonTerminal)) {
-            ll1Table.put(nonTerminal, new HashMap<>());
+    static LL1ParsingTable read(CFG grammar, IntBuffer in) throws Exception {
+        int rowCount = in.get();
+        int columnCount = in.get();
+        int[][] arrays = new int[5][];
+        for (int a = 0; a < arrays.length; a++) {
+            int length = in.get();
+            if (length < 0 || length > in.remaining()) {
+                throw new Exception("Corrupt LL(1) table: array " + a + " has length " + length);
+            }
+
+            arrays[a] = new int[length];
+            in.get(arrays[a]);
+        }
+
+        int[] predictions = arrays[2];
+        int[] rhsStart = arrays[3];
+        if (predictions.length != rowCount * columnCount || rhsStart.length == 0) {
+            throw new Exception("Corrupt LL(1) table: " + predictions.length + " cells for " + rowCount + " rows of "
+                    + columnCount);
         }
 
-        if (ll1Table.get(nonTerminal).containsKey(terminal)) {
-            // TODO: LL1 Conflict? There's already a production rule for this terminal
-            throw new Exception("Conflict in LL1Table at non-terminal: " + nonTerminal + " and terminal: " + terminal);
+        ProductionRule[] rules = new ProductionRule[rhsStart.length - 1];
+        for (int rule : predictions) {
+            if (rule != NONE) {
+                rules[rule] = grammar.getProductionRule(rule);
+            }
         }
 
-        ll1Table.get(nonTerminal).put(terminal, productionRule);
+        return new LL1ParsingTable(grammar.getSymbolTable(), arrays[0], arrays[1], rowCount, columnCount, predictions,
+                rules, rhsStart, arrays[4]);
     }
 
     /**
@@ -42,7 +109,60 @@ public class LL1ParsingTable {
      * @return -
      */
     public ProductionRule getProductionRuleOf(AlphabetCharacter nonTerminal, AlphabetCharacter terminal) {
-        return ll1Table.get(nonTerminal).get(terminal);
+        return getProductionRuleOf(symbols.idOf(nonTerminal), symbols.idOf(terminal));
+    }
+
+    /**
+     * Same as above, but by symbol id
+     * @param nonTerminal - id of the non-terminal
+     * @param terminal - id of the terminal
+     * @return the rule, or null if there isn't one
+     */
+    public ProductionRule getProductionRuleOf(int nonTerminal, int terminal) {
+        int rule = predict(nonTerminal, terminal);
+        return rule == NONE ? null : rules[rule];
+    }
+
+    /**
+     * Same as above, as a rule index
+     * @param nonTerminal - id of the non-terminal
+     * @param terminal - id of the terminal
+     * @return the index of the rule, or -1 if there isn't one
+     */
+    public int predict(int nonTerminal, int terminal) {
+        if (nonTerminal < 0 || terminal < 0 || nonTerminal >= rowOf.length || terminal >= columnOf.length) {
+            return NONE;
+        }
+
+        int row = rowOf[nonTerminal];
+        int column = columnOf[terminal];
+        return row == NONE || column == NONE ? NONE : predictions[row * columnCount + column];
+    }
+
+    /**
+     * The rule to expand with, by row and column
+     * @param row - from rowOf()
+     * @param column - from columnOf()
+     * @return the index of the rule, or -1 if there isn't one
+     */
+    public int predictAt(int row, int column) {
+        return predictions[row * columnCount + column];
+    }
+
+    /**
+     * @param symbol - a symbol id
+     * @return its row, or -1 if it isn't a non-terminal
+     */
+    public int rowOf(int symbol) {
+        return symbol >= 0 && symbol < rowOf.length ? rowOf[symbol] : NONE;
+    }
+
+    /**
+     * @param symbol - a symbol id
+     * @return its column, or -1 if it isn't a terminal or $
+     */
+    public int columnOf(int symbol) {
+        return symbol >= 0 && symbol < columnOf.length ? columnOf[symbol] : NONE;
     }
 
     /**
@@ -53,6 +173,182 @@ public class LL1ParsingTable {
      * @return - true if the production rule exists, false otherwise.
      */
     public boolean doesProductionRuleExist(AlphabetCharacter nonTerminal, AlphabetCharacter terminal) {
-        return ll1Table.containsKey(nonTerminal) && ll1Table.get(nonTerminal).containsKey(terminal);
+        return getProductionRuleOf(nonTerminal, terminal) != null;
+    }
+
+    /**
+     * @param rule - the index of a rule in the table
+     * @return the rule
+     */
+    public ProductionRule getRule(int rule) {
+        return rules[rule];
+    }
+
+    /**
+     * Where a rule's RHS starts in the flattened RHSs
+     * @param rule - the index of a rule in the table
+     * @return the index of its first symbol in rhsSymbol()
+     */
+    public int rhsStart(int rule) {
+        return rhsStart[rule];
+    }
+
+    /**
+     * Where a rule's RHS ends in the flattened RHSs
+     * @param rule - the index of a rule in the table
+     * @return one past the index of its last symbol in rhsSymbol() (the same as rhsStart() for lambda productions)
+     */
+    public int rhsEnd(int rule) {
+        return rhsStart[rule + 1];
+    }
+
+    /**
+     * @param k - between rhsStart(r) and rhsEnd(r) of some rule r
+     * @return the id of that symbol of r's RHS
+     */
+    public int rhsSymbol(int k) {
+        return rhs[k];
+    }
+
+    /**
+     * The symbols the rows and columns of this table are numbered by
+     * @return the symbol table
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Fills in an LL1ParsingTable, which it only hands out once it's done
+     */
+    static final class Builder {
+        private final SymbolTable symbols;
+        private int[] rowOf;
+        private int[] columnOf;
+        private int rowCount;
+        private int columnCount;
+        private int[] predictions;
+        private ProductionRule[] rules;
+
+        /**
+         * Starts an empty table
+         * @param symbols - the symbol table of the grammar
+         */
+        Builder(SymbolTable symbols) {
+            this.symbols = symbols;
+            rowOf = new int[0];
+            columnOf = new int[0];
+            predictions = new int[0];
+            rules = new ProductionRule[0];
+            ensureCapacity(symbols.size());
+        }
+
+        /**
+         * Starts with a copy of a table, to patch
+         * @param table - the table; left as it is
+         */
+        Builder(LL1ParsingTable table) {
+            this.symbols = table.symbols;
+            rowOf = table.rowOf.clone();
+            columnOf = table.columnOf.clone();
+            rowCount = table.rowCount;
+            columnCount = table.columnCount;
+            predictions = table.predictions.clone();
+            rules = table.rules.clone();
+        }
+
+        /**
+         * Adds a production rule for this nonTerminal/terminal combination
+         * @param nonTerminal - id of the non-terminal
+         * @param terminal - id of the terminal (or $)
+         * @param productionRule - a rule of the grammar (so with its index set)
+         * @throws LL1ConflictException if there's already a rule for them
+         * @throws Exception if they aren't a non-terminal and a terminal
+         */
+        void addProductionRule(int nonTerminal, int terminal, ProductionRule productionRule) throws Exception {
+            if (nonTerminal < 0 || terminal < 0 || rowOf[nonTerminal] == NONE || columnOf[terminal] == NONE) {
+                throw new Exception("Not a non-terminal and a terminal: " + symbols.get(nonTerminal) + ", " + symbols.get(terminal));
+            }
+
+            int cell = rowOf[nonTerminal] * columnCount + columnOf[terminal];
+            if (predictions[cell] != NONE) {
+                // There's already a production rule for this terminal
+                throw new LL1ConflictException(symbols.get(nonTerminal), symbols.get(terminal));
+            }
+
+            if (productionRule.index >= rules.length) {
+                rules = Arrays.copyOf(rules, Math.max(productionRule.index + 1, 2 * rules.length));
+            }
+            rules[productionRule.index] = productionRule;
+
+            predictions[cell] = productionRule.index;
+        }
+
+        /**
+         * Makes room for symbols that were added to the grammar after the table was built
+         * @param symbolCount - the number of symbols in the grammar now
+         */
+        void ensureCapacity(int symbolCount) {
+            if (symbolCount <= rowOf.length) {
+                return;
+            }
+
+            int oldSymbolCount = rowOf.length;
+            int oldColumnCount = columnCount;
+            rowOf = Arrays.copyOf(rowOf, symbolCount);
+            columnOf = Arrays.copyOf(columnOf, symbolCount);
+            for (int id = oldSymbolCount; id < symbolCount; id++) {
+                rowOf[id] = symbols.isNonTerminal(id) ? rowCount++ : NONE;
+                columnOf[id] = symbols.isTerminal(id) || symbols.isEOF(id) ? columnCount++ : NONE;
+            }
+
+            // Re-lay the rows out with the new column count
+            int[] resized = new int[rowCount * columnCount];
+            Arrays.fill(resized, NONE);
+            for (int row = 0; row < predictions.length / Math.max(oldColumnCount, 1); row++) {
+                System.arraycopy(predictions, row * oldColumnCount, resized, row * columnCount, oldColumnCount);
+            }
+            predictions = resized;
+        }
+
+        /**
+         * Removes every entry for this non-terminal
+         * @param nonTerminal - id of the non-terminal
+         */
+        void clearRow(int nonTerminal) {
+            int row = nonTerminal >= 0 && nonTerminal < rowOf.length ? rowOf[nonTerminal] : NONE;
+            if (row != NONE) {
+                Arrays.fill(predictions, row * columnCount, (row + 1) * columnCount, NONE);
+            }
+        }
+
+        /**
+         * The table as it is now, with the flattened RHSs of every rule that's been added. The builder can go on
+         * being used; the table doesn't change with it.
+         * @return the table
+         */
+        LL1ParsingTable build() {
+            int[] starts = new int[rules.length + 1];
+            int length = 0;
+            for (int r = 0; r < rules.length; r++) {
+                starts[r] = length;
+                if (rules[r] != null && !rules[r].isLambdaProduction()) {
+                    length += rules[r].rhs.size();
+                }
+            }
+            starts[rules.length] = length;
+
+            int[] flattened = new int[length];
+            for (int r = 0; r < rules.length; r++) {
+                if (rules[r] != null && !rules[r].isLambdaProduction()) {
+                    for (int k = 0; k < rules[r].rhs.size(); k++) {
+                        flattened[starts[r] + k] = rules[r].rhs.get(k).id;
+                    }
+                }
+            }
+
+            return new LL1ParsingTable(symbols, rowOf.clone(), columnOf.clone(), rowCount, columnCount,
+                    predictions.clone(), rules.clone(), starts, flattened);
+        }
     }
 }
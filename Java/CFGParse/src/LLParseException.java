@@ -2,6 +2,8 @@
  * This exception is thrown by the LL(1) Parser
  */
 public class LLParseException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public LLParseException() {
         super();
     }
@@ -0,0 +1,503 @@
+import java.util.*;
+
+/**
+ * Builds LR(1) tables for grammars that aren't LALR(1), without the blow-up of the canonical LR(1) construction.
+ *  <p>States are LR(1) kernels: an LR(0) kernel (see LRItemSet) plus one lookahead set per kernel item. When GoTo()
+ *  produces a state whose LR(0) kernel already exists, the two are merged if they're weakly compatible (Pager, 1977):
+ *  for every two kernel items i and j of the old (L) and new (L') state,</p>
+ *  <pre>
+ *  (L[i] ∩ L'[j] = ∅ and L'[i] ∩ L[j] = ∅)  or  L[i] ∩ L[j] ≠ ∅  or  L'[i] ∩ L'[j] ≠ ∅
+ *  </pre>
+ *  <p>which guarantees merging can't create a reduce/reduce conflict that the canonical LR(1) table doesn't have. A
+ *  merged state whose lookaheads grew is expanded again, so they reach its successors. For LALR(1) grammars this ends
+ *  up with (about) as many states as the LR(0) automaton.</p>
+ *  <p>The table has the same shape as SLRParser's, and conflicts are resolved the same way, but counted.</p>
+ */
+public class LR1Parser implements LRActionTable {
+    private CFG grammar;
+    private SymbolTable symbols;
+
+    // state -> its LR(0) kernel
+    private ArrayList<LRItemSet> kernels;
+
+    // state -> the lookaheads of each of its kernel items, in the kernel's order
+    private ArrayList<BitSet[]> lookaheads;
+
+    // state -> (X -> index of GoTo(state, X))
+    private ArrayList<Map<AlphabetCharacter, Integer>> transitions;
+
+    // LR(0) kernel -> the states that have it
+    private Map<LRItemSet, List<Integer>> statesByKernel;
+
+    // (rule, progress marker) -> First() of what comes after the symbol after the •, and whether that derives to lambda
+    private BitSet[][] firstAfter;
+    private boolean[][] nullableAfter;
+
+    // rule -> where its fresh start is in the closure being computed, or -1. Reused, and reset, by every closure().
+    private int[] freshSlot;
+
+    // Rows are state numbers, columns are X ∈ N union Σ$
+    public Map<Integer, Map<AlphabetCharacter, SLRAction>> actionTable;
+
+    private int mergeCount;
+    private int conflictCount;
+    private long buildTimeNanos;
+
+    /**
+     * Constructor. Just requires a CFG.
+     * @param grammar - the CFG for this LR1Parser
+     * @throws Exception if the starting symbol doesn't have exactly one rule
+     */
+    public LR1Parser(CFG grammar) throws Exception {
+        long started = System.nanoTime();
+        this.grammar = grammar;
+        this.symbols = grammar.getSymbolTable();
+
+        computeFirstAfter();
+        statesConstruction();
+        renumberStates();
+        constructActionTable();
+
+        buildTimeNanos = System.nanoTime() - started;
+    }
+
+    /**
+     * Builds the states from a worklist, merging every new state into a weakly compatible one with the same LR(0)
+     * kernel if there is one
+     * @throws Exception if the starting symbol doesn't have exactly one rule
+     */
+    private void statesConstruction() throws Exception {
+        // There's no augmented rule S' -> S, so the starting rule has to be the only one: it's what accepts
+        List<ProductionRule> startingRules = grammar.getProductionsOf(grammar.getStartingSymbol());
+        if (startingRules == null || startingRules.size() != 1) {
+            throw new Exception("LR1Parser needs exactly one rule for the starting symbol " + grammar.getStartingSymbol()
+                    + ", got " + (startingRules == null ? 0 : startingRules.size()));
+        }
+        ProductionRule start = startingRules.get(0);
+
+        kernels = new ArrayList<>();
+        lookaheads = new ArrayList<>();
+        transitions = new ArrayList<>();
+        statesByKernel = new HashMap<>();
+
+        // $ is part of the starting rule itself, so nothing follows it
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        BitSet queued = new BitSet();
+        addState(LRItemSet.of(new long[] {LRItemSet.pack(start.index, 0)}, 1), new BitSet[] {new BitSet()});
+        worklist.add(0);
+        queued.set(0);
+
+        while (!worklist.isEmpty()) {
+            int i = worklist.poll();
+            queued.clear(i);
+            expandState(i, worklist, queued);
+        }
+    }
+
+    private int addState(LRItemSet kernel, BitSet[] kernelLookaheads) {
+        int index = kernels.size();
+        kernels.add(kernel);
+        lookaheads.add(kernelLookaheads);
+        transitions.add(new HashMap<>());
+        statesByKernel.computeIfAbsent(kernel, k -> new ArrayList<>()).add(index);
+
+        return index;
+    }
+
+    /**
+     * (Re)computes every transition out of a state, with the state's current lookaheads
+     * @param i - the state
+     * @param worklist - states that are new, or whose lookaheads grew, are added to this
+     * @param queued - the states in worklist
+     */
+    private void expandState(int i, ArrayDeque<Integer> worklist, BitSet queued) {
+        Closure closure = closure(i);
+
+        // Group the items by the symbol after their •, keeping them sorted within each group
+        Integer[] order = new Integer[closure.size];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.comparingLong(k -> closure.items[k]));
+
+        TreeMap<Integer, List<Integer>> bySymbol = new TreeMap<>();
+        for (int k : order) {
+            AlphabetCharacter x = elementAfterProgressMarker(closure.items[k]);
+            if (x != null && !x.isLambda()) {
+                bySymbol.computeIfAbsent(x.id, id -> new ArrayList<>()).add(k);
+            }
+        }
+
+        Map<AlphabetCharacter, Integer> out = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> group : bySymbol.entrySet()) {
+            List<Integer> moved = group.getValue();
+            long[] items = new long[moved.size()];
+            BitSet[] itemLookaheads = new BitSet[moved.size()];
+            for (int k = 0; k < items.length; k++) {
+                items[k] = closure.items[moved.get(k)] + 1;
+                itemLookaheads[k] = (BitSet) closure.lookaheads[moved.get(k)].clone();
+            }
+
+            // Already sorted and distinct, so the lookaheads stay lined up with the kernel
+            LRItemSet kernel = LRItemSet.of(items, items.length);
+            int target = findOrMergeState(kernel, itemLookaheads, worklist, queued);
+            out.put(symbols.get(group.getKey()), target);
+        }
+
+        transitions.set(i, out);
+    }
+
+    /**
+     * Finds the state a GoTo() goes to: an identical one, a weakly compatible one (which is merged with it), or a new one
+     * @return the index of the state
+     */
+    private int findOrMergeState(LRItemSet kernel, BitSet[] kernelLookaheads, ArrayDeque<Integer> worklist,
+                                 BitSet queued) {
+        List<Integer> candidates = statesByKernel.get(kernel);
+        if (candidates != null) {
+            for (int candidate : candidates) {
+                if (Arrays.equals(lookaheads.get(candidate), kernelLookaheads)) {
+                    return candidate;
+                }
+            }
+
+            for (int candidate : candidates) {
+                BitSet[] existing = lookaheads.get(candidate);
+                if (!weaklyCompatible(existing, kernelLookaheads)) {
+                    continue;
+                }
+
+                boolean grew = false;
+                for (int k = 0; k < existing.length; k++) {
+                    int before = existing[k].cardinality();
+                    existing[k].or(kernelLookaheads[k]);
+                    grew |= existing[k].cardinality() != before;
+                }
+
+                if (grew) {
+                    mergeCount++;
+                    if (!queued.get(candidate)) {
+                        worklist.add(candidate);
+                        queued.set(candidate);
+                    }
+                }
+
+                return candidate;
+            }
+        }
+
+        int index = addState(kernel, kernelLookaheads);
+        worklist.add(index);
+        queued.set(index);
+        return index;
+    }
+
+    /**
+     * Pager's weak compatibility test (see above)
+     * @param a - the lookaheads of one state
+     * @param b - the lookaheads of the other, with the same LR(0) kernel
+     * @return whether they can be merged
+     */
+    static boolean weaklyCompatible(BitSet[] a, BitSet[] b) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = i + 1; j < a.length; j++) {
+                if ((!a[i].intersects(b[j]) && !b[i].intersects(a[j])) || a[i].intersects(a[j])
+                        || b[i].intersects(b[j])) {
+                    continue;
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Drops the states that merging left unreachable, and numbers the rest breadth-first from state 0, following
+     * transitions in symbol id order, so the numbering doesn't depend on the order the worklist went in
+     */
+    private void renumberStates() {
+        int[] newIndex = new int[kernels.size()];
+        Arrays.fill(newIndex, -1);
+        List<Integer> order = new ArrayList<>();
+        newIndex[0] = 0;
+        order.add(0);
+
+        for (int next = 0; next < order.size(); next++) {
+            TreeMap<Integer, Integer> out = new TreeMap<>();
+            for (Map.Entry<AlphabetCharacter, Integer> transition : transitions.get(order.get(next)).entrySet()) {
+                out.put(transition.getKey().id, transition.getValue());
+            }
+
+            for (int target : out.values()) {
+                if (newIndex[target] < 0) {
+                    newIndex[target] = order.size();
+                    order.add(target);
+                }
+            }
+        }
+
+        ArrayList<LRItemSet> newKernels = new ArrayList<>(order.size());
+        ArrayList<BitSet[]> newLookaheads = new ArrayList<>(order.size());
+        ArrayList<Map<AlphabetCharacter, Integer>> newTransitions = new ArrayList<>(order.size());
+        for (int old : order) {
+            newKernels.add(kernels.get(old));
+            newLookaheads.add(lookaheads.get(old));
+
+            Map<AlphabetCharacter, Integer> out = new HashMap<>();
+            for (Map.Entry<AlphabetCharacter, Integer> transition : transitions.get(old).entrySet()) {
+                out.put(transition.getKey(), newIndex[transition.getValue()]);
+            }
+            newTransitions.add(out);
+        }
+
+        kernels = newKernels;
+        lookaheads = newLookaheads;
+        transitions = newTransitions;
+        statesByKernel = null;
+    }
+
+    /**
+     * Builds the action table, the same way SLRParser does but with each item's own lookaheads
+     */
+    private void constructActionTable() {
+        actionTable = new TreeMap<>();
+        List<AlphabetCharacter> allGrammarSymbols = new ArrayList<>(grammar.getAllGrammarSymbols());
+        allGrammarSymbols.sort(Comparator.comparingInt(x -> x.id));
+
+        for (int i = 0; i < kernels.size(); i++) {
+            Map<AlphabetCharacter, SLRAction> row = new HashMap<>();
+            actionTable.put(i, row);
+            Closure closure = closure(i);
+
+            // Case #1: GoTo()s
+            for (Map.Entry<AlphabetCharacter, Integer> transition : transitions.get(i).entrySet()) {
+                row.put(transition.getKey(), SLRAction.createShiftAndGoTo(transition.getValue(), transition.getKey()));
+            }
+
+            // Case #2: ReduceWith(), on each item's lookaheads. Earliest rule wins a reduce/reduce conflict, and reduce
+            // wins a shift/reduce one, like SLRParser, but conflicts are counted here. Items are visited by rule.
+            Integer[] order = new Integer[closure.size];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, Comparator.comparingLong(k -> -closure.items[k]));
+
+            Map<AlphabetCharacter, SLRAction> reductions = new HashMap<>();
+            for (int k : order) {
+                ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(closure.items[k]));
+                if (!(LRItemSet.progressMarkerOf(closure.items[k]) == p.rhs.size() || p.isLambdaProduction())) {
+                    continue;
+                }
+
+                BitSet la = closure.lookaheads[k];
+                for (int f = la.nextSetBit(0); f >= 0; f = la.nextSetBit(f + 1)) {
+                    AlphabetCharacter x = symbols.get(f);
+                    SLRAction previous = reductions.put(x, SLRAction.createReduceWith(p, x));
+                    if (previous != null || row.containsKey(x)) {
+                        conflictCount++;
+                    }
+                }
+            }
+            row.putAll(reductions);
+
+            // Case 3: ReduceWithAndAccept()
+            for (int k = 0; k < closure.size; k++) {
+                ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(closure.items[k]));
+                if (p.lhs == grammar.getStartingSymbol() && LRItemSet.progressMarkerOf(closure.items[k]) == p.rhs.size()) {
+                    for (AlphabetCharacter x : allGrammarSymbols) {
+                        row.put(x, SLRAction.createReduceWithAndAccept(p, x));
+                    }
+
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The LR(1) closure of a state: its kernel items with their lookaheads, plus the fresh starts they bring in, each
+     * with First(β) ∪ (the lookaheads of A → α•Bβ, if β derives to lambda) from every item A → α•Bβ that brings it in
+     * @param i - the state
+     * @return the items and their lookaheads
+     */
+    private Closure closure(int i) {
+        LRItemSet kernel = kernels.get(i);
+        BitSet[] kernelLookaheads = lookaheads.get(i);
+        Closure closure = new Closure(kernel.size() + 8);
+
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int k = 0; k < kernel.size(); k++) {
+            int slot = closure.add(kernel.get(k), (BitSet) kernelLookaheads[k].clone());
+            if (LRItemSet.progressMarkerOf(kernel.get(k)) == 0) {
+                freshSlot[LRItemSet.ruleOf(kernel.get(k))] = slot;
+            }
+            worklist.add(slot);
+        }
+
+        while (!worklist.isEmpty()) {
+            int slot = worklist.poll();
+            long item = closure.items[slot];
+            AlphabetCharacter B = elementAfterProgressMarker(item);
+            if (B == null || grammar.getProductionsOf(B.id) == null) {
+                continue;
+            }
+
+            int rule = LRItemSet.ruleOf(item);
+            int progressMarker = LRItemSet.progressMarkerOf(item);
+            BitSet spontaneous = firstAfter[rule][progressMarker];
+            boolean propagates = nullableAfter[rule][progressMarker];
+
+            for (ProductionRule p : grammar.getProductionsOf(B.id)) {
+                int target = freshSlot[p.index];
+                boolean changed;
+                if (target < 0) {
+                    target = freshSlot[p.index] = closure.add(LRItemSet.pack(p.index, 0), new BitSet());
+                    changed = true;
+                } else {
+                    changed = false;
+                }
+
+                BitSet la = closure.lookaheads[target];
+                int before = la.cardinality();
+                la.or(spontaneous);
+                if (propagates) {
+                    la.or(closure.lookaheads[slot]);
+                }
+
+                if (changed || la.cardinality() != before) {
+                    worklist.add(target);
+                }
+            }
+        }
+
+        for (int k = 0; k < closure.size; k++) {
+            freshSlot[LRItemSet.ruleOf(closure.items[k])] = -1;
+        }
+
+        return closure;
+    }
+
+    /**
+     * Works out firstAfter and nullableAfter for every item
+     */
+    private void computeFirstAfter() {
+        GrammarAnalysis analysis = grammar.getAnalysis();
+        int ruleCount = grammar.getProductionRules().size();
+        firstAfter = new BitSet[ruleCount][];
+        nullableAfter = new boolean[ruleCount][];
+        freshSlot = new int[ruleCount];
+        Arrays.fill(freshSlot, -1);
+
+        for (int r = 0; r < ruleCount; r++) {
+            ArrayList<AlphabetCharacter> rhs = grammar.getProductionRule(r).rhs;
+            firstAfter[r] = new BitSet[rhs.size() + 1];
+            nullableAfter[r] = new boolean[rhs.size() + 1];
+
+            for (int progressMarker = 0; progressMarker <= rhs.size(); progressMarker++) {
+                int from = Math.min(progressMarker + 1, rhs.size());
+                firstAfter[r][progressMarker] = analysis.firstSetOf(rhs, from);
+                nullableAfter[r][progressMarker] = analysis.derivesToLambda(rhs, from);
+            }
+        }
+    }
+
+    /**
+     * Given A → α•Bβ, returns B, or null if the progress marker is at the end
+     */
+    private AlphabetCharacter elementAfterProgressMarker(long item) {
+        ArrayList<AlphabetCharacter> rhs = grammar.getProductionRule(LRItemSet.ruleOf(item)).rhs;
+        int progressMarker = LRItemSet.progressMarkerOf(item);
+
+        return progressMarker < rhs.size() ? rhs.get(progressMarker) : null;
+    }
+
+    /**
+     * The transitions out of a state
+     * @param i - the state
+     * @return X -> the index of GoTo(i, X), for every X that has one
+     */
+    public Map<AlphabetCharacter, Integer> getTransitions(int i) {
+        return Collections.unmodifiableMap(transitions.get(i));
+    }
+
+    /**
+     * @return how many states the table has
+     */
+    public int getStateCount() {
+        return kernels.size();
+    }
+
+    /**
+     * @return how many different LR(0) kernels the states have, i.e. how many states the LR(0)/LALR(1) automaton has
+     */
+    public int getLR0StateCount() {
+        return new HashSet<>(kernels).size();
+    }
+
+    /**
+     * @return how many times a state was merged into a weakly compatible one and got new lookaheads from it
+     */
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    /**
+     * @return how many action table cells had more than one action (and were resolved like SLRParser does)
+     */
+    public int getConflictCount() {
+        return conflictCount;
+    }
+
+    /**
+     * @return how long the constructor took to build the states and the table, in milliseconds
+     */
+    public long getBuildTimeMillis() {
+        return buildTimeNanos / 1_000_000;
+    }
+
+    @Override
+    public CFG getGrammar() {
+        return grammar;
+    }
+
+    @Override
+    public Map<Integer, Map<AlphabetCharacter, SLRAction>> getActionTable() {
+        return actionTable;
+    }
+
+    /**
+     * The state counts, conflicts and build time, on one line
+     */
+    @Override
+    public String toString() {
+        return "LR(1): " + getStateCount() + " states (" + getLR0StateCount() + " LR(0) states), " + conflictCount
+                + " conflicts, built in " + getBuildTimeMillis() + " ms";
+    }
+
+    /**
+     * The items of a closure and their lookaheads, in the order they were found
+     */
+    private static class Closure {
+        long[] items;
+        BitSet[] lookaheads;
+        int size;
+
+        Closure(int capacity) {
+            items = new long[capacity];
+            lookaheads = new BitSet[capacity];
+        }
+
+        int add(long item, BitSet itemLookaheads) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                lookaheads = Arrays.copyOf(lookaheads, size * 2);
+            }
+
+            items[size] = item;
+            lookaheads[size] = itemLookaheads;
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+import java.util.Map;
+
+/**
+ * The output of an LR parser generator (SLRParser, LALRParser, ...), in the shape they all share, so one driver can
+ * run any of them
+ */
+public interface LRActionTable {
+    /**
+     * The grammar the table was built for
+     * @return the CFG
+     */
+    CFG getGrammar();
+
+    /**
+     * The action table. Rows are state numbers (0 is the starting state), columns are X ∈ N union Σ$.
+     * @return state -> (grammar symbol -> what to do)
+     */
+    Map<Integer, Map<AlphabetCharacter, SLRAction>> getActionTable();
+}
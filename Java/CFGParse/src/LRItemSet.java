@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * An immutable set of LR items, packed into a sorted long[].
+ *  <p>Every item is encoded as (production rule index &lt;&lt; 32 | progress marker), so an item set costs 8 bytes per
+ *  item instead of an SLRItem and a HashMap node each, its hash is computed once, and two sets are compared with a
+ *  single array compare.</p>
+ */
+public final class LRItemSet {
+    public static final LRItemSet EMPTY = new LRItemSet(new long[0], 0);
+
+    private final long[] items;
+    private final int hash;
+
+    private LRItemSet(long[] items, int length) {
+        this.items = length == items.length ? items : Arrays.copyOf(items, length);
+        this.hash = Arrays.hashCode(this.items);
+    }
+
+    /**
+     * Builds an item set out of packed items, which may be unsorted and contain duplicates. The array is reused.
+     * @param items - see pack()
+     * @param length - how many of them to use
+     * @return the set
+     */
+    public static LRItemSet of(long[] items, int length) {
+        Arrays.sort(items, 0, length);
+
+        int distinct = 0;
+        for (int i = 0; i < length; i++) {
+            if (distinct == 0 || items[distinct - 1] != items[i]) {
+                items[distinct++] = items[i];
+            }
+        }
+
+        return distinct == 0 ? EMPTY : new LRItemSet(items, distinct);
+    }
+
+    /**
+     * Packs an item into a long. Sorting packed items sorts them by rule, then by progress marker.
+     * @param rule - the index of the production rule
+     * @param progressMarker - the position of •
+     * @return the item
+     */
+    public static long pack(int rule, int progressMarker) {
+        return ((long) rule << 32) | progressMarker;
+    }
+
+    public static int ruleOf(long item) {
+        return (int) (item >>> 32);
+    }
+
+    public static int progressMarkerOf(long item) {
+        return (int) item;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public boolean isEmpty() {
+        return items.length == 0;
+    }
+
+    /**
+     * @param i - between 0 and size()
+     * @return the i-th smallest item
+     */
+    public long get(int i) {
+        return items[i];
+    }
+
+    public boolean contains(long item) {
+        return Arrays.binarySearch(items, item) >= 0;
+    }
+
+    /**
+     * Whether any item in this set is of the given rule
+     * @param rule - the index of the rule
+     * @return see above
+     */
+    public boolean containsRule(int rule) {
+        int i = Arrays.binarySearch(items, pack(rule, 0));
+        if (i < 0) {
+            i = -i - 1;
+        }
+
+        return i < items.length && ruleOf(items[i]) == rule;
+    }
+
+    /**
+     * This set without the items of one rule, and with the items of another one renumbered (e.g. after a rule was
+     * removed from the grammar and the last rule took its place)
+     * @param removed - the index of the rule to drop, or -1
+     * @param from - the old index of the renumbered rule, or -1
+     * @param to - its new index
+     * @return the new set, or this one if nothing changed
+     */
+    public LRItemSet renumber(int removed, int from, int to) {
+        if (!containsRule(removed) && !containsRule(from)) {
+            return this;
+        }
+
+        long[] result = new long[items.length];
+        int length = 0;
+        for (long item : items) {
+            int rule = ruleOf(item);
+            if (rule == removed) {
+                continue;
+            }
+
+            result[length++] = rule == from ? pack(to, progressMarkerOf(item)) : item;
+        }
+
+        return of(result, length);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LRItemSet that = (LRItemSet) o;
+        return hash == that.hash && Arrays.equals(items, that.items);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (long item : items) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(ruleOf(item)).append('.').append(progressMarkerOf(item));
+        }
+
+        return result.append("]").toString();
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.Collection;
+
+/**
+ * This exception is thrown by the shift-reduce parser
+ */
+public class LRParseException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public LRParseException() {
+        super();
+    }
+
+    /**
+     * For a terminal that the current state has no action for
+     * @param actual - the terminal we got (null if the input isn't part of the grammar at all)
+     * @param state - the state the parser was in
+     * @param expected - the terminals it did have an action for
+     */
+    public LRParseException(AlphabetCharacter actual, int state, Collection<AlphabetCharacter> expected) {
+        super("Invalid terminal in input stream in state " + state + ". Expected one of: " + expected + "   got: " + actual);
+    }
+}
@@ -0,0 +1,540 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * A compressed LR action/goto table, with every action encoded in one int.
+ *  <p>An action is (kind &lt;&lt; 30 | argument): ERROR, SHIFT to a state, REDUCE with a rule, or ACCEPT (reducing with
+ *  the starting rule). Rows are packed into one array by row displacement: state s's action on terminal t is at
+ *  base[s] + t, if check[] there says it belongs to s. Every state also gets a default action, used for every terminal
+ *  it has no entry for: ACCEPT for accepting states, its most common reduction otherwise, so most reduce entries don't
+ *  have to be stored at all. Like yacc, this means an error can be detected after some extra reductions, but never
+ *  after shifting anything else.</p>
+ *  <p>GoTo()s on non-terminals are packed the same way, column by column, with the most common target of every
+ *  non-terminal as its default.</p>
+ *  <p>Both lookups are O(1) array reads. getActionTable() turns it back into the map form, for debugging.</p>
+ *  <p>The arrays are IntBuffers, so a table CompiledGrammar wrote can be used straight out of the mapped file (see
+ *  write() and read()); a table built in memory just wraps its int[]s.</p>
+ */
+public final class LRTable implements LRActionTable, ShiftReduceTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    private static final int NONE = -1;
+
+    private final CFG grammar;
+    private final int stateCount;
+    private final int symbolCount;
+
+    // Terminal actions: state -> offset into actions/actionCheck, and its default action
+    private final IntBuffer actionBase;
+    private final IntBuffer actions;
+    private final IntBuffer actionCheck;
+    private final IntBuffer defaultActions;
+
+    // Non-terminal GoTo()s: non-terminal -> offset into gotos/gotoCheck (indexed by state), and its default target
+    private final IntBuffer gotoBase;
+    private final IntBuffer gotos;
+    private final IntBuffer gotoCheck;
+    private final IntBuffer defaultGotos;
+
+    // Rule -> its LHS' id, and how many states a reduction with it pops (0 for lambda productions)
+    private final int[] ruleLhs;
+    private final int[] ruleLength;
+
+    private Map<Integer, Map<AlphabetCharacter, SLRAction>> actionTable;
+
+    private LRTable(CFG grammar, int stateCount, int[][] actionRows, int[] defaultActions, int[][] gotoColumns,
+                    int[] defaultGotos) {
+        this(grammar, stateCount, wrap(displace(actionRows, grammar.getSymbolTable().size()), defaultActions),
+                wrap(displace(gotoColumns, stateCount), defaultGotos));
+    }
+
+    /**
+     * @param action - {actionBase, actions, actionCheck, defaultActions}
+     * @param goTo - {gotoBase, gotos, gotoCheck, defaultGotos}
+     */
+    private LRTable(CFG grammar, int stateCount, IntBuffer[] action, IntBuffer[] goTo) {
+        this.grammar = grammar;
+        this.stateCount = stateCount;
+        this.symbolCount = grammar.getSymbolTable().size();
+
+        actionBase = action[0];
+        actions = action[1];
+        actionCheck = action[2];
+        defaultActions = action[3];
+
+        gotoBase = goTo[0];
+        gotos = goTo[1];
+        gotoCheck = goTo[2];
+        defaultGotos = goTo[3];
+
+        List<ProductionRule> rules = grammar.getProductionRules();
+        ruleLhs = new int[rules.size()];
+        ruleLength = new int[rules.size()];
+        for (ProductionRule p : rules) {
+            ruleLhs[p.index] = p.lhs.id;
+            ruleLength[p.index] = p.isLambdaProduction() ? 0 : p.rhs.size();
+        }
+    }
+
+    /**
+     * Compresses the action table of an LR parser generator
+     * @param table - e.g. an SLRParser, LALRParser or LR1Parser
+     * @return the compressed table
+     * @throws Exception - if the table refers to something that isn't part of its grammar
+     */
+    public static LRTable compress(LRActionTable table) throws Exception {
+        CFG grammar = table.getGrammar();
+        SymbolTable symbols = grammar.getSymbolTable();
+        Map<Integer, Map<AlphabetCharacter, SLRAction>> actionTable = table.getActionTable();
+        int stateCount = actionTable.size();
+
+        // Per state: its terminal actions, as sparse (terminal, action) pairs, minus those its default action covers
+        int[][] actionRows = new int[stateCount][];
+        int[] defaultActions = new int[stateCount];
+        // Per non-terminal: (state, target) pairs, minus those its default target covers
+        List<List<int[]>> gotoEntries = new ArrayList<>();
+        for (int id = 0; id < symbols.size(); id++) {
+            gotoEntries.add(null);
+        }
+
+        for (Map.Entry<Integer, Map<AlphabetCharacter, SLRAction>> row : actionTable.entrySet()) {
+            int state = row.getKey();
+            if (state < 0 || state >= stateCount) {
+                throw new Exception("Action table rows aren't numbered 0 to " + (stateCount - 1) + ": " + state);
+            }
+
+            Map<Integer, Integer> terminalActions = new TreeMap<>();
+            Map<Integer, Integer> reductionCounts = new HashMap<>();
+            boolean accepts = false;
+
+            for (Map.Entry<AlphabetCharacter, SLRAction> cell : row.getValue().entrySet()) {
+                int symbol = symbols.idOf(cell.getKey());
+                if (symbol < 0) {
+                    throw new Exception("Not a symbol of this grammar: " + cell.getKey());
+                }
+
+                SLRAction action = cell.getValue();
+                if (action.action == SLRAction.SLRActionEnum.ReduceWithAndAccept) {
+                    accepts = true;
+                    defaultActions[state] = encode(ACCEPT, ruleIndexOf(grammar, action.productionRuleReducedWith));
+                    continue;
+                }
+
+                if (grammar.getProductionsOf(symbol) != null) {
+                    if (action.action != SLRAction.SLRActionEnum.ShiftAndGoTo) {
+                        throw new Exception("Not a GoTo() on a non-terminal: " + action);
+                    }
+
+                    if (gotoEntries.get(symbol) == null) {
+                        gotoEntries.set(symbol, new ArrayList<>());
+                    }
+                    gotoEntries.get(symbol).add(new int[] {state, action.goToItemSet});
+                    continue;
+                }
+
+                int encoded = action.action == SLRAction.SLRActionEnum.ShiftAndGoTo
+                        ? encode(SHIFT, action.goToItemSet)
+                        : encode(REDUCE, ruleIndexOf(grammar, action.productionRuleReducedWith));
+                terminalActions.put(symbol, encoded);
+                if (kindOf(encoded) == REDUCE) {
+                    reductionCounts.merge(encoded, 1, Integer::sum);
+                }
+            }
+
+            if (accepts) {
+                // An accepting row accepts on everything, so the default is the whole row
+                actionRows[state] = new int[0];
+                continue;
+            }
+
+            // The most common reduction becomes the default; ties go to the earliest rule
+            int defaultAction = ERROR;
+            int mostCommon = 0;
+            for (Map.Entry<Integer, Integer> reduction : new TreeMap<>(reductionCounts).entrySet()) {
+                if (reduction.getValue() > mostCommon) {
+                    defaultAction = reduction.getKey();
+                    mostCommon = reduction.getValue();
+                }
+            }
+            defaultActions[state] = defaultAction;
+
+            int[] pairs = new int[2 * terminalActions.size()];
+            int length = 0;
+            for (Map.Entry<Integer, Integer> cell : terminalActions.entrySet()) {
+                if (cell.getValue() != defaultAction) {
+                    pairs[length++] = cell.getKey();
+                    pairs[length++] = cell.getValue();
+                }
+            }
+            actionRows[state] = Arrays.copyOf(pairs, length);
+        }
+
+        // Every non-terminal's most common GoTo() target becomes its default
+        int[][] gotoColumns = new int[symbols.size()][];
+        int[] defaultGotos = new int[symbols.size()];
+        Arrays.fill(defaultGotos, NONE);
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            List<int[]> entries = gotoEntries.get(symbol);
+            if (entries == null) {
+                gotoColumns[symbol] = new int[0];
+                continue;
+            }
+
+            Map<Integer, Integer> targetCounts = new TreeMap<>();
+            for (int[] entry : entries) {
+                targetCounts.merge(entry[1], 1, Integer::sum);
+            }
+            int mostCommon = 0;
+            for (Map.Entry<Integer, Integer> target : targetCounts.entrySet()) {
+                if (target.getValue() > mostCommon) {
+                    defaultGotos[symbol] = target.getKey();
+                    mostCommon = target.getValue();
+                }
+            }
+
+            entries.sort(Comparator.comparingInt(entry -> entry[0]));
+            int[] pairs = new int[2 * entries.size()];
+            int length = 0;
+            for (int[] entry : entries) {
+                if (entry[1] != defaultGotos[symbol]) {
+                    pairs[length++] = entry[0];
+                    pairs[length++] = entry[1];
+                }
+            }
+            gotoColumns[symbol] = Arrays.copyOf(pairs, length);
+        }
+
+        return new LRTable(grammar, stateCount, actionRows, defaultActions, gotoColumns, defaultGotos);
+    }
+
+    private static IntBuffer[] wrap(int[][] packed, int[] defaults) {
+        return new IntBuffer[] {IntBuffer.wrap(packed[0]), IntBuffer.wrap(packed[1]), IntBuffer.wrap(packed[2]),
+                IntBuffer.wrap(defaults)};
+    }
+
+    /**
+     * Writes the table's arrays (not its grammar), as: state count, then every array as (length, ints). Each array
+     * starts at a multiple of 4 bytes from where data started, so read() can wrap them in place.
+     * @param data - where to write it; its size() should be a multiple of 4
+     */
+    void write(DataOutputStream data) throws IOException {
+        data.writeInt(stateCount);
+        for (IntBuffer array : new IntBuffer[] {actionBase, actions, actionCheck, defaultActions, gotoBase, gotos,
+                gotoCheck, defaultGotos}) {
+            data.writeInt(array.capacity());
+            for (int i = 0; i < array.capacity(); i++) {
+                data.writeInt(array.get(i));
+            }
+        }
+    }
+
+    /**
+     * Uses a table written by write() where it is, without copying it
+     * @param grammar - the grammar the table was built for
+     * @param in - the ints write() wrote, from its state count on; left after them
+     * @return the table
+     * @throws Exception if the arrays don't fit together, or refer to states or rules that aren't there
+     */
+    static LRTable read(CFG grammar, IntBuffer in) throws Exception {
+        int stateCount = in.get();
+        IntBuffer[] arrays = new IntBuffer[8];
+        for (int a = 0; a < arrays.length; a++) {
+            int length = in.get();
+            if (length < 0 || length > in.remaining()) {
+                throw new Exception("Corrupt LR table: array " + a + " has length " + length);
+            }
+
+            arrays[a] = in.slice();
+            arrays[a].limit(length);
+            arrays[a] = arrays[a].slice();
+            in.position(in.position() + length);
+        }
+
+        int symbolCount = grammar.getSymbolTable().size();
+        if (stateCount <= 0 || arrays[0].capacity() != stateCount || arrays[3].capacity() != stateCount
+                || arrays[4].capacity() != symbolCount || arrays[7].capacity() != symbolCount) {
+            throw new Exception("Corrupt LR table: not sized for " + stateCount + " states and " + symbolCount
+                    + " symbols");
+        }
+
+        // Everything a lookup can reach has to be there, so a bad file fails here rather than in the middle of a parse
+        checkDisplaced(arrays[0], arrays[1], arrays[2], symbolCount, "action");
+        checkDisplaced(arrays[4], arrays[5], arrays[6], stateCount, "GoTo()");
+
+        int ruleCount = grammar.getProductionRules().size();
+        for (int slot = 0; slot < arrays[1].capacity(); slot++) {
+            if (arrays[2].get(slot) != NONE) {
+                checkAction(arrays[1].get(slot), stateCount, ruleCount);
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            checkAction(arrays[3].get(state), stateCount, ruleCount);
+        }
+
+        for (int slot = 0; slot < arrays[5].capacity(); slot++) {
+            if (arrays[6].get(slot) != NONE) {
+                checkGoTo(arrays[5].get(slot), stateCount);
+            }
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            checkGoTo(arrays[7].get(symbol), stateCount);
+        }
+
+        return new LRTable(grammar, stateCount, Arrays.copyOfRange(arrays, 0, 4), Arrays.copyOfRange(arrays, 4, 8));
+    }
+
+    private static void checkDisplaced(IntBuffer base, IntBuffer values, IntBuffer check, int columnCount,
+                                       String what) throws Exception {
+        if (values.capacity() != check.capacity()) {
+            throw new Exception("Corrupt LR table: " + what + " values and checks differ in length");
+        }
+
+        for (int row = 0; row < base.capacity(); row++) {
+            if (base.get(row) < 0 || base.get(row) > values.capacity() - columnCount) {
+                throw new Exception("Corrupt LR table: " + what + " row " + row + " is out of bounds");
+            }
+        }
+    }
+
+    private static void checkAction(int action, int stateCount, int ruleCount) throws Exception {
+        int argument = argumentOf(action);
+        boolean valid;
+        switch (kindOf(action)) {
+            case SHIFT:
+                valid = argument < stateCount;
+                break;
+            case REDUCE:
+            case ACCEPT:
+                valid = argument < ruleCount;
+                break;
+            default:
+                valid = action == ERROR;
+        }
+
+        if (!valid) {
+            throw new Exception("Corrupt LR table: bad action " + Integer.toHexString(action));
+        }
+    }
+
+    private static void checkGoTo(int target, int stateCount) throws Exception {
+        if (target != NONE && (target < 0 || target >= stateCount)) {
+            throw new Exception("Corrupt LR table: GoTo() to state " + target);
+        }
+    }
+
+    /**
+     * Packs sparse rows into one array with row displacement: every row gets the lowest offset at which none of its
+     * entries land on a slot that's taken. Rows are placed from the fullest to the emptiest, which packs best.
+     * @param rows - row -> (column, value) pairs, by column
+     * @param columnCount - how many columns a row can have
+     * @return {base, values, check}: row r's value in column c is values[base[r] + c], if check[base[r] + c] == r
+     */
+    private static int[][] displace(int[][] rows, int columnCount) {
+        Integer[] order = new Integer[rows.length];
+        for (int r = 0; r < rows.length; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, (a, b) -> rows[b].length != rows[a].length ? rows[b].length - rows[a].length : a - b);
+
+        int[] base = new int[rows.length];
+        BitSet taken = new BitSet();
+        int size = 0;
+        for (int r : order) {
+            int[] row = rows[r];
+            if (row.length == 0) {
+                continue;
+            }
+
+            // The first entry's column can start no lower than the first free slot
+            int offset = Math.max(taken.nextClearBit(row[0]) - row[0], 0);
+            while (!fits(row, offset, taken)) {
+                offset++;
+            }
+
+            base[r] = offset;
+            for (int k = 0; k < row.length; k += 2) {
+                taken.set(offset + row[k]);
+            }
+            size = Math.max(size, offset + row[row.length - 2] + 1);
+        }
+
+        // Room for a lookup in any column of the last row, so lookups never have to check bounds
+        int[] values = new int[size + columnCount];
+        int[] check = new int[size + columnCount];
+        Arrays.fill(check, NONE);
+        for (int r = 0; r < rows.length; r++) {
+            for (int k = 0; k < rows[r].length; k += 2) {
+                values[base[r] + rows[r][k]] = rows[r][k + 1];
+                check[base[r] + rows[r][k]] = r;
+            }
+        }
+
+        return new int[][] {base, values, check};
+    }
+
+    private static boolean fits(int[] row, int offset, BitSet taken) {
+        for (int k = 0; k < row.length; k += 2) {
+            if (taken.get(offset + row[k])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int ruleIndexOf(CFG grammar, ProductionRule p) throws Exception {
+        int index = grammar.indexOf(p);
+        if (index < 0) {
+            throw new Exception("Not a production rule of this grammar: " + p);
+        }
+
+        return index;
+    }
+
+    /**
+     * What to do in a state on a terminal (or $)
+     * @param state - the state
+     * @param terminal - the terminal's id
+     * @return the encoded action; see kindOf() and argumentOf()
+     */
+    @Override
+    public int action(int state, int terminal) {
+        int slot = actionBase.get(state) + terminal;
+        return actionCheck.get(slot) == state ? actions.get(slot) : defaultActions.get(state);
+    }
+
+    /**
+     * The state to go to after reducing to a non-terminal
+     * @param state - the state uncovered by the reduction
+     * @param nonTerminal - the non-terminal's id
+     * @return the state, or -1 if there's none
+     */
+    @Override
+    public int goTo(int state, int nonTerminal) {
+        int slot = gotoBase.get(nonTerminal) + state;
+        return gotoCheck.get(slot) == nonTerminal ? gotos.get(slot) : defaultGotos.get(nonTerminal);
+    }
+
+    /**
+     * The action a state takes on any terminal it has no entry for
+     * @param state - the state
+     * @return ERROR, a REDUCE or an ACCEPT
+     */
+    public int defaultAction(int state) {
+        return defaultActions.get(state);
+    }
+
+    /**
+     * @param rule - a rule's index
+     * @return the id of its LHS
+     */
+    @Override
+    public int lhsOf(int rule) {
+        return ruleLhs[rule];
+    }
+
+    /**
+     * @param rule - a rule's index
+     * @return how many symbols a reduction with it pops (0 for a lambda production)
+     */
+    @Override
+    public int lengthOf(int rule) {
+        return ruleLength[rule];
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Roughly how much memory the table takes
+     * @return the size of its arrays, in bytes
+     */
+    public long sizeInBytes() {
+        return 4L * (actionBase.capacity() + actions.capacity() + actionCheck.capacity() + defaultActions.capacity()
+                + gotoBase.capacity() + gotos.capacity() + gotoCheck.capacity() + defaultGotos.capacity()
+                + ruleLhs.length + ruleLength.length);
+    }
+
+    public static int encode(int kind, int argument) {
+        return (kind << 30) | argument;
+    }
+
+    /**
+     * @param action - an encoded action
+     * @return ERROR, SHIFT, REDUCE or ACCEPT
+     */
+    public static int kindOf(int action) {
+        return action >>> 30;
+    }
+
+    /**
+     * @param action - an encoded action
+     * @return the state to shift to, or the index of the rule to reduce with
+     */
+    public static int argumentOf(int action) {
+        return action & 0x3FFFFFFF;
+    }
+
+    @Override
+    public CFG getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * The table in the map form, as the compressed table sees it: default reductions show up on every terminal (and
+     * $) without an entry of its own, default GoTo()s on every state without one of its own, and accepting states
+     * accept on every symbol
+     * @return state -> (grammar symbol -> what to do)
+     */
+    @Override
+    public Map<Integer, Map<AlphabetCharacter, SLRAction>> getActionTable() {
+        if (actionTable == null) {
+            actionTable = expand();
+        }
+
+        return actionTable;
+    }
+
+    private Map<Integer, Map<AlphabetCharacter, SLRAction>> expand() {
+        SymbolTable symbols = grammar.getSymbolTable();
+        Map<Integer, Map<AlphabetCharacter, SLRAction>> result = new TreeMap<>();
+
+        for (int state = 0; state < stateCount; state++) {
+            Map<AlphabetCharacter, SLRAction> row = new HashMap<>();
+            result.put(state, row);
+
+            for (int id = 0; id < symbolCount; id++) {
+                AlphabetCharacter x = symbols.get(id);
+                if (x.isLambda() || !(x.isEOF() || grammar.getNonTerminals().contains(x)
+                        || grammar.getTerminals().contains(x))) {
+                    continue;
+                }
+
+                if (kindOf(defaultAction(state)) == ACCEPT) {
+                    row.put(x, SLRAction.createReduceWithAndAccept(
+                            grammar.getProductionRule(argumentOf(defaultAction(state))), x));
+                } else if (grammar.getProductionsOf(id) != null) {
+                    int target = goTo(state, id);
+                    if (target != NONE) {
+                        row.put(x, SLRAction.createShiftAndGoTo(target, x));
+                    }
+                } else {
+                    int action = action(state, id);
+                    if (kindOf(action) == SHIFT) {
+                        row.put(x, SLRAction.createShiftAndGoTo(argumentOf(action), x));
+                    } else if (kindOf(action) == REDUCE) {
+                        row.put(x, SLRAction.createReduceWith(grammar.getProductionRule(argumentOf(action)), x));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An SLR(1) table that's built as it's used: a state's row is only worked out the first time a parse reaches it, so
+ * a parser for a big grammar can start right away, and only ever holds the states its inputs actually visit.
+ *  <p>A row is the state's action on every terminal (and $), and its GoTo() on every non-terminal, by id. Working it
+ *  out gives the states it leads to their numbers (from their kernels, like SLRParser does), but not their rows. Rows
+ *  are kept in a ConcurrentHashMap, so any number of parses can share one table, and each row is only built once.
+ *  </p>
+ *  <p>The actions are the same as SLRParser's, conflicts included, but without LRTable's default reductions, so
+ *  errors are found a little sooner. States are numbered in the order they're first reached, which depends on the
+ *  inputs, so the numbers don't match SLRParser's.</p>
+ */
+public class LazySLRTable implements ShiftReduceTable {
+    private final CFG grammar;
+    private final int symbolCount;
+
+    // See SLRParser.closureRulesOf()
+    private final List<BitSet> closureRules;
+
+    // state -> its kernel, and back. New states are added while holding kernels.
+    private final List<LRItemSet> kernels = new ArrayList<>();
+    private final Map<LRItemSet, Integer> kernelIndex = new ConcurrentHashMap<>();
+
+    // state -> its row: encoded actions (see LRTable.encode()) for terminals and $, target states (or -1) for
+    // non-terminals
+    private final Map<Integer, int[]> rows = new ConcurrentHashMap<>();
+
+    // Rule -> its LHS' id, and how many states a reduction with it pops (0 for lambda productions)
+    private final int[] ruleLhs;
+    private final int[] ruleLength;
+
+    /**
+     * Initializes a table for grammar, without building any of its states yet
+     * @param grammar - the CFG
+     * @throws Exception if the starting symbol doesn't have exactly one rule
+     */
+    public LazySLRTable(CFG grammar) throws Exception {
+        this.grammar = grammar;
+        this.symbolCount = grammar.getSymbolTable().size();
+        this.closureRules = SLRParser.closureRulesOf(grammar);
+
+        List<ProductionRule> rules = grammar.getProductionRules();
+        ruleLhs = new int[rules.size()];
+        ruleLength = new int[rules.size()];
+        for (ProductionRule p : rules) {
+            ruleLhs[p.index] = p.lhs.id;
+            ruleLength[p.index] = p.isLambdaProduction() ? 0 : p.rhs.size();
+        }
+
+        // There's no augmented rule S' -> S, so the starting rule has to be the only one: it's what accepts
+        List<ProductionRule> startingRules = grammar.getProductionsOf(grammar.getStartingSymbol());
+        if (startingRules == null || startingRules.size() != 1) {
+            throw new Exception("LazySLRTable needs exactly one rule for the starting symbol "
+                    + grammar.getStartingSymbol() + ", got " + (startingRules == null ? 0 : startingRules.size()));
+        }
+        ProductionRule start = startingRules.get(0);
+        stateOf(LRItemSet.of(new long[] {LRItemSet.pack(start.index, 0)}, 1));
+    }
+
+    @Override
+    public int action(int state, int terminal) {
+        return row(state)[terminal];
+    }
+
+    @Override
+    public int goTo(int state, int nonTerminal) {
+        return row(state)[nonTerminal];
+    }
+
+    @Override
+    public int lhsOf(int rule) {
+        return ruleLhs[rule];
+    }
+
+    @Override
+    public int lengthOf(int rule) {
+        return ruleLength[rule];
+    }
+
+    @Override
+    public CFG getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * @return how many states have been found so far: those with rows, and those they lead to
+     */
+    public int getStateCount() {
+        synchronized (kernels) {
+            return kernels.size();
+        }
+    }
+
+    /**
+     * @return how many states have rows
+     */
+    public int getMaterializedStateCount() {
+        return rows.size();
+    }
+
+    private int[] row(int state) {
+        int[] row = rows.get(state);
+        if (row == null) {
+            row = rows.computeIfAbsent(state, this::buildRow);
+        }
+
+        return row;
+    }
+
+    /**
+     * The number of the state with this kernel, adding it if it's new
+     */
+    private int stateOf(LRItemSet kernel) {
+        Integer known = kernelIndex.get(kernel);
+        if (known != null) {
+            return known;
+        }
+
+        synchronized (kernels) {
+            known = kernelIndex.get(kernel);
+            if (known != null) {
+                return known;
+            }
+
+            kernels.add(kernel);
+            kernelIndex.put(kernel, kernels.size() - 1);
+            return kernels.size() - 1;
+        }
+    }
+
+    /**
+     * Works out a state's row, as SLRParser.buildSLRActionRow() does
+     * @param state - the state
+     * @return the row
+     */
+    private int[] buildRow(int state) {
+        LRItemSet kernel;
+        synchronized (kernels) {
+            kernel = kernels.get(state);
+        }
+        LRItemSet itemSet = SLRParser.closure(grammar, closureRules, kernel);
+
+        int[] row = new int[symbolCount];
+        for (int id = 0; id < symbolCount; id++) {
+            row[id] = isNonTerminal(id) ? -1 : LRTable.ERROR;
+        }
+
+        // Case #1: GoTo()s, i.e. shifts on terminals
+        int[] next = new int[itemSet.size()];
+        BitSet after = new BitSet();
+        for (int k = 0; k < itemSet.size(); k++) {
+            AlphabetCharacter x = SLRParser.elementAfterProgressMarker(grammar, itemSet.get(k));
+            next[k] = x == null || x.isLambda() ? -1 : x.id;
+            if (next[k] >= 0) {
+                after.set(next[k]);
+            }
+        }
+
+        long[] moved = new long[itemSet.size()];
+        for (int x = after.nextSetBit(0); x >= 0; x = after.nextSetBit(x + 1)) {
+            int length = 0;
+            for (int k = 0; k < itemSet.size(); k++) {
+                if (next[k] == x) {
+                    moved[length++] = itemSet.get(k) + 1;
+                }
+            }
+
+            int target = stateOf(LRItemSet.of(moved.clone(), length));
+            row[x] = isNonTerminal(x) ? target : LRTable.encode(LRTable.SHIFT, target);
+        }
+
+        // Case #2: ReduceWith(). Backwards, so on a reduce/reduce conflict the rule that comes first in the grammar wins
+        for (int k = itemSet.size() - 1; k >= 0; k--) {
+            ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(itemSet.get(k)));
+            if (!(LRItemSet.progressMarkerOf(itemSet.get(k)) == p.rhs.size() || p.isLambdaProduction())) {
+                continue;
+            }
+
+            BitSet followSet = grammar.getAnalysis().getFollowSet(p.lhs.id);
+            for (int f = followSet.nextSetBit(0); f >= 0; f = followSet.nextSetBit(f + 1)) {
+                row[f] = LRTable.encode(LRTable.REDUCE, p.index);
+            }
+        }
+
+        // Case 3: ReduceWithAndAccept(), on everything. Like LRTable, an accepting state has no GoTo()s.
+        for (int k = 0; k < itemSet.size(); k++) {
+            ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(itemSet.get(k)));
+            if (p.lhs == grammar.getStartingSymbol() && LRItemSet.progressMarkerOf(itemSet.get(k)) == p.rhs.size()) {
+                for (int id = 0; id < symbolCount; id++) {
+                    row[id] = isNonTerminal(id) ? -1 : LRTable.encode(LRTable.ACCEPT, p.index);
+                }
+
+                break;
+            }
+        }
+
+        return row;
+    }
+
+    private boolean isNonTerminal(int id) {
+        return grammar.getProductionsOf(id) != null;
+    }
+}
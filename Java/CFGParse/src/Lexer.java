@@ -0,0 +1,593 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lexer for the terminals of a CFG, generated from a regular expression per terminal, so raw text can be parsed
+ * without tokenizing it into a .tok file first.
+ *  <p>The expressions are compiled into one NFA (Thompson's construction), then a DFA (subset construction), which is
+ *  minimized (Moore's algorithm). The DFA runs over bytes (so UTF-8 text works as-is), with bytes that no expression
+ *  tells apart folded into one class, so its table is a row of classCount ints per state. Tokens are the longest
+ *  match; on a tie, the expression that came first wins.</p>
+ *  <p>The expressions support literals, escapes (\n, \t, \r, \d, \w, \s and their negations, or any other escaped
+ *  char as itself), ., [classes] (ASCII, [^negated] ones include every non-ASCII byte), grouping, |, *, + and ?.</p>
+ *  <p>A lexer is immutable; tokens() gives a LexerTokenSource per input.</p>
+ */
+public class Lexer {
+    // What a skipped expression (e.g. whitespace) gives, in place of a symbol id
+    static final int SKIP = -2;
+
+    private static final int BYTES = 256;
+
+    final int startState;
+    final int classCount;
+    // byte -> its class
+    final int[] classOf;
+    // state * classCount + class -> next state, or -1 if there isn't one
+    final int[] transitions;
+    // state -> the symbol id (or SKIP) it accepts, or -1 if it doesn't
+    final int[] accepts;
+
+    final SymbolTable symbols;
+
+    /**
+     * Reads a lexer spec: one terminal per line, its label then its expression (the rest of the line), in order of
+     * priority. A line starting with %skip has an expression for text to skip between tokens, and one starting with #
+     * is a comment.
+     *  <p>e.g. "num [0-9]+", "plus \+" and "%skip \s+"</p>
+     * @param specFile - the spec
+     * @param grammar - the grammar whose terminals it's for
+     * @return the lexer
+     */
+    public static Lexer read(Path specFile, CFG grammar) throws Exception {
+        List<String> terminals = new ArrayList<>();
+        List<String> expressions = new ArrayList<>();
+
+        try (BufferedReader in = Files.newBufferedReader(specFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] words = line.split("\\s+", 2);
+                if (words.length < 2) {
+                    throw new Exception("No expression for " + words[0] + " in " + specFile);
+                }
+
+                terminals.add(words[0].equals("%skip") ? null : words[0]);
+                expressions.add(words[1]);
+            }
+        }
+
+        return new Lexer(grammar.getSymbolTable(), terminals, expressions);
+    }
+
+    /**
+     * Generates a lexer
+     * @param symbols - the symbol table of the grammar
+     * @param terminals - the label of the terminal each expression is for, or null for text to skip
+     * @param expressions - the expressions, in order of priority
+     */
+    public Lexer(SymbolTable symbols, List<String> terminals, List<String> expressions) throws Exception {
+        this.symbols = symbols;
+
+        // One NFA for all of them: a start state with a lambda edge to every expression's
+        NFA nfa = new NFA();
+        int start = nfa.newState();
+        int[] ruleSymbols = new int[expressions.size()];
+        for (int r = 0; r < expressions.size(); r++) {
+            String terminal = terminals.get(r);
+            if (terminal == null) {
+                ruleSymbols[r] = SKIP;
+            } else {
+                ruleSymbols[r] = symbols.idOf(terminal);
+                if (ruleSymbols[r] < 0 || !(symbols.isTerminal(ruleSymbols[r]) || symbols.isEOF(ruleSymbols[r]))) {
+                    throw new Exception("Not a terminal of the grammar: " + terminal);
+                }
+            }
+
+            int[] fragment = new RegexParser(expressions.get(r), nfa).parse();
+            nfa.addLambda(start, fragment[0]);
+            nfa.accepts.set(fragment[1], r);
+        }
+
+        // Bytes that every edge treats the same share a class
+        classOf = new int[BYTES];
+        int classes = 1;
+        for (BitSet set : nfa.edgeSets) {
+            int[] split = new int[2 * classes];
+            Arrays.fill(split, -1);
+            int next = 0;
+            for (int b = 0; b < BYTES; b++) {
+                int key = 2 * classOf[b] + (set.get(b) ? 1 : 0);
+                if (split[key] < 0) {
+                    split[key] = next++;
+                }
+                classOf[b] = split[key];
+            }
+            classes = next;
+        }
+        classCount = classes;
+
+        int[] representative = new int[classCount];
+        for (int b = BYTES - 1; b >= 0; b--) {
+            representative[classOf[b]] = b;
+        }
+
+        // Subset construction
+        List<BitSet> dfaStates = new ArrayList<>();
+        Map<BitSet, Integer> dfaIndex = new HashMap<>();
+        List<int[]> rows = new ArrayList<>();
+        BitSet initial = nfa.closure(start);
+        dfaStates.add(initial);
+        dfaIndex.put(initial, 0);
+
+        for (int s = 0; s < dfaStates.size(); s++) {
+            int[] row = new int[classCount];
+            for (int c = 0; c < classCount; c++) {
+                BitSet target = nfa.move(dfaStates.get(s), representative[c]);
+                if (target.isEmpty()) {
+                    row[c] = -1;
+                    continue;
+                }
+
+                Integer index = dfaIndex.get(target);
+                if (index == null) {
+                    index = dfaStates.size();
+                    dfaStates.add(target);
+                    dfaIndex.put(target, index);
+                }
+                row[c] = index;
+            }
+            rows.add(row);
+        }
+
+        // What each state accepts: the expression with the highest priority among its NFA states'
+        int[] acceptedRule = new int[dfaStates.size()];
+        for (int s = 0; s < dfaStates.size(); s++) {
+            acceptedRule[s] = -1;
+            BitSet states = dfaStates.get(s);
+            for (int n = states.nextSetBit(0); n >= 0; n = states.nextSetBit(n + 1)) {
+                int rule = nfa.accepts.get(n);
+                if (rule >= 0 && (acceptedRule[s] < 0 || rule < acceptedRule[s])) {
+                    acceptedRule[s] = rule;
+                }
+            }
+        }
+
+        // Moore's algorithm: start from blocks of states that accept the same symbol, and split them by the blocks
+        // their transitions go to until nothing changes
+        int[] block = new int[rows.size()];
+        int blockCount = 0;
+        Map<Integer, Integer> initialBlocks = new HashMap<>();
+        for (int s = 0; s < rows.size(); s++) {
+            int accepted = acceptedRule[s] < 0 ? -1 : ruleSymbols[acceptedRule[s]];
+            Integer b = initialBlocks.get(accepted);
+            if (b == null) {
+                b = blockCount++;
+                initialBlocks.put(accepted, b);
+            }
+            block[s] = b;
+        }
+
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] refined = new int[rows.size()];
+            for (int s = 0; s < rows.size(); s++) {
+                List<Integer> signature = new ArrayList<>(classCount + 1);
+                signature.add(block[s]);
+                for (int target : rows.get(s)) {
+                    signature.add(target < 0 ? -1 : block[target]);
+                }
+
+                Integer b = signatures.get(signature);
+                if (b == null) {
+                    b = signatures.size();
+                    signatures.put(signature, b);
+                }
+                refined[s] = b;
+            }
+
+            block = refined;
+            if (signatures.size() == blockCount) {
+                break;
+            }
+            blockCount = signatures.size();
+        }
+
+        transitions = new int[blockCount * classCount];
+        accepts = new int[blockCount];
+        for (int s = 0; s < rows.size(); s++) {
+            int[] row = rows.get(s);
+            for (int c = 0; c < classCount; c++) {
+                transitions[block[s] * classCount + c] = row[c] < 0 ? -1 : block[row[c]];
+            }
+            accepts[block[s]] = acceptedRule[s] < 0 ? -1 : ruleSymbols[acceptedRule[s]];
+        }
+        startState = block[0];
+    }
+
+    /**
+     * @return the number of states of the (minimized) DFA
+     */
+    public int getStateCount() {
+        return accepts.length;
+    }
+
+    /**
+     * @return the number of byte classes, i.e. the width of the DFA's table
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Tokenizes text
+     * @param text - the text
+     * @return its tokens, ending with $
+     */
+    public LexerTokenSource tokens(String text) {
+        return tokens(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tokenizes UTF-8 text
+     * @param text - the text
+     * @return its tokens, ending with $
+     */
+    public LexerTokenSource tokens(byte[] text) {
+        return new LexerTokenSource(this, text);
+    }
+
+    /**
+     * Tokenizes a file, memory-mapping it
+     * @param file - UTF-8 text
+     * @return its tokens, ending with $
+     */
+    public LexerTokenSource tokens(Path file) throws IOException {
+        return new LexerTokenSource(this, file);
+    }
+
+    /**
+     * An NFA over bytes: every state has edges on a set of bytes, and lambda edges
+     */
+    private static class NFA {
+        final List<List<Integer>> lambdas = new ArrayList<>();
+        // state -> (byte set index, target) pairs
+        final List<List<int[]>> edges = new ArrayList<>();
+        final List<BitSet> edgeSets = new ArrayList<>();
+        // state -> the expression it accepts, or -1
+        final IntList accepts = new IntList();
+
+        int newState() {
+            lambdas.add(new ArrayList<>());
+            edges.add(new ArrayList<>());
+            accepts.add(-1);
+            return lambdas.size() - 1;
+        }
+
+        void addLambda(int from, int to) {
+            lambdas.get(from).add(to);
+        }
+
+        void addEdge(int from, BitSet bytes, int to) {
+            edgeSets.add(bytes);
+            edges.get(from).add(new int[] {edgeSets.size() - 1, to});
+        }
+
+        BitSet closure(int state) {
+            BitSet result = new BitSet();
+            result.set(state);
+            return close(result);
+        }
+
+        BitSet close(BitSet states) {
+            int[] worklist = states.stream().toArray();
+            int top = worklist.length;
+            while (top > 0) {
+                int s = worklist[--top];
+                for (int t : lambdas.get(s)) {
+                    if (!states.get(t)) {
+                        states.set(t);
+                        if (top == worklist.length) {
+                            worklist = Arrays.copyOf(worklist, 2 * top + 1);
+                        }
+                        worklist[top++] = t;
+                    }
+                }
+            }
+
+            return states;
+        }
+
+        BitSet move(BitSet states, int b) {
+            BitSet result = new BitSet();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                for (int[] edge : edges.get(s)) {
+                    if (edgeSets.get(edge[0]).get(b)) {
+                        result.set(edge[1]);
+                    }
+                }
+            }
+
+            return close(result);
+        }
+    }
+
+    /**
+     * A growable int list, for the NFA's accepting expressions
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void set(int i, int value) {
+            values[i] = value;
+        }
+    }
+
+    /**
+     * Recursive descent over an expression, building its NFA fragment (Thompson's construction). Every method returns
+     * a fragment as {start state, end state}.
+     */
+    private static class RegexParser {
+        private final String expression;
+        private final NFA nfa;
+        private int position;
+
+        RegexParser(String expression, NFA nfa) {
+            this.expression = expression;
+            this.nfa = nfa;
+        }
+
+        int[] parse() throws Exception {
+            int[] result = alternation();
+            if (position < expression.length()) {
+                throw error("Unexpected " + expression.charAt(position));
+            }
+
+            return result;
+        }
+
+        // alternation := concatenation ('|' concatenation)*
+        private int[] alternation() throws Exception {
+            int[] first = concatenation();
+            if (!peek('|')) {
+                return first;
+            }
+
+            int start = nfa.newState();
+            int end = nfa.newState();
+            nfa.addLambda(start, first[0]);
+            nfa.addLambda(first[1], end);
+            while (peek('|')) {
+                position++;
+                int[] next = concatenation();
+                nfa.addLambda(start, next[0]);
+                nfa.addLambda(next[1], end);
+            }
+
+            return new int[] {start, end};
+        }
+
+        // concatenation := repetition*
+        private int[] concatenation() throws Exception {
+            int start = nfa.newState();
+            int end = start;
+            while (position < expression.length() && !peek('|') && !peek(')')) {
+                int[] next = repetition();
+                nfa.addLambda(end, next[0]);
+                end = next[1];
+            }
+
+            return new int[] {start, end};
+        }
+
+        // repetition := atom ('*' | '+' | '?')*
+        private int[] repetition() throws Exception {
+            int[] atom = atom();
+            while (peek('*') || peek('+') || peek('?')) {
+                char operator = expression.charAt(position++);
+                int start = nfa.newState();
+                int end = nfa.newState();
+                nfa.addLambda(start, atom[0]);
+                nfa.addLambda(atom[1], end);
+                if (operator != '+') {
+                    nfa.addLambda(start, end);
+                }
+                if (operator != '?') {
+                    nfa.addLambda(atom[1], atom[0]);
+                }
+                atom = new int[] {start, end};
+            }
+
+            return atom;
+        }
+
+        // atom := '(' alternation ')' | '[' class ']' | '.' | '\' escape | char
+        private int[] atom() throws Exception {
+            char c = expression.charAt(position++);
+            switch (c) {
+                case '(':
+                    int[] group = alternation();
+                    if (!peek(')')) {
+                        throw error("Missing )");
+                    }
+                    position++;
+                    return group;
+
+                case '[':
+                    return bytes(characterClass());
+
+                case '.':
+                    BitSet any = new BitSet(BYTES);
+                    any.set(0, BYTES);
+                    any.clear('\n');
+                    return bytes(any);
+
+                case '\\':
+                    BitSet escaped = escape();
+                    if (escaped != null) {
+                        return bytes(escaped);
+                    }
+                    return literal(expression.charAt(position - 1));
+
+                case '*':
+                case '+':
+                case '?':
+                case ')':
+                    throw error("Unexpected " + c);
+
+                default:
+                    return literal(c);
+            }
+        }
+
+        // One char, as the sequence of its UTF-8 bytes
+        private int[] literal(char c) throws Exception {
+            String s = Character.isHighSurrogate(c) && position < expression.length()
+                    ? new String(new char[] {c, expression.charAt(position++)}) : String.valueOf(c);
+
+            int start = nfa.newState();
+            int end = start;
+            for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+                BitSet set = new BitSet(BYTES);
+                set.set(b & 0xFF);
+                int next = nfa.newState();
+                nfa.addEdge(end, set, next);
+                end = next;
+            }
+
+            return new int[] {start, end};
+        }
+
+        private int[] bytes(BitSet set) {
+            int start = nfa.newState();
+            int end = nfa.newState();
+            nfa.addEdge(start, set, end);
+            return new int[] {start, end};
+        }
+
+        // After the '['
+        private BitSet characterClass() throws Exception {
+            BitSet result = new BitSet(BYTES);
+            boolean negated = peek('^');
+            if (negated) {
+                position++;
+            }
+
+            boolean first = true;
+            while (position < expression.length() && (first || !peek(']'))) {
+                first = false;
+                char c = expression.charAt(position++);
+                if (c == '\\') {
+                    BitSet escaped = escape();
+                    if (escaped != null) {
+                        result.or(escaped);
+                        continue;
+                    }
+                    c = expression.charAt(position - 1);
+                }
+
+                char last = c;
+                if (peek('-') && position + 1 < expression.length() && expression.charAt(position + 1) != ']') {
+                    position++;
+                    last = expression.charAt(position++);
+                    if (last == '\\') {
+                        last = expression.charAt(position++);
+                    }
+                }
+
+                if (c >= 0x80 || last >= 0x80) {
+                    throw error("Only ASCII in character classes");
+                }
+                if (last < c) {
+                    throw error("Bad range " + c + "-" + last);
+                }
+                result.set(c, last + 1);
+            }
+
+            if (!peek(']')) {
+                throw error("Missing ]");
+            }
+            position++;
+
+            if (negated) {
+                result.flip(0, BYTES);
+            }
+
+            return result;
+        }
+
+        // After the '\'. The bytes of a class escape (\d, \s, ...), or null if it's the escaped char itself, which is
+        // then just before position.
+        private BitSet escape() throws Exception {
+            if (position >= expression.length()) {
+                throw error("Nothing to escape");
+            }
+
+            char c = expression.charAt(position++);
+            BitSet result = new BitSet(BYTES);
+            switch (Character.toLowerCase(c)) {
+                case 'd':
+                    result.set('0', '9' + 1);
+                    break;
+                case 'w':
+                    result.set('0', '9' + 1);
+                    result.set('a', 'z' + 1);
+                    result.set('A', 'Z' + 1);
+                    result.set('_');
+                    break;
+                case 's':
+                    result.set(' ');
+                    result.set('\t', '\r' + 1);
+                    break;
+                case 'n':
+                case 't':
+                case 'r':
+                    if (Character.isUpperCase(c)) {
+                        return null;
+                    }
+                    result.set(c == 'n' ? '\n' : c == 't' ? '\t' : '\r');
+                    return result;
+                default:
+                    return null;
+            }
+
+            if (Character.isUpperCase(c)) {
+                result.flip(0, BYTES);
+            }
+
+            return result;
+        }
+
+        private boolean peek(char c) {
+            return position < expression.length() && expression.charAt(position) == c;
+        }
+
+        private Exception error(String message) {
+            return new Exception(message + " at " + position + " in " + expression);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The tokens a Lexer finds in some text, for a parser to pull. Text that no expression matches is a token of one
+ * byte that isn't a symbol of the grammar (so the parser reports it).
+ *  <p>Files are memory-mapped a window at a time, like MappedTokenSource does. Not thread-safe; use one source per
+ *  parse.</p>
+ */
+public class LexerTokenSource implements TokenSource {
+    private static final long WINDOW = 1 << 28;
+
+    private final Lexer lexer;
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+
+    // The bytes from windowStart on that are in memory
+    private ByteBuffer window;
+    private long windowStart;
+
+    private long position;
+
+    // The last token: where it is in the text, and its id
+    private long tokenStart;
+    private long tokenEnd;
+    private int id;
+
+    LexerTokenSource(Lexer lexer, byte[] text) {
+        this.lexer = lexer;
+        this.channel = null;
+        this.size = text.length;
+        this.windowSize = text.length;
+        this.window = ByteBuffer.wrap(text);
+    }
+
+    LexerTokenSource(Lexer lexer, Path file) throws IOException {
+        this(lexer, file, WINDOW);
+    }
+
+    /**
+     * Same as above, with a different window size (for tests)
+     */
+    LexerTokenSource(Lexer lexer, Path file, long windowSize) throws IOException {
+        this.lexer = lexer;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    @Override
+    public int next() throws IOException {
+        int[] classOf = lexer.classOf;
+        int[] transitions = lexer.transitions;
+        int[] accepts = lexer.accepts;
+        int classCount = lexer.classCount;
+
+        while (true) {
+            tokenStart = position;
+            if (position >= size) {
+                tokenEnd = size;
+                id = SymbolTable.EOF_ID;
+                return id;
+            }
+
+            // Run the DFA as far as it goes, remembering the last (so longest) match
+            int state = lexer.startState;
+            int matched = -1;
+            long matchEnd = position;
+            long p = position;
+
+            scan:
+            while (p < size) {
+                if (p - windowStart >= window.limit() || p < windowStart) {
+                    map(p);
+                }
+
+                int end = window.limit();
+                for (int i = (int) (p - windowStart); i < end; i++) {
+                    state = transitions[state * classCount + classOf[window.get(i) & 0xFF]];
+                    if (state < 0) {
+                        break scan;
+                    }
+                    if (accepts[state] != -1) {
+                        matched = accepts[state];
+                        matchEnd = windowStart + i + 1;
+                    }
+                }
+                p = windowStart + end;
+            }
+
+            if (matched == -1) {
+                // Nothing matches here: one byte that isn't a token
+                position++;
+                tokenEnd = position;
+                id = -1;
+                return id;
+            }
+
+            position = matchEnd;
+            if (matched != Lexer.SKIP) {
+                tokenEnd = matchEnd;
+                id = matched;
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public AlphabetCharacter token() {
+        return id >= 0 ? lexer.symbols.get(id) : new AlphabetCharacter(text());
+    }
+
+    /**
+     * @return the text of the last token (empty for $)
+     */
+    public String text() {
+        try {
+            byte[] bytes = new byte[(int) (tokenEnd - tokenStart)];
+            for (int i = 0; i < bytes.length; i++) {
+                if (tokenStart + i - windowStart >= window.limit() || tokenStart + i < windowStart) {
+                    map(tokenStart + i);
+                }
+                bytes[i] = window.get((int) (tokenStart + i - windowStart));
+            }
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "?";
+        }
+    }
+
+    /**
+     * @return the offset in the text of the first byte of the last token
+     */
+    public long getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return the offset in the text just past the last token
+     */
+    public long getTokenEnd() {
+        return tokenEnd;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+    }
+}
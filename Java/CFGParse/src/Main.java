@@ -1,7 +1,81 @@
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
 public class Main {
 	public static void main(String[] args) throws Exception {
 		// IMPORTANT: the filename for the CFG is taken as a command-line argument
-		CFG grammar = new CFG(args[0]);
+		// Compiled grammars are cached next to it, or in --cache-dir DIR. --no-cache always rebuilds them.
+		// --lr1 also builds an LR(1) table, and prints its state counts and build time
+		// --make-corpus FILE packs the .tok files given after the grammar into a TokenCorpus for it
+		// --batch parses the .tok files (or directories of them) given after the grammar on --threads N threads, with
+		// the LL(1) table if there is one and the SLR table if not, and prints a line per file as it's done
+		// --serve keeps the grammar (and any more given after it) loaded and answers ParseServer requests on
+		// stdin/stdout, or on a loopback socket with --port N, until the input ends or the process is stopped
+		// --watch (with --serve) reloads a grammar whenever its file changes, without stopping the requests in flight
+		String grammarFile = null;
+		String cacheDirectory = null;
+		boolean useCache = true;
+		boolean buildLR1 = false;
+		String corpusFile = null;
+		boolean batch = false;
+		boolean serve = false;
+		boolean watch = false;
+		int port = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<Path> tokenFiles = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--no-cache")) {
+				useCache = false;
+			} else if (args[i].equals("--lr1")) {
+				buildLR1 = true;
+			} else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+				cacheDirectory = args[++i];
+			} else if (args[i].equals("--make-corpus") && i + 1 < args.length) {
+				corpusFile = args[++i];
+			} else if (args[i].equals("--batch")) {
+				batch = true;
+			} else if (args[i].equals("--serve")) {
+				serve = true;
+			} else if (args[i].equals("--watch")) {
+				watch = true;
+			} else if (args[i].equals("--port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (grammarFile == null) {
+				grammarFile = args[i];
+			} else {
+				tokenFiles.add(Paths.get(args[i]));
+			}
+		}
+
+		if (grammarFile == null) {
+			throw new Exception("Usage: CFGPARSE [--no-cache] [--cache-dir DIR] [--lr1] [--make-corpus FILE] [--batch [--threads N]] [--serve [--port N] [--watch]] grammar.cfg [input.tok|DIR|grammar.cfg ...]");
+		}
+
+		if (serve) {
+			// stdout is for responses, so nothing else can be printed
+			List<String> grammarFiles = new ArrayList<>();
+			grammarFiles.add(grammarFile);
+			for (Path path : tokenFiles) {
+				grammarFiles.add(path.toString());
+			}
+			runServer(grammarFiles, useCache, cacheDirectory, port, threads, watch);
+			return;
+		}
+
+		CompiledGrammar compiled = compile(grammarFile, useCache, cacheDirectory);
+
+		CFG grammar = compiled.grammar;
 		System.out.println(grammar);
 
 //		grammar.printDerivesToLambda();
@@ -11,8 +85,96 @@ public class Main {
 
 //		System.out.println("Is disjoint? " + grammar.arePredictSetsDisjoint());
 
-//		LL1ParsingTable parseTableForCFG = grammar.generateParsingTable();
+//		LL1ParsingTable parseTableForCFG = compiled.ll1Table;
+
+		if (buildLR1) {
+			System.out.println(new LR1Parser(grammar));
+		}
+
+		if (corpusFile != null) {
+			TokenCorpus.write(Paths.get(corpusFile), grammar.getSymbolTable(), tokenFiles);
+			System.out.println("Wrote " + tokenFiles.size() + " token streams to " + corpusFile);
+		}
+
+		if (batch) {
+			runBatch(compiled, tokenFiles, threads);
+		}
+	}
+
+	/**
+	 * Loads a grammar from its cache, or builds it
+	 */
+	private static CompiledGrammar compile(String grammarFile, boolean useCache, String cacheDirectory) throws Exception {
+		if (!useCache) {
+			return CompiledGrammar.build(new CFG(grammarFile));
+		} else if (cacheDirectory == null) {
+			return new GrammarCache().load(Paths.get(grammarFile));
+		} else {
+			return new GrammarCache(Paths.get(cacheDirectory)).load(Paths.get(grammarFile));
+		}
+	}
+
+	/**
+	 * Loads the grammars, named by their file names as given, and serves requests for them
+	 * @param grammarFiles - the grammars
+	 * @param port - a loopback port to listen on, or -1 for stdin/stdout
+	 * @param threads - the size of the pool requests run on
+	 * @param watch - whether to reload grammars when their files change
+	 */
+	private static void runServer(List<String> grammarFiles, boolean useCache, String cacheDirectory, int port, int threads, boolean watch) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ParseServer server = new ParseServer(pool);
+		GrammarCache cache = !useCache ? null : cacheDirectory == null ? new GrammarCache() : new GrammarCache(Paths.get(cacheDirectory));
+		for (String grammarFile : grammarFiles) {
+			GrammarHandle handle = new GrammarHandle(Paths.get(grammarFile), cache);
+			if (watch) {
+				handle.watch();
+			}
+			server.addGrammar(grammarFile, handle);
+		}
+
+		try {
+			if (port < 0) {
+				server.serve(System.in, System.out);
+			} else {
+				try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+					System.err.println("Serving " + grammarFiles + " on " + socket.getLocalSocketAddress());
+					server.listen(socket);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Parses every file on a pool, printing results as they come in
+	 * @param compiled - the grammar and its tables
+	 * @param paths - .tok files, or directories of them
+	 * @param threads - the size of the pool
+	 */
+	private static void runBatch(CompiledGrammar compiled, List<Path> paths, int threads) throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		BatchParser batchParser = compiled.ll1Table != null
+				? new BatchParser(new LL1Parser(compiled.ll1Table), compiled.grammar, pool, 2 * threads)
+				: new BatchParser(new ShiftReduceParser(compiled.lrTable), compiled.grammar, pool, 2 * threads);
+
+		int[] count = new int[1];
+		long start = System.nanoTime();
+		int failures = 0;
+		try {
+			for (Path path : paths) {
+				try (Stream<Path> files = BatchParser.tokenFiles(path)) {
+					failures += batchParser.parseAll(files.iterator(), result -> {
+						count[0]++;
+						System.out.println(result);
+					});
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
 
-		SLRParser slrParser = new SLRParser(grammar);
+		System.out.println("Parsed " + count[0] + " files in " + (System.nanoTime() - start) / 1000000 + " ms, " + failures + " failed");
 	}
 }
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A TokenSource that reads a .tok file (one token per line; anything after the first word on a line is ignored) by
+ * memory-mapping it, and ends it with $, like ShiftReduceParser.readTokens().
+ *  <p>Tokens are looked up in the SymbolTable straight from a reused char buffer, so nothing is allocated per token.
+ *  The file is mapped a window at a time, so it can be any size.</p>
+ *  <p>Not thread-safe; use one source per parse.</p>
+ */
+public class MappedTokenSource implements TokenSource {
+    private static final long WINDOW = 1 << 28;
+
+    private final FileChannel channel;
+    private final SymbolTable symbols;
+    private final long fileSize;
+    private final long windowSize;
+
+    // The mapped part of the file: the bytes from windowStart on, at most windowSize of them
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // Offset in the file of the next byte to read
+    private long position;
+
+    // The last token read: its chars, and its id
+    private char[] word = new char[64];
+    private int wordLength;
+    private int id;
+    // Whether word holds bytes that aren't ASCII (and so isn't the token's chars as-is)
+    private boolean encoded;
+
+    /**
+     * Opens a .tok file
+     * @param tokenFile - the file
+     * @param symbols - the symbol table of the grammar that's parsed
+     */
+    public MappedTokenSource(Path tokenFile, SymbolTable symbols) throws IOException {
+        this(tokenFile, symbols, WINDOW);
+    }
+
+    /**
+     * Same as above, with a different window size (for tests)
+     */
+    MappedTokenSource(Path tokenFile, SymbolTable symbols, long windowSize) throws IOException {
+        this.channel = FileChannel.open(tokenFile, StandardOpenOption.READ);
+        this.symbols = symbols;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    @Override
+    public int next() throws IOException {
+        // Skip blank lines and leading whitespace
+        int b = byteAt(position);
+        while (b >= 0 && b <= ' ') {
+            b = byteAt(++position);
+        }
+
+        if (b < 0) {
+            wordLength = 0;
+            id = SymbolTable.EOF_ID;
+            return id;
+        }
+
+        // The first word of the line is the token
+        wordLength = 0;
+        encoded = false;
+        while (b > ' ') {
+            if (wordLength == word.length) {
+                word = Arrays.copyOf(word, 2 * wordLength);
+            }
+            word[wordLength++] = (char) b;
+            encoded |= b >= 0x80;
+            b = byteAt(++position);
+        }
+
+        // Ignore the rest of the line
+        while (b >= 0 && b != '\n') {
+            b = byteAt(++position);
+        }
+
+        id = encoded ? symbols.idOf(decode()) : symbols.idOf(word, 0, wordLength);
+        return id;
+    }
+
+    @Override
+    public AlphabetCharacter token() {
+        if (id >= 0) {
+            return symbols.get(id);
+        }
+
+        return new AlphabetCharacter(encoded ? decode() : new String(word, 0, wordLength));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The byte at offset in the file (0 to 255), or -1 past its end. Moves the window if offset is outside of it.
+     */
+    private int byteAt(long offset) throws IOException {
+        if (offset >= fileSize) {
+            return -1;
+        }
+
+        if (offset - windowStart >= window.limit()) {
+            map(offset);
+        }
+
+        return window.get((int) (offset - windowStart)) & 0xFF;
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, fileSize - offset));
+    }
+
+    /**
+     * The token as a String, when it's not plain ASCII. word holds its UTF-8 bytes, one per char.
+     */
+    private String decode() {
+        byte[] bytes = new byte[wordLength];
+        for (int i = 0; i < wordLength; i++) {
+            bytes[i] = (byte) word[i];
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Receives a derivation as it's found, one event at a time, in the order of a pre-order walk of the parse tree, for
+ * callers that don't need the tree itself (see LL1Parser.parse()).
+ *  <p>Every enterNonterminal() is matched by an exitNonterminal() for the same non-terminal, with the events of its
+ *  children in between; a lambda production has none. The symbols passed are the grammar's own, so a listener may keep
+ *  them.</p>
+ */
+public interface ParseListener {
+    /**
+     * A non-terminal is being expanded
+     * @param nonTerminal - the non-terminal
+     * @param rule - the production rule it's expanded with
+     */
+    void enterNonterminal(AlphabetCharacter nonTerminal, ProductionRule rule);
+
+    /**
+     * A terminal (or the $ at the end of the input) was matched
+     * @param terminal - the terminal
+     */
+    void terminal(AlphabetCharacter terminal);
+
+    /**
+     * Every symbol of a non-terminal's expansion has been matched
+     * @param nonTerminal - the non-terminal, as passed to the matching enterNonterminal()
+     */
+    void exitNonterminal(AlphabetCharacter nonTerminal);
+}
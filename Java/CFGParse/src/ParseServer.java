@@ -0,0 +1,322 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps grammars loaded and parses for clients, over stdin/stdout or loopback sockets, so each parse doesn't pay for
+ * starting a JVM and building tables.
+ *  <p>Every message is a frame: its length as an int, then that many bytes (all big-endian, as DataOutputStream writes
+ *  them). A request is: an int id, the grammar's name (writeUTF), a byte kind, then</p>
+ *  <pre>
+ *  PARSE_TOKENS   a token count, then the tokens (writeUTF each); $ is added at the end if it's missing
+ *  PARSE_FILE     the path of a .tok file (writeUTF)
+ *  SYMBOLS        nothing
+ *  </pre>
+ *  <p>and its response is: the same id, a status byte, then for OK the result, for anything else a message (writeUTF).
+ *  The result of a parse is the tree: its node count, then every node in pre-order as its symbol id and its number of
+ *  children (ints). The result of SYMBOLS is the symbol count and every symbol's label (writeUTF), by id.</p>
+ *  <p>Requests are run on a pool, so the responses to a connection's requests can come back in any order. A
+ *  connection is done when its input ends, once every response has been written.</p>
+ */
+public class ParseServer {
+    public static final byte PARSE_TOKENS = 1;
+    public static final byte PARSE_FILE = 2;
+    public static final byte SYMBOLS = 3;
+
+    public static final byte OK = 0;
+    public static final byte PARSE_ERROR = 1;
+    public static final byte BAD_REQUEST = 2;
+
+    // Frames bigger than this are refused rather than allocated
+    private static final int MAX_FRAME = 1 << 26;
+
+    // The most bytes writeUTF() can write
+    private static final int MAX_UTF = 65535;
+
+    private final Map<String, GrammarHandle> grammars = new ConcurrentHashMap<>();
+    private final ExecutorService pool;
+
+    /**
+     * Initializes a server without any grammars
+     * @param pool - runs the requests
+     */
+    public ParseServer(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Makes a grammar available to requests. Parses with its LL(1) table if it has one, or its SLR table if not.
+     * @param name - what requests call it
+     * @param compiled - the grammar
+     */
+    public void addGrammar(String name, CompiledGrammar compiled) throws Exception {
+        addGrammar(name, new GrammarHandle(compiled));
+    }
+
+    /**
+     * Makes a grammar that can change available to requests. Every request uses the version that's current when it
+     * starts.
+     * @param name - what requests call it
+     * @param handle - the grammar
+     */
+    public void addGrammar(String name, GrammarHandle handle) {
+        grammars.put(name, handle);
+    }
+
+    /**
+     * Serves one client: reads requests until in ends, and writes the responses to out
+     * @param in - the requests
+     * @param out - where the responses go; not closed
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(in));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(out));
+        Phaser outstanding = new Phaser(1);
+
+        try {
+            while (true) {
+                byte[] request;
+                try {
+                    request = readFrame(requests);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                outstanding.register();
+                try {
+                    pool.execute(() -> {
+                        try {
+                            byte[] response = handle(request);
+                            synchronized (responses) {
+                                writeFrame(responses, response);
+                                responses.flush();
+                            }
+                        } catch (IOException e) {
+                            // The client's gone; there's no one to tell
+                        } finally {
+                            outstanding.arriveAndDeregister();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The task will never arrive, so nothing's waited for it; the client's still told
+                    outstanding.arriveAndDeregister();
+                    int id = request.length >= 4 ? ByteBuffer.wrap(request).getInt() : -1;
+                    synchronized (responses) {
+                        writeFrame(responses, error(id, BAD_REQUEST, "Server is too busy or shutting down"));
+                        responses.flush();
+                    }
+                }
+            }
+        } finally {
+            outstanding.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Accepts clients on a socket until it's closed, serving each one on a thread of its own
+     * @param server - e.g. new ServerSocket(port, 50, InetAddress.getLoopbackAddress())
+     */
+    public void listen(ServerSocket server) throws IOException {
+        while (!server.isClosed()) {
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            Thread thread = new Thread(() -> {
+                try (Socket socket = client) {
+                    serve(socket.getInputStream(), socket.getOutputStream());
+                } catch (IOException e) {
+                    // The client's gone
+                }
+            }, "parse-client-" + client.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Runs one request
+     * @param request - the frame's contents
+     * @return the response frame's contents
+     */
+    byte[] handle(byte[] request) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(buffer);
+        int id = -1;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+            id = in.readInt();
+            String name = in.readUTF();
+            byte kind = in.readByte();
+
+            GrammarHandle handle = grammars.get(name);
+            if (handle == null) {
+                return error(id, BAD_REQUEST, "No grammar called " + name);
+            }
+            GrammarHandle.Snapshot loaded = handle.current();
+
+            switch (kind) {
+                case PARSE_TOKENS:
+                    Queue<AlphabetCharacter> tokens = new ArrayDeque<>();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        tokens.add(new AlphabetCharacter(in.readUTF()));
+                    }
+                    response.writeInt(id);
+                    response.writeByte(OK);
+                    writeTree(response, loaded, new QueueTokenSource(tokens, loaded.grammar.getSymbolTable()));
+                    break;
+
+                case PARSE_FILE:
+                    try (MappedTokenSource file = new MappedTokenSource(Paths.get(in.readUTF()), loaded.grammar.getSymbolTable())) {
+                        response.writeInt(id);
+                        response.writeByte(OK);
+                        writeTree(response, loaded, file);
+                    }
+                    break;
+
+                case SYMBOLS:
+                    SymbolTable symbols = loaded.grammar.getSymbolTable();
+                    response.writeInt(id);
+                    response.writeByte(OK);
+                    response.writeInt(symbols.size());
+                    for (int s = 0; s < symbols.size(); s++) {
+                        response.writeUTF(symbols.get(s).toString());
+                    }
+                    break;
+
+                default:
+                    return error(id, BAD_REQUEST, "Unknown request kind " + kind);
+            }
+        } catch (LLParseException | LRParseException e) {
+            return error(id, PARSE_ERROR, e.getMessage());
+        } catch (Exception | StackOverflowError e) {
+            return error(id, BAD_REQUEST, e.toString());
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Parses, and writes the tree as described above
+     */
+    private static void writeTree(DataOutputStream out, GrammarHandle.Snapshot loaded, TokenSource tokens) throws Exception {
+        if (loaded.ll1Parser != null) {
+            ParseTreeArena arena = new ParseTreeArena(loaded.grammar.getSymbolTable());
+            loaded.ll1Parser.parse(tokens, loaded.grammar.getStartingSymbol(), arena);
+
+            out.writeInt(arena.size());
+            for (int node = 0; node < arena.size(); node++) {
+                out.writeInt(arena.symbolOf(node));
+                out.writeInt(arena.childCountOf(node));
+            }
+            return;
+        }
+
+        ParseTreeNode root = loaded.shiftReduceParser.parse(tokens);
+        List<ParseTreeNode> preOrder = new ArrayList<>();
+        Deque<ParseTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ParseTreeNode node = stack.pop();
+            preOrder.add(node);
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                stack.push(node.children.get(i));
+            }
+        }
+
+        SymbolTable symbols = loaded.grammar.getSymbolTable();
+        out.writeInt(preOrder.size());
+        for (ParseTreeNode node : preOrder) {
+            out.writeInt(symbols.idOf(node.data));
+            out.writeInt(node.children.size());
+        }
+    }
+
+    private static byte[] error(int id, byte status, String message) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(id);
+            out.writeByte(status);
+            out.writeUTF(truncate(message == null ? "" : message));
+        } catch (IOException e) {
+            // Not from a ByteArrayOutputStream
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Cuts a message short enough for writeUTF(), which throws rather than write more than MAX_UTF bytes
+     * @param message - the message
+     * @return as much of it as fits, without splitting a surrogate pair
+     */
+    static String truncate(String message) {
+        int bytes = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            // writeUTF()'s modified UTF-8: \0 takes 2 bytes, and so does every char from \u0080 to \u07FF
+            bytes += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            if (bytes > MAX_UTF) {
+                return message.substring(0, i > 0 && Character.isHighSurrogate(message.charAt(i - 1)) ? i - 1 : i);
+            }
+        }
+
+        return message;
+    }
+
+    /**
+     * Reads a frame
+     * @param in - the stream
+     * @return its contents
+     * @throws EOFException if the stream ends before the frame starts (or in the middle of it)
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    /**
+     * Writes a frame
+     * @param out - the stream; not flushed
+     * @param frame - its contents
+     */
+    public static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.Arrays;
+
+/**
+ * A parse tree kept in parallel int arrays instead of one ParseTreeNode per node: for every node its symbol id,
+ * parent, first child, next sibling and token index. Nodes are int handles into the arrays, the root is 0, and NONE
+ * stands for "no such node".
+ *  <p>It's a ParseListener, so LL1Parser.parse() builds straight into it. The arrays only ever grow, and clear() keeps
+ *  them, so one arena can be reused for parse after parse without allocating anything once it's big enough. A node
+ *  costs 24 bytes; toParseTreeNode() converts (part of) the tree for code that wants the usual shape.</p>
+ *  <p>Not thread-safe; use one arena per thread.</p>
+ */
+public class ParseTreeArena implements ParseListener {
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final SymbolTable symbols;
+
+    private int[] symbol;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    // Index of the token a terminal (or $) node matched in the input, NONE for non-terminals
+    private int[] tokenIndex;
+    // Only used while building, so children can be appended in constant time
+    private int[] lastChild;
+
+    private int size;
+    private int tokenCount;
+    // The node new children go under
+    private int current;
+
+    /**
+     * Initializes an empty arena
+     * @param symbols - the symbol table of the grammar that's parsed
+     */
+    public ParseTreeArena(SymbolTable symbols) {
+        this.symbols = symbols;
+        symbol = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        nextSibling = new int[INITIAL_CAPACITY];
+        tokenIndex = new int[INITIAL_CAPACITY];
+        lastChild = new int[INITIAL_CAPACITY];
+        clear();
+    }
+
+    /**
+     * Empties the arena for the next parse, keeping its memory
+     */
+    public void clear() {
+        size = 0;
+        tokenCount = 0;
+        current = NONE;
+    }
+
+    @Override
+    public void enterNonterminal(AlphabetCharacter nonTerminal, ProductionRule rule) {
+        current = add(nonTerminal.getId(), NONE);
+    }
+
+    @Override
+    public void terminal(AlphabetCharacter terminal) {
+        add(terminal.getId(), tokenCount++);
+    }
+
+    @Override
+    public void exitNonterminal(AlphabetCharacter nonTerminal) {
+        current = parent[current];
+    }
+
+    /**
+     * Adds a node as the last child of the current node (or as the root)
+     */
+    private int add(int symbolId, int token) {
+        if (size == symbol.length) {
+            int capacity = 2 * size;
+            symbol = Arrays.copyOf(symbol, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            tokenIndex = Arrays.copyOf(tokenIndex, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+        }
+
+        int node = size++;
+        symbol[node] = symbolId;
+        parent[node] = current;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        tokenIndex[node] = token;
+        lastChild[node] = NONE;
+
+        if (current != NONE) {
+            if (lastChild[current] == NONE) {
+                firstChild[current] = node;
+            } else {
+                nextSibling[lastChild[current]] = node;
+            }
+            lastChild[current] = node;
+        }
+
+        return node;
+    }
+
+    /**
+     * @return the root, the node of the starting symbol, or NONE if the arena is empty
+     */
+    public int getRoot() {
+        return size == 0 ? NONE : 0;
+    }
+
+    /**
+     * @return the number of nodes. Handles run from 0 to size() - 1, in pre-order.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of tokens matched, $ included
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @param node - a node
+     * @return the id of its symbol in the grammar's SymbolTable
+     */
+    public int symbolOf(int node) {
+        return symbol[node];
+    }
+
+    /**
+     * @param node - a node
+     * @return its symbol
+     */
+    public AlphabetCharacter getSymbol(int node) {
+        return symbols.get(symbol[node]);
+    }
+
+    /**
+     * @param node - a node
+     * @return its parent, or NONE for the root
+     */
+    public int parentOf(int node) {
+        return parent[node];
+    }
+
+    /**
+     * @param node - a node
+     * @return its first child, or NONE if it's a leaf
+     */
+    public int firstChildOf(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @param node - a node
+     * @return the next child of its parent, or NONE if it's the last
+     */
+    public int nextSiblingOf(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * @param node - a node
+     * @return the position in the input of the token it matched, or NONE if it's a non-terminal
+     */
+    public int tokenIndexOf(int node) {
+        return tokenIndex[node];
+    }
+
+    /**
+     * @param node - a node
+     * @return whether it matched a token (a terminal or $)
+     */
+    public boolean isToken(int node) {
+        return tokenIndex[node] != NONE;
+    }
+
+    /**
+     * @param node - a node
+     * @return the number of children it has
+     */
+    public int childCountOf(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Converts the subtree under node to ParseTreeNodes
+     * @param node - a node
+     * @return the ParseTreeNode for node, with the same tree under it. Its parent is null.
+     */
+    public ParseTreeNode toParseTreeNode(int node) {
+        // Handles are in pre-order, so the subtree is one run of handles, and every parent is converted before its
+        // children
+        int end = subtreeEnd(node);
+        ParseTreeNode[] converted = new ParseTreeNode[end - node];
+        converted[0] = new ParseTreeNode(null, getSymbol(node));
+
+        for (int n = node + 1; n < end; n++) {
+            ParseTreeNode p = converted[parent[n] - node];
+            converted[n - node] = new ParseTreeNode(p, getSymbol(n));
+            p.addChild(converted[n - node]);
+        }
+
+        return converted[0];
+    }
+
+    /**
+     * Converts the whole tree to ParseTreeNodes
+     * @return the node of the starting symbol, or null if the arena is empty
+     */
+    public ParseTreeNode toParseTreeNode() {
+        return size == 0 ? null : toParseTreeNode(0);
+    }
+
+    /**
+     * One past the last handle in the subtree of node: the next sibling of the node or of its nearest ancestor that
+     * has one
+     * @param node - a node
+     * @return the end of its subtree
+     */
+    public int subtreeEnd(int node) {
+        for (int a = node; a != NONE; a = parent[a]) {
+            if (nextSibling[a] != NONE) {
+                return nextSibling[a];
+            }
+        }
+
+        return size;
+    }
+}
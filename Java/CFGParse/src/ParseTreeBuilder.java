@@ -0,0 +1,41 @@
+/**
+ * A ParseListener that builds the ParseTreeNode tree of the derivation. What LL1Parser.LLTabularParsing() uses.
+ *  <p>One builder per parse.</p>
+ */
+public class ParseTreeBuilder implements ParseListener {
+    private final ParseTreeNode root;
+    private ParseTreeNode currentNode;
+
+    /**
+     * Initializes the builder with an empty tree
+     */
+    public ParseTreeBuilder() {
+        root = new ParseTreeNode(null, new AlphabetCharacter("ROOT"));
+        currentNode = root;
+    }
+
+    @Override
+    public void enterNonterminal(AlphabetCharacter nonTerminal, ProductionRule rule) {
+        ParseTreeNode n = new ParseTreeNode(currentNode, nonTerminal);
+        currentNode.addChild(n);
+        currentNode = n;
+    }
+
+    @Override
+    public void terminal(AlphabetCharacter terminal) {
+        currentNode.addChild(new ParseTreeNode(currentNode, terminal));
+    }
+
+    @Override
+    public void exitNonterminal(AlphabetCharacter nonTerminal) {
+        currentNode = currentNode.parent;
+    }
+
+    /**
+     * The tree built so far
+     * @return the node of the starting symbol (its parent is a dummy ROOT node), or null if nothing's been parsed
+     */
+    public ParseTreeNode getTree() {
+        return root.children.isEmpty() ? null : root.children.get(0);
+    }
+}
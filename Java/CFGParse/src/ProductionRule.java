@@ -5,6 +5,9 @@ public class ProductionRule {
     public AlphabetCharacter lhs;
     public ArrayList<AlphabetCharacter> rhs;
 
+    // Position of this rule in its CFG (see CFG.getProductionRule), -1 if it doesn't belong to one
+    int index = -1;
+
     public ProductionRule() {
         this.rhs = new ArrayList<>();
     }
@@ -32,6 +35,14 @@ public class ProductionRule {
         lhs = new AlphabetCharacter(toBeCopied.lhs);
     }
 
+    /**
+     * The index of this rule in its grammar, so tables can refer to it by number
+     * @return the index, or -1 if this rule isn't part of a CFG
+     */
+    public int getIndex() {
+        return index;
+    }
+
     public void addCharacterToRHS(AlphabetCharacter c) {
         rhs.add(c);
     }
@@ -85,7 +96,8 @@ public class ProductionRule {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        // AlphabetCharacter caches its own hash, so this never builds a string
+        return 31 * Objects.hashCode(lhs) + rhs.hashCode();
     }
 
     @Override
@@ -93,6 +105,6 @@ public class ProductionRule {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProductionRule that = (ProductionRule) o;
-        return Objects.equals(rhs, that.rhs);
+        return Objects.equals(lhs, that.lhs) && Objects.equals(rhs, that.rhs);
     }
 }
@@ -0,0 +1,37 @@
+import java.util.Queue;
+
+/**
+ * A TokenSource over a Queue of tokens, e.g. one from ShiftReduceParser.readTokens(). Tokens are removed from the
+ * queue as they're read.
+ */
+public class QueueTokenSource implements TokenSource {
+    private final Queue<AlphabetCharacter> tokens;
+    private final SymbolTable symbols;
+    private AlphabetCharacter token;
+
+    /**
+     * Initializes the source
+     * @param tokens - the tokens; if they don't end with $, it's assumed
+     * @param symbols - the symbol table of the grammar that's parsed
+     */
+    public QueueTokenSource(Queue<AlphabetCharacter> tokens, SymbolTable symbols) {
+        this.tokens = tokens;
+        this.symbols = symbols;
+    }
+
+    @Override
+    public int next() {
+        token = tokens.poll();
+        if (token == null) {
+            token = symbols.get(SymbolTable.EOF_ID);
+            return SymbolTable.EOF_ID;
+        }
+
+        return symbols.idOf(token);
+    }
+
+    @Override
+    public AlphabetCharacter token() {
+        return token;
+    }
+}
@@ -88,7 +88,7 @@ public class SLRAction {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return Objects.hash(action, goToItemSet, productionRuleReducedWith, column);
     }
 
     @Override
@@ -1,17 +1,20 @@
 /**
  * A class representing an SLR "item"
  * According to the slides, an "item" is a production rule with a "progress marker"
+ *  <p>Immutable. An item is its packed form (see LRItemSet), which is what SLRParser works with, plus the rule that
+ *  the packed rule index stands for, to read the rest from. A rule that isn't part of a CFG packs as index -1.</p>
  */
 public class SLRItem implements Comparable<SLRItem> {
-    public ProductionRule productionRule;
+    public final ProductionRule productionRule;
 
-    // By using an int, we can just do ProductionRule[progressMarker],
-    // as this will return the element *after* the progressMarker
-    private int progressMarker;
+    // LRItemSet.pack(productionRule.index, progressMarker). The progress marker is the index of the element *after* it
+    private final long item;
+
+    // Of the rule's contents, since a copy of a rule is still the same rule (see equals())
+    private final int hash;
 
     public SLRItem(ProductionRule productionRule) {
-        this.productionRule = productionRule;
-        progressMarker = 0; // The 'beginning'
+        this(productionRule, 0); // The 'beginning'
     }
 
     /**
@@ -20,8 +23,18 @@ public class SLRItem implements Comparable<SLRItem> {
      * @param progressMarker -
      */
     public SLRItem(ProductionRule productionRule, int progressMarker) {
+        this(productionRule, LRItemSet.pack(productionRule.index, progressMarker));
+    }
+
+    /**
+     * A view of a packed item
+     * @param productionRule - the rule at LRItemSet.ruleOf(item)
+     * @param item - the packed item
+     */
+    SLRItem(ProductionRule productionRule, long item) {
         this.productionRule = productionRule;
-        this.progressMarker = progressMarker;
+        this.item = item;
+        this.hash = 31 * productionRule.hashCode() + LRItemSet.progressMarkerOf(item);
     }
 
     /**
@@ -29,8 +42,8 @@ public class SLRItem implements Comparable<SLRItem> {
      * @param toBeCopied -
      */
     public SLRItem(SLRItem toBeCopied) {
-        productionRule = new ProductionRule(toBeCopied.productionRule);
-        progressMarker = toBeCopied.progressMarker;
+        // Production rules aren't modified once they're in a CFG, so the copy can share it
+        this(toBeCopied.productionRule, toBeCopied.item);
     }
 
     /**
@@ -47,6 +60,7 @@ public class SLRItem implements Comparable<SLRItem> {
      * @return Given A → α•Bβ, returns B, or null if the progress marker is at the end
      */
     public AlphabetCharacter elementAfterProgressMarker() {
+        int progressMarker = getProgressMarker();
         if (progressMarker < productionRule.rhs.size()) {
             return productionRule.rhs.get(progressMarker);
         }
@@ -61,6 +75,7 @@ public class SLRItem implements Comparable<SLRItem> {
      * @return - whether X is to the right of •
      */
     public boolean isSymbolToTheRightOfProgressMarker(AlphabetCharacter grammarSymbol) {
+        int progressMarker = getProgressMarker();
         if (progressMarker >= productionRule.rhs.size()) {
             return false;
         }
@@ -70,17 +85,19 @@ public class SLRItem implements Comparable<SLRItem> {
     }
 
     /**
-     * Moves the progress marker past X
+     * Returns this item with the progress marker moved past X. Items are immutable, so this one stays as it is.
      * @param grammarSymbol - X
+     * @return the new item, or this one if X isn't to the right of •
      */
-    public void moveProgressMarkerToTheRightOf(AlphabetCharacter grammarSymbol) {
+    public SLRItem withProgressMarkerAfter(AlphabetCharacter grammarSymbol) {
         // Put • to the *right* (i.e. +1 the position of) X
-        for (int i = progressMarker; i < productionRule.rhs.size(); i++) {
+        for (int i = getProgressMarker(); i < productionRule.rhs.size(); i++) {
             if (productionRule.rhs.get(i).equals(grammarSymbol)) {
-                progressMarker = i + 1;
-                break;
+                return new SLRItem(productionRule, item - getProgressMarker() + i + 1);
             }
         }
+
+        return this;
     }
 
     /**
@@ -88,7 +105,30 @@ public class SLRItem implements Comparable<SLRItem> {
      * @return true if P = A → α •
      */
     public boolean isProgressMarkerAtEnd() {
-        return progressMarker == productionRule.rhs.size();
+        return getProgressMarker() == productionRule.rhs.size();
+    }
+
+    /**
+     * Where the progress marker is: the index in the RHS of the element after it
+     * @return 0 for A → •α, rhs.size() for A → α•
+     */
+    public int getProgressMarker() {
+        return LRItemSet.progressMarkerOf(item);
+    }
+
+    /**
+     * @return LRItemSet.pack() of this item: its rule's index (-1 if the rule isn't part of a CFG) and progress marker
+     */
+    long packed() {
+        return item;
+    }
+
+    /**
+     * Return true if the progress marker is at the beginning of the production rule
+     * @return true if P = A → •α
+     */
+    public boolean isAtStart() {
+        return getProgressMarker() == 0;
     }
 
     /**
@@ -122,7 +162,7 @@ public class SLRItem implements Comparable<SLRItem> {
 
         // Add an upwards arrow where the production rule is
         // Start by skipping to the correct location
-        for (int i = 0; i < progressMarker; i++) {
+        for (int i = 0; i < getProgressMarker(); i++) {
             // Skip over the length of the alphabetCharacter in this position
             for (int j = 0; j < productionRule.rhs.get(i).toString().length(); j++) {
                 result.append(" ");
@@ -143,18 +183,33 @@ public class SLRItem implements Comparable<SLRItem> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         SLRItem slrItem = (SLRItem) o;
-        return progressMarker == slrItem.progressMarker &&
-                productionRule.equals(slrItem.productionRule);
+        if (item == slrItem.item && productionRule == slrItem.productionRule) {
+            return true;
+        }
+        if (hash != slrItem.hash) {
+            return false;
+        }
+
+        // A copy of a rule is still the same rule
+        return getProgressMarker() == slrItem.getProgressMarker() && productionRule.equals(slrItem.productionRule);
     }
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return hash;
     }
 
+    /**
+     * Orders items of the same grammar by rule, then by progress marker, the same as their packed form sorts
+     */
     @Override
     public int compareTo(SLRItem o) {
-        return this.toString().compareTo(o.toString());
+        if (productionRule.index < 0 || o.productionRule.index < 0) {
+            // At least one of them isn't part of a CFG
+            return this.toString().compareTo(o.toString());
+        }
+
+        return Long.compare(item, o.item);
     }
 
 }
@@ -1,9 +1,38 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
-public class SLRParser {
+public class SLRParser implements LRActionTable {
     private CFG grammar;
+    private SymbolTable symbols;
+
+    // The item sets as sets of SLRItems. These are read-only views of itemSets, for the unit tests and anyone else
+    // who wants to look at them; the construction itself only works on the packed sets.
     public ArrayList<Set<SLRItem>> canonicalItemSets;
 
+    // item set -> its kernel, packed (see LRItemSet). The rest of an item set is worked out from closureRules when
+    // it's needed, rather than kept around for every state.
+    private ArrayList<LRItemSet> itemSets;
+
+    // non-terminal id -> the rules whose fresh starts are in the closure of any item with that non-terminal after
+    // its • (null for symbols without rules)
+    private ArrayList<BitSet> closureRules;
+
+    // kernel of an item set -> its index in itemSets (an item set is determined by its kernel). Looked up from every
+    // thread of a parallel construction.
+    private Map<LRItemSet, Integer> kernelIndex;
+
+    // item set -> (X -> index of GoTo(item set, X)), recorded as the item sets are built
+    private ArrayList<Map<AlphabetCharacter, Integer>> transitions;
+
+    // N ∪ Σ ∪ {$}, in id order
+    private List<AlphabetCharacter> allGrammarSymbols;
+
+    // Builds the item sets and the action table in parallel, if not null
+    private ForkJoinPool pool;
+
     // SLR Action Table
     // Rows are state numbers, columns are X ∈ N union Σ$
     public Map<Integer, Map<AlphabetCharacter, SLRAction>> slrActionTable;
@@ -13,7 +42,20 @@ public class SLRParser {
      * @param grammar - the CFG for this SLRParser
      */
     public SLRParser(CFG grammar) {
+        this(grammar, null);
+    }
+
+    /**
+     * Constructor that builds the item sets and the action table on a ForkJoinPool. The result is identical to the
+     * single-threaded one, item set numbers included.
+     * @param grammar - the CFG for this SLRParser
+     * @param pool - the pool to build on, or null to build on this thread
+     */
+    public SLRParser(CFG grammar, ForkJoinPool pool) {
         this.grammar = grammar;
+        this.pool = pool;
+        this.symbols = grammar.getSymbolTable();
+        this.allGrammarSymbols = allGrammarSymbols();
 
         // Construct the canonical sets
         setsOfItemsConstruction();
@@ -23,40 +65,214 @@ public class SLRParser {
     }
 
     /**
-     * Creates the canonicalItemSets by following the Dragon Book's construction algorithm
+     * Restores a parser whose item sets and action table were built earlier (see CompiledGrammar)
+     * @param grammar - the CFG for this SLRParser
+     * @param itemSets - its item sets
+     * @param transitions - the GoTo() transitions out of every item set
+     * @param slrActionTable - its action table
+     */
+    SLRParser(CFG grammar, ArrayList<LRItemSet> itemSets, ArrayList<Map<AlphabetCharacter, Integer>> transitions,
+              Map<Integer, Map<AlphabetCharacter, SLRAction>> slrActionTable) {
+        this.grammar = grammar;
+        this.symbols = grammar.getSymbolTable();
+        this.allGrammarSymbols = allGrammarSymbols();
+        this.itemSets = itemSets;
+        this.transitions = transitions;
+        this.slrActionTable = slrActionTable;
+
+        computeClosureRules();
+
+        canonicalItemSets = new ArrayList<>(itemSets.size());
+        for (LRItemSet itemSet : itemSets) {
+            canonicalItemSets.add(new ItemSetView(itemSet));
+        }
+        indexKernels();
+    }
+
+    /**
+     * Creates the canonicalItemSets with the Dragon Book's construction algorithm, driven by a worklist: every state is
+     * expanded exactly once, GoTo targets are looked up by their kernel, and every transition is recorded as it's found
      */
     public void setsOfItemsConstruction() {
         // TODO: We need to do this for the augmented grammar S' -> S, to handle multiple starting rules
-        Set<SLRItem> startingItemSet = new HashSet<>();
-        startingItemSet.add(SLRItem.makeFreshStart(grammar.getProductionsOf(grammar.getStartingSymbol()).get(0)));
+        ProductionRule start = grammar.getProductionsOf(grammar.getStartingSymbol()).get(0);
 
-        Set<SLRItem> response = itemSetClosure(startingItemSet);
+        computeClosureRules();
         canonicalItemSets = new ArrayList<>();
-        canonicalItemSets.add(response);
+        itemSets = new ArrayList<>();
+        kernelIndex = new ConcurrentHashMap<>();
+        transitions = new ArrayList<>();
+
+        int first = addState(LRItemSet.of(new long[] {LRItemSet.pack(start.index, 0)}, 1));
+        if (pool != null) {
+            parallelSetsOfItemsConstruction();
+            return;
+        }
 
-        Set<AlphabetCharacter> allGrammarSymbols = grammar.getAllGrammarSymbols();
-        int oldSize;
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        worklist.add(first);
 
-        // Sets-of-Items Construction
-        do {
-            oldSize = canonicalItemSets.size();
-            ArrayList<Set<SLRItem>> setToAvoidConcurrentModificationException = new ArrayList<>();
+        while (!worklist.isEmpty()) {
+            expandState(worklist.poll(), worklist, null);
+        }
+    }
 
-            for (Set<SLRItem> I : canonicalItemSets) {
-                for (AlphabetCharacter x : allGrammarSymbols) {
-                    Set<SLRItem> goToX = gotoItem(I, x);
+    /**
+     * The same construction, a breadth-first level at a time: the GoTo()s of every item set in a level are worked out
+     * in parallel, then the new item sets they lead to are numbered on this thread, in the order the worklist above
+     * would have found them
+     */
+    private void parallelSetsOfItemsConstruction() {
+        int levelStart = 0;
+        while (levelStart < itemSets.size()) {
+            int levelEnd = itemSets.size();
+            GoTos[] level = new GoTos[levelEnd - levelStart];
+            int offset = levelStart;
+            pool.invoke(new ForEachItemSet(levelStart, levelEnd, i -> level[i - offset] = computeGoTos(i)));
+
+            for (int i = levelStart; i < levelEnd; i++) {
+                addGoTos(i, level[i - levelStart], null, null);
+            }
+            levelStart = levelEnd;
+        }
+    }
 
-                    // Skip empty
-                    if (goToX.isEmpty() || canonicalItemSets.contains(goToX)) {
-                        continue;
-                    }
+    /**
+     * Adds the state with this kernel
+     * @param kernel - the kernel items
+     * @return its index in itemSets
+     */
+    private int addState(LRItemSet kernel) {
+        int index = itemSets.size();
+        setItemSet(index, kernel);
+        transitions.add(new HashMap<>());
+        kernelIndex.put(kernel, index);
+
+        return index;
+    }
+
+    private void setItemSet(int i, LRItemSet itemSet) {
+        if (i == itemSets.size()) {
+            itemSets.add(itemSet);
+            canonicalItemSets.add(new ItemSetView(itemSet));
+        } else {
+            itemSets.set(i, itemSet);
+            canonicalItemSets.set(i, new ItemSetView(itemSet));
+        }
+    }
+
+    /**
+     * (Re)computes every transition out of a state, adding the states it leads to that don't exist yet
+     * @param i - the state
+     * @param worklist - new states are added to this, to be expanded later
+     * @param newStates - if not null, new states are also recorded in here
+     */
+    private void expandState(int i, ArrayDeque<Integer> worklist, BitSet newStates) {
+        addGoTos(i, computeGoTos(i), worklist, newStates);
+    }
+
+    /**
+     * Works out GoTo(i, X) for every X, without changing anything, so any number of states can be done at once
+     * @param i - the state
+     * @return the kernels, and the indices of those that are already known
+     */
+    private GoTos computeGoTos(int i) {
+        LRItemSet itemSet = closure(itemSets.get(i));
+
+        // K = { k ∈ I | X is to the right of • in k }, with • progressed past X, for every X at once: a counting sort
+        // of the items by X. Items stay sorted within each X, and the Xs are visited in id order, so states are
+        // numbered the same way every time.
+        int[] next = new int[itemSet.size()];
+        int[] start = new int[symbols.size() + 1];
+        for (int k = 0; k < itemSet.size(); k++) {
+            AlphabetCharacter x = elementAfterProgressMarker(itemSet.get(k));
+            next[k] = x == null || x.isLambda() ? -1 : x.id;
+            if (next[k] >= 0) {
+                start[next[k] + 1]++;
+            }
+        }
+        for (int x = 0; x < symbols.size(); x++) {
+            start[x + 1] += start[x];
+        }
+
+        long[] moved = new long[start[symbols.size()]];
+        int[] fill = Arrays.copyOf(start, symbols.size());
+        int count = 0;
+        for (int k = 0; k < itemSet.size(); k++) {
+            if (next[k] >= 0) {
+                if (fill[next[k]] == start[next[k]]) {
+                    count++;
+                }
+                moved[fill[next[k]]++] = itemSet.get(k) + 1;
+            }
+        }
+
+        GoTos result = new GoTos(count);
+        count = 0;
+        for (int x = 0; x < symbols.size(); x++) {
+            if (start[x] == start[x + 1]) {
+                continue;
+            }
+
+            LRItemSet kernel = LRItemSet.of(Arrays.copyOfRange(moved, start[x], start[x + 1]), start[x + 1] - start[x]);
+            Integer target = kernelIndex.get(kernel);
+            result.symbols[count] = x;
+            result.kernels[count] = kernel;
+            result.targets[count++] = target == null ? -1 : target;
+        }
 
-                    setToAvoidConcurrentModificationException.add(goToX);
+        return result;
+    }
+
+    /**
+     * Records the transitions out of a state, adding the states they lead to that don't exist yet
+     * @param i - the state
+     * @param goTos - from computeGoTos(i)
+     * @param worklist - if not null, new states are added to this, to be expanded later
+     * @param newStates - if not null, new states are also recorded in here
+     */
+    private void addGoTos(int i, GoTos goTos, ArrayDeque<Integer> worklist, BitSet newStates) {
+        Map<AlphabetCharacter, Integer> out = new HashMap<>();
+        for (int k = 0; k < goTos.symbols.length; k++) {
+            int target = goTos.targets[k];
+            if (target < 0) {
+                // Not known when the GoTo() was worked out, but it may have been added since
+                Integer known = kernelIndex.get(goTos.kernels[k]);
+                if (known == null) {
+                    target = addState(goTos.kernels[k]);
+                    if (worklist != null) {
+                        worklist.add(target);
+                    }
+                    if (newStates != null) {
+                        newStates.set(target);
+                    }
+                } else {
+                    target = known;
                 }
             }
 
-            canonicalItemSets.addAll(setToAvoidConcurrentModificationException);
-        } while(canonicalItemSets.size() != oldSize);
+            out.put(symbols.get(goTos.symbols[k]), target);
+        }
+
+        transitions.set(i, out);
+    }
+
+    /**
+     * The transitions out of a state, as recorded while the states were built
+     * @param i - the state
+     * @return X -> the index of GoTo(i, X), for every X that has one
+     */
+    public Map<AlphabetCharacter, Integer> getTransitions(int i) {
+        return Collections.unmodifiableMap(transitions.get(i));
+    }
+
+    /**
+     * The packed kernel of a state
+     * @param i - the state
+     * @return its kernel items
+     */
+    LRItemSet getKernel(int i) {
+        return itemSets.get(i);
     }
 
     /**
@@ -65,37 +281,116 @@ public class SLRParser {
      * @return - it's closure
      */
     public Set<SLRItem> itemSetClosure(Set<SLRItem> itemSet) {
-        Set<SLRItem> closure = new HashSet<>(itemSet);
-        int oldSize;
-
-        do {
-            oldSize = closure.size();
-            Set<SLRItem> setToAvoidConcurrentModificationException = new HashSet<>();
-
-            // For each item in the itemset
-            for (SLRItem item : closure) {
-                // Given A → α•Bβ, get B
-                AlphabetCharacter B = item.elementAfterProgressMarker();
-                if (B == null) { // null -> progress marker is at end, skip
-                    continue;
-                }
+        long[] items = new long[itemSet.size()];
+        int length = 0;
+        for (SLRItem item : itemSet) {
+            items[length++] = pack(item);
+        }
 
-                // Get all the production rules of B
-                ArrayList<ProductionRule> BsProductionRules = grammar.getProductionsOf(B);
-                if (BsProductionRules == null) { // null -> B is not a non-terminal, skip
-                    continue;
-                }
+        return new ItemSetView(LRItemSet.of(items, length));
+    }
+
+    /**
+     * Same as above, on packed items: the kernel plus the fresh starts of closureRules of every symbol after a •
+     * @param kernel - the item set we care about
+     * @return its closure
+     */
+    private LRItemSet closure(LRItemSet kernel) {
+        return closure(grammar, closureRules, kernel);
+    }
+
+    /**
+     * Same as above, for any grammar (see LazySLRTable)
+     * @param grammar - the CFG
+     * @param closureRules - from closureRulesOf(grammar)
+     * @param kernel - the item set we care about
+     * @return its closure
+     */
+    static LRItemSet closure(CFG grammar, List<BitSet> closureRules, LRItemSet kernel) {
+        BitSet fresh = new BitSet();
+        for (int k = 0; k < kernel.size(); k++) {
+            // Given A → α•Bβ, get B
+            AlphabetCharacter B = elementAfterProgressMarker(grammar, kernel.get(k));
+            if (B != null && closureRules.get(B.id) != null) {
+                fresh.or(closureRules.get(B.id));
+            }
+        }
 
-                // Add all the fresh starts
-                for (ProductionRule p : BsProductionRules) {
-                    setToAvoidConcurrentModificationException.add(SLRItem.makeFreshStart(p));
+        long[] closure = new long[kernel.size() + fresh.cardinality()];
+        int length = 0;
+        for (int k = 0; k < kernel.size(); k++) {
+            closure[length++] = kernel.get(k);
+        }
+        for (int rule = fresh.nextSetBit(0); rule >= 0; rule = fresh.nextSetBit(rule + 1)) {
+            closure[length++] = LRItemSet.pack(rule, 0);
+        }
+
+        return LRItemSet.of(closure, length);
+    }
+
+    /**
+     * Whether the closure of kernel has an item of the given rule (with closureRules as they are now)
+     */
+    private boolean closureContainsRule(LRItemSet kernel, int rule) {
+        if (kernel.containsRule(rule)) {
+            return true;
+        }
+
+        for (int k = 0; k < kernel.size(); k++) {
+            AlphabetCharacter B = elementAfterProgressMarker(kernel.get(k));
+            if (B != null && closureRules.get(B.id) != null && closureRules.get(B.id).get(rule)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Works out, once per grammar, which fresh starts every non-terminal brings into a closure: its own rules, plus
+     * those of every non-terminal that can be first on the RHS of one of them, and so on
+     */
+    private void computeClosureRules() {
+        closureRules = closureRulesOf(grammar);
+    }
+
+    /**
+     * Same as above, for any grammar (see LazySLRTable)
+     * @param grammar - the CFG
+     * @return non-terminal id -> the rules of its fresh starts, or null for symbols without rules
+     */
+    static ArrayList<BitSet> closureRulesOf(CFG grammar) {
+        SymbolTable symbols = grammar.getSymbolTable();
+        ArrayList<BitSet> closureRules = new ArrayList<>(symbols.size());
+
+        for (int id = 0; id < symbols.size(); id++) {
+            if (grammar.getProductionsOf(id) == null) {
+                closureRules.add(null);
+                continue;
+            }
+
+            BitSet rules = new BitSet();
+            BitSet visited = new BitSet();
+            ArrayDeque<Integer> worklist = new ArrayDeque<>();
+            visited.set(id);
+            worklist.add(id);
+
+            while (!worklist.isEmpty()) {
+                for (ProductionRule p : grammar.getProductionsOf(worklist.poll())) {
+                    rules.set(p.index);
+
+                    AlphabetCharacter first = p.rhs.isEmpty() ? null : p.rhs.get(0);
+                    if (first != null && !visited.get(first.id) && grammar.getProductionsOf(first.id) != null) {
+                        visited.set(first.id);
+                        worklist.add(first.id);
+                    }
                 }
             }
 
-            closure.addAll(setToAvoidConcurrentModificationException);
-        } while (oldSize != closure.size());
+            closureRules.add(rules);
+        }
 
-        return closure;
+        return closureRules;
     }
 
     /**
@@ -105,81 +400,481 @@ public class SLRParser {
      * @return the closure of K'
      */
     public Set<SLRItem> gotoItem(Set<SLRItem> itemSet, AlphabetCharacter grammarSymbol) {
-        Set<SLRItem> K = new HashSet<>();
+        long[] Kprime = new long[itemSet.size()];
+        int length = 0;
 
-        // K = { k ∈ I | X is to the right of • in k }
+        // K′ = { k ∈ I | X is to the right of • in k }, with • progressed past X
         for (SLRItem k : itemSet) {
-            if (k.isSymbolToTheRightOfProgressMarker(grammarSymbol)) {
-                K.add(new SLRItem(k));
+            long item = pack(k);
+            if (grammarSymbol.equals(elementAfterProgressMarker(item))) {
+                Kprime[length++] = item + 1;
             }
         }
 
-        Set<SLRItem> Kprime = new HashSet<>(K);
-
-        // K′ = { k ∈ K | with • progressed past X }
-        for (SLRItem k : Kprime) {
-            k.moveProgressMarkerToTheRightOf(grammarSymbol);
-        }
-
-        return itemSetClosure(Kprime);
+        return new ItemSetView(LRItemSet.of(Kprime, length));
     }
 
     /**
      * Generates a constructed SLR table
-     * @param itemSetsOfG (rammar) - the canonical item sets
+     * @param itemSetsOfG (rammar) - the canonical item sets, as built by setsOfItemsConstruction()
      */
     public void constructSLRActionTable(ArrayList<Set<SLRItem>> itemSetsOfG) {
         slrActionTable = new TreeMap<>();
-        Set<AlphabetCharacter> allGrammarSymbols = grammar.getAllGrammarSymbols();
+
+        if (pool != null) {
+            // The rows are independent of each other
+            List<Map<AlphabetCharacter, SLRAction>> rows = new ArrayList<>(Collections.nCopies(itemSetsOfG.size(), null));
+            pool.invoke(new ForEachItemSet(0, itemSetsOfG.size(), i -> rows.set(i, buildSLRActionRow(i))));
+
+            for (int i = 0; i < rows.size(); i++) {
+                slrActionTable.put(i, rows.get(i));
+            }
+            return;
+        }
 
         for (int i = 0; i < itemSetsOfG.size(); i++) {
-            // Create the inner map if it isn't already there
-            if (!slrActionTable.containsKey(i)) {
+            constructSLRActionRow(i);
+        }
+    }
+
+    /**
+     * (Re)builds the row of the action table for one item set
+     * @param i - the row
+     */
+    private void constructSLRActionRow(int i) {
+        slrActionTable.put(i, buildSLRActionRow(i));
+    }
+
+    /**
+     * Works out the row of the action table for one item set, without touching the table
+     * @param i - the row
+     * @return the row
+     */
+    private Map<AlphabetCharacter, SLRAction> buildSLRActionRow(int i) {
+        Map<AlphabetCharacter, SLRAction> row = new HashMap<>();
+        LRItemSet itemSet = closure(itemSets.get(i));
+
+        // Case #1: GoTo()s, which were recorded when the item sets were built
+        for (Map.Entry<AlphabetCharacter, Integer> transition : transitions.get(i).entrySet()) {
+            SLRAction currentAction = SLRAction.createShiftAndGoTo(transition.getValue(), transition.getKey());
+            row.put(transition.getKey(), currentAction);
+        }
+
+        // Case #2: ReduceWith(). Backwards, so on a reduce/reduce conflict the rule that comes first in the grammar wins
+        for (int k = itemSet.size() - 1; k >= 0; k--) {
+            ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(itemSet.get(k)));
+            if (!(LRItemSet.progressMarkerOf(itemSet.get(k)) == p.rhs.size() || p.isLambdaProduction())) {
+                continue;
+            }
+
+            // look up the lookaheads: the (cached) followset, for SLR
+            BitSet followSet = reduceLookaheads(i, p);
+            for (int f = followSet.nextSetBit(0); f >= 0; f = followSet.nextSetBit(f + 1)) {
+                // create an SLRAction and put it in table
+                SLRAction currentAction = SLRAction.createReduceWith(p, symbols.get(f));
+                row.put(symbols.get(f), currentAction);
+            }
+        }
+
+        // Case 3: ReduceWithAndAccept()
+        for (int k = 0; k < itemSet.size(); k++) {
+            // Only 1 of the rules has to be S → π$• to accept on all
+            ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(itemSet.get(k)));
+            if (p.lhs == grammar.getStartingSymbol() && LRItemSet.progressMarkerOf(itemSet.get(k)) == p.rhs.size()) {
+                for (AlphabetCharacter x : allGrammarSymbols) {
+                    row.put(x, SLRAction.createReduceWithAndAccept(p, x));
+                }
+
+                break;
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * The symbols to reduce with p on in state i. For SLR(1) that's just Follow(lhs), in every state.
+     * @param i - the state
+     * @param p - a rule that's complete in state i
+     * @return the set of symbol ids; don't modify it
+     */
+    protected BitSet reduceLookaheads(int i, ProductionRule p) {
+        return grammar.getAnalysis().getFollowSet(p.lhs.id);
+    }
+
+    @Override
+    public CFG getGrammar() {
+        return grammar;
+    }
+
+    @Override
+    public Map<Integer, Map<AlphabetCharacter, SLRAction>> getActionTable() {
+        return slrActionTable;
+    }
+
+    /**
+     * Brings the item sets and action table up to date after a rule was added to or removed from the grammar.
+     *  <p>Only item sets that contain the changed non-terminal after a •, or an item of a removed rule, are
+     *  recomputed; any new item sets they lead to are appended to canonicalItemSets. Every other item set keeps its
+     *  row, unless it reduces with a rule whose Follow set changed, or with the rule a removal renumbered (which can
+     *  change who wins a reduce/reduce conflict). Then the item sets that can't be reached anymore are dropped, and the
+     *  rest are numbered the way a fresh construction would number them, so the result is the same as
+     *  new SLRParser(grammar)'s.</p>
+     * @param change - returned by CFG.addProductionRule()/removeProductionRule()
+     */
+    public void applyGrammarChange(GrammarChange change) {
+        BitSet changedItemSets = new BitSet();
+        BitSet rowsToRebuild = new BitSet();
+
+        if (change.added) {
+            computeClosureRules();
+
+            // The item sets that now have the new rule in their closure
+            for (int i = 0; i < itemSets.size(); i++) {
+                if (closureContainsRule(itemSets.get(i), change.rule.index)) {
+                    changedItemSets.set(i);
+                }
+            }
+        } else {
+            // The removed rule's index now belongs to the grammar's (formerly) last rule; drop the removed rule's
+            // items, and renumber the moved rule's
+            int last = grammar.getProductionRules().size();
+            int removed = change.movedRule == null ? last : change.movedRule.index;
+
+            for (int i = 0; i < itemSets.size(); i++) {
+                LRItemSet kernel = itemSets.get(i).renumber(removed, last, removed);
+                if (i == 0 && kernel.isEmpty() && grammar.getProductionsOf(grammar.getStartingSymbol()) != null) {
+                    // The starting rule itself was removed; start from the next one
+                    ProductionRule start = grammar.getProductionsOf(grammar.getStartingSymbol()).get(0);
+                    kernel = LRItemSet.of(new long[] {LRItemSet.pack(start.index, 0)}, 1);
+                }
+
+                // closureRules are still numbered the old way here, so bit [removed] is still the removed rule
+                if (itemSets.get(i).containsRule(removed) || closureContainsRule(kernel, removed)) {
+                    changedItemSets.set(i);
+                }
+                setItemSet(i, kernel);
+            }
+
+            computeClosureRules();
+            indexKernels();
+        }
+
+        // ReduceWithAndAccept() rows have an entry for every grammar symbol
+        List<AlphabetCharacter> oldGrammarSymbols = allGrammarSymbols;
+        allGrammarSymbols = allGrammarSymbols();
+        boolean grammarSymbolsChanged = !oldGrammarSymbols.equals(allGrammarSymbols);
+
+        for (int i = 0; i < itemSets.size(); i++) {
+            boolean followChanged = false;
+            LRItemSet itemSet = closure(itemSets.get(i));
+
+            for (int k = 0; k < itemSet.size(); k++) {
+                ProductionRule p = grammar.getProductionRule(LRItemSet.ruleOf(itemSet.get(k)));
+                boolean atEnd = LRItemSet.progressMarkerOf(itemSet.get(k)) == p.rhs.size();
+
+                if (grammarSymbolsChanged && p.lhs == grammar.getStartingSymbol() && atEnd) {
+                    followChanged = true;
+                }
+
+                if ((atEnd || p.isLambdaProduction()) && change.followSetsChanged.get(p.lhs.id)) {
+                    followChanged = true;
+                }
+
+                // Reduce/reduce conflicts go to the earliest rule, so one that's been renumbered may now win or lose
+                if ((atEnd || p.isLambdaProduction()) && p == change.movedRule) {
+                    followChanged = true;
+                }
+            }
+
+            if (changedItemSets.get(i) || followChanged) {
+                rowsToRebuild.set(i);
+            }
+        }
+
+        // Re-expand the affected item sets (their closures have changed), and explore anything new they lead to
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int i = changedItemSets.nextSetBit(0); i >= 0; i = changedItemSets.nextSetBit(i + 1)) {
+            if (itemSets.get(i).isEmpty()) {
+                transitions.set(i, new HashMap<>());
+            } else {
+                worklist.add(i);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            expandState(worklist.poll(), worklist, rowsToRebuild);
+        }
+
+        for (int i = rowsToRebuild.nextSetBit(0); i >= 0; i = rowsToRebuild.nextSetBit(i + 1)) {
+            if (itemSets.get(i).isEmpty()) {
                 slrActionTable.put(i, new HashMap<>());
+            } else {
+                constructSLRActionRow(i);
             }
+        }
 
-            // Case #1: GoTo()s
-            for (AlphabetCharacter x : allGrammarSymbols) {
-                // if this character is "up next"
-                for (SLRItem item : itemSetsOfG.get(i)) {
-                    if (item.elementAfterProgressMarker() != null && item.elementAfterProgressMarker().equals(x)) {
-                        // generate GoTo item set and index
-                        Set<SLRItem> goToSet = gotoItem(itemSetsOfG.get(i), x);
-                        int goToIndex = itemSetsOfG.indexOf(goToSet);
+        // The views cache their closures, which may have changed even where the kernel didn't
+        for (int i = 0; i < itemSets.size(); i++) {
+            setItemSet(i, itemSets.get(i));
+        }
+        renumberReachableStates();
+    }
 
-                        // create an SLRAction and put it in table
-                        SLRAction currentAction = SLRAction.createShiftAndGoTo(goToIndex, x);
-                        slrActionTable.get(i).put(x, currentAction);
-                    }
+    /**
+     * Drops the item sets that can't be reached from the starting one, and numbers the rest in the order
+     * setsOfItemsConstruction() would find them: breadth-first, with each item set's GoTo()s in symbol id order.
+     * A removal can leave two item sets with the same kernel; they're merged into the first one. Transitions and
+     * shifts are renumbered to match; nothing is recomputed.
+     */
+    private void renumberReachableStates() {
+        int stateCount = itemSets.size();
+
+        // state -> the first state with the same kernel
+        int[] first = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            Integer known = itemSets.get(i).isEmpty() ? null : kernelIndex.get(itemSets.get(i));
+            first[i] = known == null ? i : known;
+        }
+
+        int[] newIndex = new int[stateCount];
+        Arrays.fill(newIndex, -1);
+        int[] order = new int[stateCount];
+        int count = 0;
+
+        if (stateCount == 0 || itemSets.get(0).isEmpty()) {
+            return;
+        }
+
+        newIndex[0] = 0;
+        order[count++] = 0;
+        for (int head = 0; head < count; head++) {
+            List<AlphabetCharacter> out = new ArrayList<>(transitions.get(order[head]).keySet());
+            out.sort(Comparator.comparingInt(x -> x.id));
+            for (AlphabetCharacter x : out) {
+                int target = first[transitions.get(order[head]).get(x)];
+                if (newIndex[target] < 0) {
+                    newIndex[target] = count;
+                    order[count++] = target;
                 }
             }
+        }
+
+        boolean unchanged = count == stateCount;
+        for (int i = 0; i < count && unchanged; i++) {
+            unchanged = order[i] == i;
+        }
+        if (unchanged) {
+            return;
+        }
+
+        for (int i = 0; i < stateCount; i++) {
+            newIndex[i] = newIndex[first[i]];
+        }
+
+        ArrayList<LRItemSet> oldItemSets = itemSets;
+        ArrayList<Map<AlphabetCharacter, Integer>> oldTransitions = transitions;
+        Map<Integer, Map<AlphabetCharacter, SLRAction>> oldActionTable = slrActionTable;
+        itemSets = new ArrayList<>(count);
+        canonicalItemSets = new ArrayList<>(count);
+        transitions = new ArrayList<>(count);
+        slrActionTable = new TreeMap<>();
+
+        for (int i = 0; i < count; i++) {
+            setItemSet(i, oldItemSets.get(order[i]));
+
+            Map<AlphabetCharacter, Integer> out = new HashMap<>();
+            for (Map.Entry<AlphabetCharacter, Integer> transition : oldTransitions.get(order[i]).entrySet()) {
+                out.put(transition.getKey(), newIndex[transition.getValue()]);
+            }
+            transitions.add(out);
 
-            // Case #2: ReduceWith()
-            for (SLRItem item : itemSetsOfG.get(i)) {
-                if (!(item.isProgressMarkerAtEnd() || item.isLambdaProduction())) {
-                    continue;
+            Map<AlphabetCharacter, SLRAction> row = new HashMap<>();
+            for (Map.Entry<AlphabetCharacter, SLRAction> cell : oldActionTable.get(order[i]).entrySet()) {
+                SLRAction action = cell.getValue();
+                if (action.action == SLRAction.SLRActionEnum.ShiftAndGoTo) {
+                    action = SLRAction.createShiftAndGoTo(newIndex[action.goToItemSet], action.column);
                 }
+                row.put(cell.getKey(), action);
+            }
+            slrActionTable.put(i, row);
+        }
+
+        indexKernels();
+    }
+
+    /**
+     * Maps the kernel of every item set to its (first) index in itemSets
+     */
+    private void indexKernels() {
+        kernelIndex = new ConcurrentHashMap<>();
+        for (int i = 0; i < itemSets.size(); i++) {
+            if (!itemSets.get(i).isEmpty()) {
+                kernelIndex.putIfAbsent(itemSets.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Given A → α•Bβ, returns B, or null if the progress marker is at the end
+     */
+    private AlphabetCharacter elementAfterProgressMarker(long item) {
+        return elementAfterProgressMarker(grammar, item);
+    }
+
+    static AlphabetCharacter elementAfterProgressMarker(CFG grammar, long item) {
+        ArrayList<AlphabetCharacter> rhs = grammar.getProductionRule(LRItemSet.ruleOf(item)).rhs;
+        int progressMarker = LRItemSet.progressMarkerOf(item);
+
+        return progressMarker < rhs.size() ? rhs.get(progressMarker) : null;
+    }
+
+    /**
+     * Packs an SLRItem of this grammar. The item's rule may be a copy of the grammar's.
+     */
+    private long pack(SLRItem item) {
+        long packed = packIfOfGrammar(item);
+        if (packed < 0) {
+            throw new IllegalArgumentException("Not a production rule of this grammar: " + item.productionRule);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Same as above, but -1 if the item's rule isn't one of this grammar's
+     */
+    private long packIfOfGrammar(SLRItem item) {
+        // Items this grammar handed out are already packed, unless their rule has moved since
+        int rule = LRItemSet.ruleOf(item.packed());
+        if (rule >= 0 && rule < grammar.getProductionRules().size()
+                && grammar.getProductionRule(rule) == item.productionRule) {
+            return item.packed();
+        }
+
+        rule = grammar.indexOf(item.productionRule);
+        return rule < 0 ? -1 : LRItemSet.pack(rule, item.getProgressMarker());
+    }
+
+    /**
+     * Every grammar symbol (N ∪ Σ ∪ {$}), in id order so the construction is deterministic
+     * @return see above
+     */
+    private List<AlphabetCharacter> allGrammarSymbols() {
+        List<AlphabetCharacter> result = new ArrayList<>(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) {
+            AlphabetCharacter x = symbols.get(id);
+
+            // The symbol table never forgets a symbol, even if it was only used in a rule that's since been removed
+            if (x.isEOF() || grammar.getNonTerminals().contains(x) || grammar.getTerminals().contains(x)) {
+                result.add(x);
+            }
+        }
 
-                // generate followset
-                Set<AlphabetCharacter> followSet = grammar.deriveFollowSetOfNonTerminal(item.getLHS(), new HashSet<>());
-                for (AlphabetCharacter f : followSet) {
-                    // create an SLRAction and put it in table
-                    SLRAction currentAction = SLRAction.createReduceWith(item.productionRule, f);
-                    slrActionTable.get(i).put(f, currentAction);
+        return result;
+    }
+
+    /**
+     * GoTo(I, X) for every X of one item set: X's id, the kernel, and its index if it was already known (-1 if not)
+     */
+    private static class GoTos {
+        final int[] symbols;
+        final LRItemSet[] kernels;
+        final int[] targets;
+
+        GoTos(int count) {
+            symbols = new int[count];
+            kernels = new LRItemSet[count];
+            targets = new int[count];
+        }
+    }
+
+    /**
+     * Runs something for every item set in a range, splitting the range up across a ForkJoinPool
+     */
+    private static class ForEachItemSet extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 16;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        ForEachItemSet(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
                 }
+                return;
             }
 
-            // Case 3: ReduceWithAndAccept()
-            for (SLRItem item : itemSetsOfG.get(i)) {
-                // Only 1 of the rules has to be S → π$• to accept on all
-                if (item.getLHS().equals(grammar.getStartingSymbol()) && item.isProgressMarkerAtEnd()) {
-                    for (AlphabetCharacter x : allGrammarSymbols) {
-                        slrActionTable.get(i).put(x, SLRAction.createReduceWithAndAccept(item.productionRule, x));
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEachItemSet(from, middle, body), new ForEachItemSet(middle, to, body));
+        }
+    }
+
+    /**
+     * The closure of a packed kernel, seen as a read-only Set of SLRItems. Equal to any other Set with the same items.
+     * The closure is only worked out if the view is actually used.
+     */
+    private class ItemSetView extends AbstractSet<SLRItem> {
+        private final LRItemSet kernel;
+        private LRItemSet items;
+
+        ItemSetView(LRItemSet kernel) {
+            this.kernel = kernel;
+        }
+
+        private LRItemSet items() {
+            if (items == null) {
+                items = closure(kernel);
+            }
+
+            return items;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof SLRItem)) {
+                return false;
+            }
+
+            long item = packIfOfGrammar((SLRItem) o);
+            return item >= 0 && items().contains(item);
+        }
+
+        @Override
+        public Iterator<SLRItem> iterator() {
+            return new Iterator<SLRItem>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < items().size();
+                }
+
+                @Override
+                public SLRItem next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
                     }
 
-                    break;
+                    long item = items().get(next++);
+                    return new SLRItem(grammar.getProductionRule(LRItemSet.ruleOf(item)), item);
                 }
-            }
+            };
+        }
+
+        @Override
+        public int size() {
+            return items().size();
         }
     }
 }
@@ -0,0 +1,171 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Parses token streams with an LR table (SLR, LALR or LR(1)): the standard shift-reduce loop, over an int[] stack of
+ * states that grows as needed. Builds the same ParseTreeNode trees LL1Parser does, so the two can be swapped.
+ *  <p>Nothing is allocated per shift or reduce except the tree nodes themselves. The parser holds no state between
+ *  calls, so one instance can be used from any number of threads.</p>
+ */
+public class ShiftReduceParser {
+    private static final int INITIAL_DEPTH = 64;
+
+    private final ShiftReduceTable table;
+    private final SymbolTable symbols;
+
+    /**
+     * Initializes this parser with the table of an LR parser generator
+     * @param generator - e.g. an SLRParser; its table is compressed (see LRTable)
+     */
+    public ShiftReduceParser(LRActionTable generator) throws Exception {
+        this(generator instanceof LRTable ? (LRTable) generator : LRTable.compress(generator));
+    }
+
+    /**
+     * Initializes this parser with a compressed table
+     * @param table - the table
+     */
+    public ShiftReduceParser(LRTable table) {
+        this((ShiftReduceTable) table);
+    }
+
+    /**
+     * Initializes this parser with any table, e.g. a LazySLRTable
+     * @param table - the table
+     */
+    public ShiftReduceParser(ShiftReduceTable table) {
+        this.table = table;
+        this.symbols = table.getGrammar().getSymbolTable();
+    }
+
+    /**
+     * Parses a stream of tokens. The stream should end with $, like LL1Parser's; if it runs out, $ is assumed.
+     * @param tokenStream - the stream of tokens; they're removed as they're shifted
+     * @return the root of the parse tree, the starting symbol. A lambda production is a node without children.
+     */
+    public ParseTreeNode parse(Queue<AlphabetCharacter> tokenStream) throws LRParseException {
+        try {
+            return parse(new QueueTokenSource(tokenStream, symbols));
+        } catch (IOException e) {
+            // A queue doesn't do I/O
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Same as above, pulling the tokens from a TokenSource
+     * @param tokens - where the tokens come from, e.g. a MappedTokenSource
+     * @return the root of the parse tree
+     */
+    public ParseTreeNode parse(TokenSource tokens) throws LRParseException, IOException {
+        int[] states = new int[INITIAL_DEPTH];
+        ParseTreeNode[] nodes = new ParseTreeNode[INITIAL_DEPTH];
+        int top = 0;
+
+        int lookahead = tokens.next();
+
+        while (true) {
+            int action = lookahead < 0 ? LRTable.ERROR : table.action(states[top], lookahead);
+
+            switch (LRTable.kindOf(action)) {
+                case LRTable.SHIFT:
+                    if (++top == states.length) {
+                        states = Arrays.copyOf(states, 2 * top);
+                        nodes = Arrays.copyOf(nodes, 2 * top);
+                    }
+                    states[top] = LRTable.argumentOf(action);
+                    nodes[top] = new ParseTreeNode(null, symbols.get(lookahead));
+
+                    lookahead = tokens.next();
+                    break;
+
+                case LRTable.REDUCE:
+                case LRTable.ACCEPT:
+                    int rule = LRTable.argumentOf(action);
+                    int length = table.lengthOf(rule);
+                    ParseTreeNode node = new ParseTreeNode(null, symbols.get(table.lhsOf(rule)));
+
+                    // Pop the RHS, and make it the children of the LHS
+                    for (int k = top - length + 1; k <= top; k++) {
+                        nodes[k].parent = node;
+                        node.addChild(nodes[k]);
+                        nodes[k] = null;
+                    }
+                    top -= length;
+
+                    if (LRTable.kindOf(action) == LRTable.ACCEPT) {
+                        return node;
+                    }
+
+                    if (++top == states.length) {
+                        states = Arrays.copyOf(states, 2 * top);
+                        nodes = Arrays.copyOf(nodes, 2 * top);
+                    }
+                    states[top] = table.goTo(states[top - 1], table.lhsOf(rule));
+                    nodes[top] = node;
+                    break;
+
+                default:
+                    throw new LRParseException(tokens.token(), states[top],
+                            expectedIn(states[top]));
+            }
+        }
+    }
+
+    /**
+     * Parses a .tok file: one token per line (anything after the first word on a line is ignored), followed by $.
+     * The file is memory-mapped and read as it's parsed (see MappedTokenSource).
+     * @param tokenFile - the file
+     * @return the root of the parse tree
+     */
+    public ParseTreeNode parse(Path tokenFile) throws Exception {
+        try (MappedTokenSource tokens = new MappedTokenSource(tokenFile, symbols)) {
+            return parse(tokens);
+        }
+    }
+
+    /**
+     * Reads a .tok file into a token stream, ending with $
+     * @param tokenFile - one token per line
+     * @return the tokens
+     */
+    public static Queue<AlphabetCharacter> readTokens(Path tokenFile) throws Exception {
+        Queue<AlphabetCharacter> result = new ArrayDeque<>();
+        try (BufferedReader in = Files.newBufferedReader(tokenFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+", 2);
+                if (!words[0].isEmpty()) {
+                    result.add(new AlphabetCharacter(words[0]));
+                }
+            }
+        }
+
+        result.add(new AlphabetCharacter("$"));
+        return result;
+    }
+
+    /**
+     * The terminals a state has an action for, for error messages
+     */
+    private List<AlphabetCharacter> expectedIn(int state) {
+        List<AlphabetCharacter> result = new ArrayList<>();
+        for (int id = 0; id < symbols.size(); id++) {
+            AlphabetCharacter x = symbols.get(id);
+            if ((x.isTerminal() || x.isEOF()) && LRTable.kindOf(table.action(state, id)) != LRTable.ERROR) {
+                result.add(x);
+            }
+        }
+
+        return result;
+    }
+}
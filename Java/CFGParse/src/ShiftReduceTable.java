@@ -0,0 +1,39 @@
+/**
+ * What ShiftReduceParser needs from a table: encoded actions (see LRTable.encode()) and GoTo()s by id. Implemented by
+ * LRTable, which is built up front, and LazySLRTable, which builds states as parses reach them.
+ */
+public interface ShiftReduceTable {
+    /**
+     * The grammar the table was built for
+     * @return the CFG
+     */
+    CFG getGrammar();
+
+    /**
+     * What to do in a state on a terminal (or $)
+     * @param state - the state
+     * @param terminal - the terminal's id
+     * @return the encoded action; see LRTable.kindOf() and LRTable.argumentOf()
+     */
+    int action(int state, int terminal);
+
+    /**
+     * The state to go to after reducing to a non-terminal
+     * @param state - the state uncovered by the reduction
+     * @param nonTerminal - the non-terminal's id
+     * @return the state, or -1 if there's none
+     */
+    int goTo(int state, int nonTerminal);
+
+    /**
+     * @param rule - a rule's index
+     * @return the id of its LHS
+     */
+    int lhsOf(int rule);
+
+    /**
+     * @param rule - a rule's index
+     * @return how many symbols a reduction with it pops (0 for a lambda production)
+     */
+    int lengthOf(int rule);
+}
@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns every grammar symbol of a CFG exactly once and hands out a dense int id for it.
+ *  <p>The kind of every symbol (terminal, non-terminal, λ or $) is worked out once, when it's interned, so the hot
+ *  paths (table construction, parsing) can classify and compare symbols with an array lookup instead of
+ *  hashing / lowercasing its label.</p>
+ *  <p>Labels are found through an open-addressing table keyed by the label's String hash, so a symbol can be looked
+ *  up straight from a char[] (e.g. the grammar reader's line buffer) without building a String first.</p>
+ */
+public class SymbolTable {
+    public static final byte TERMINAL = 0;
+    public static final byte NON_TERMINAL = 1;
+    public static final byte LAMBDA = 2;
+    public static final byte EOF = 3;
+
+    // λ and $ are always interned first, so their ids are fixed for every grammar
+    public static final int LAMBDA_ID = 0;
+    public static final int EOF_ID = 1;
+
+    private final List<AlphabetCharacter> byId = new ArrayList<>();
+    private byte[] kinds = new byte[16];
+
+    // Open addressing: slot -> id + 1 (0 = empty). Always at most half full.
+    private int[] slots = new int[64];
+
+    public SymbolTable() {
+        intern("lambda");
+        intern("$");
+    }
+
+    /**
+     * Returns the canonical AlphabetCharacter for label, creating (and numbering) it if this is the first time we've
+     * seen it.
+     * @param label - the symbol, e.g. "E" or "plus"
+     * @return the interned symbol
+     */
+    public AlphabetCharacter intern(String label) {
+        String trimmed = label.trim();
+        int id = find(trimmed, trimmed.hashCode());
+        if (id >= 0) {
+            return byId.get(id);
+        }
+
+        return add(new AlphabetCharacter(trimmed));
+    }
+
+    /**
+     * Same as above, for the label in chars[start..end). Surrounding whitespace is ignored, like AlphabetCharacter
+     * does. Only builds a String if the symbol is new.
+     * @param chars - a buffer
+     * @param start - first char of the label
+     * @param end - one past the last char of the label
+     * @return the interned symbol
+     */
+    public AlphabetCharacter intern(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        int id = find(chars, start, end);
+        if (id >= 0) {
+            return byId.get(id);
+        }
+
+        return add(new AlphabetCharacter(new String(chars, start, end - start)));
+    }
+
+    /**
+     * Returns the canonical version of c (which may have been built outside of this table, e.g. in a unit test)
+     * @param c - the symbol
+     * @return the interned symbol
+     */
+    public AlphabetCharacter intern(AlphabetCharacter c) {
+        if (isInterned(c)) {
+            return c;
+        }
+
+        return intern(c.label);
+    }
+
+    /**
+     * Returns the id of c, or -1 if this table has never seen it. Doesn't intern anything.
+     * @param c - the symbol
+     * @return its id
+     */
+    public int idOf(AlphabetCharacter c) {
+        if (c == null) {
+            return -1;
+        }
+
+        if (isInterned(c)) {
+            return c.id;
+        }
+
+        return find(c.label, c.hashCode());
+    }
+
+    /**
+     * Returns the id of label, or -1 if this table has never seen it. Doesn't intern anything.
+     * @param label - the symbol's label
+     * @return its id
+     */
+    public int idOf(String label) {
+        String trimmed = label.trim();
+        return find(trimmed, trimmed.hashCode());
+    }
+
+    /**
+     * Same as above, for the label in chars[start..end), so callers reading from a buffer don't need a String.
+     * Surrounding whitespace is ignored. Doesn't intern anything.
+     * @param chars - a buffer
+     * @param start - first char of the label
+     * @param end - one past the last char of the label
+     * @return its id
+     */
+    public int idOf(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        return find(chars, start, end);
+    }
+
+    /**
+     * Returns the symbol with the given id
+     * @param id - the id
+     * @return the symbol
+     */
+    public AlphabetCharacter get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * The number of symbols interned so far (λ and $ included)
+     * @return see above
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    public byte kindOf(int id) {
+        return kinds[id];
+    }
+
+    public boolean isTerminal(int id) {
+        return kinds[id] == TERMINAL;
+    }
+
+    public boolean isNonTerminal(int id) {
+        return kinds[id] == NON_TERMINAL;
+    }
+
+    public boolean isLambda(int id) {
+        return id == LAMBDA_ID;
+    }
+
+    public boolean isEOF(int id) {
+        return id == EOF_ID;
+    }
+
+    private boolean isInterned(AlphabetCharacter c) {
+        return c.id >= 0 && c.id < byId.size() && byId.get(c.id) == c;
+    }
+
+    private AlphabetCharacter add(AlphabetCharacter c) {
+        c.id = byId.size();
+        byId.add(c);
+
+        if (c.id == kinds.length) {
+            kinds = Arrays.copyOf(kinds, kinds.length * 2);
+        }
+        kinds[c.id] = c.kind;
+
+        if (byId.size() * 2 > slots.length) {
+            rehash();
+        } else {
+            insert(c);
+        }
+
+        return c;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        for (AlphabetCharacter c : byId) {
+            insert(c);
+        }
+    }
+
+    private void insert(AlphabetCharacter c) {
+        int mask = slots.length - 1;
+        int slot = mix(c.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        slots[slot] = c.id + 1;
+    }
+
+    private int find(String label, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            AlphabetCharacter candidate = byId.get(slots[slot] - 1);
+            if (candidate.hashCode() == hash && candidate.label.equals(label)) {
+                return candidate.id;
+            }
+        }
+
+        return -1;
+    }
+
+    private int find(char[] chars, int start, int end) {
+        // Same as String.hashCode(), which is what AlphabetCharacter.hashCode() returns
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            AlphabetCharacter candidate = byId.get(slots[slot] - 1);
+            if (candidate.hashCode() == hash && regionMatches(candidate.label, chars, start, end)) {
+                return candidate.id;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean regionMatches(String label, char[] chars, int start, int end) {
+        if (label.length() != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a String hash, which are poor in the low bits for short labels
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
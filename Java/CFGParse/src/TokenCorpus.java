@@ -0,0 +1,293 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Many token streams, stored as varint symbol ids in one binary file, so regression and benchmark runs read them
+ * without decoding any text. Made from .tok files with write(), and read with open(), which maps the whole file up
+ * front; stream() then hands out TokenSources that decode straight from the mapping.
+ *  <p>The file is: "TOKC", a version int, the streams (every token an unsigned LEB128 varint, without the closing $),
+ *  then the footer: the dictionary (a count and every id's label, as writeUTF), the stream count and a long offset
+ *  per stream plus one for the end of the last, and finally the offset of the footer as a long. The dictionary starts
+ *  with the symbols of the grammar it was made for, in id order, so a corpus read with the same grammar needs no
+ *  translating; tokens the grammar didn't know get ids after those.</p>
+ *  <p>A TokenCorpus can be shared by any number of threads; each stream() is for one parse.</p>
+ */
+public class TokenCorpus implements AutoCloseable {
+    private static final int MAGIC = 0x544F4B43;
+    private static final int VERSION = 1;
+
+    // Where the streams start, after the magic number and the version
+    private static final long DATA_START = 8;
+
+    // A MappedByteBuffer is indexed by int, so bigger files are mapped in pieces of this size
+    private static final long CHUNK = 1L << 30;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] chunks;
+    private final int chunkShift;
+    private final long chunkMask;
+
+    // Corpus id -> label, and -> id in the grammar's SymbolTable (-1 if the grammar doesn't have it)
+    private final String[] labels;
+    private final int[] toGrammar;
+    private final SymbolTable symbols;
+
+    // stream i is offsets[i] to offsets[i + 1]
+    private final long[] offsets;
+
+    private TokenCorpus(FileChannel channel, ByteBuffer[] chunks, int chunkShift, String[] labels, SymbolTable symbols,
+                        long[] offsets) {
+        this.channel = channel;
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.labels = labels;
+        this.symbols = symbols;
+        this.offsets = offsets;
+
+        toGrammar = new int[labels.length];
+        for (int id = 0; id < labels.length; id++) {
+            toGrammar[id] = symbols.idOf(labels[id]);
+        }
+    }
+
+    /**
+     * Converts .tok files into a corpus file
+     * @param corpusFile - the file to write
+     * @param symbols - the symbol table of the grammar the tokens are for
+     * @param tokenFiles - the .tok files, one stream each, in order
+     */
+    public static void write(Path corpusFile, SymbolTable symbols, List<Path> tokenFiles) throws IOException {
+        // The dictionary: the grammar's symbols with the same ids, then whatever else turns up
+        SymbolTable dictionary = new SymbolTable();
+        for (int id = dictionary.size(); id < symbols.size(); id++) {
+            dictionary.intern(symbols.get(id).toString());
+        }
+
+        long[] offsets = new long[tokenFiles.size() + 1];
+        // Counted above the buffer, since DataOutputStream.size() stops at 2 GB
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(corpusFile), 1 << 16));
+        try (DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            for (int i = 0; i < tokenFiles.size(); i++) {
+                offsets[i] = counter.count;
+                try (MappedTokenSource tokens = new MappedTokenSource(tokenFiles.get(i), dictionary)) {
+                    for (int id = tokens.next(); id != SymbolTable.EOF_ID; id = tokens.next()) {
+                        if (id < 0) {
+                            id = dictionary.intern(tokens.token().toString()).getId();
+                        }
+                        writeVarint(out, id);
+                    }
+                }
+            }
+            offsets[tokenFiles.size()] = counter.count;
+
+            long footer = counter.count;
+            out.writeInt(dictionary.size());
+            for (int id = 0; id < dictionary.size(); id++) {
+                out.writeUTF(dictionary.get(id).toString());
+            }
+            out.writeInt(tokenFiles.size());
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.writeLong(footer);
+        }
+    }
+
+    /**
+     * Writes an id as an unsigned LEB128 varint: 7 bits a byte, low bits first, the top bit set on all but the last
+     */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Opens a corpus file, for parsing with a grammar
+     * @param corpusFile - the file
+     * @param symbols - the symbol table of the grammar; needn't be the one the corpus was made with
+     * @return the corpus
+     */
+    public static TokenCorpus open(Path corpusFile, SymbolTable symbols) throws IOException {
+        return open(corpusFile, symbols, CHUNK);
+    }
+
+    /**
+     * Same as above, with a different chunk size (a power of 2; for tests)
+     */
+    static TokenCorpus open(Path corpusFile, SymbolTable symbols, long chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(corpusFile, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            if (size < DATA_START + 8 || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a token corpus: " + corpusFile);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported token corpus version " + header.getInt(4) + ": " + corpusFile);
+            }
+
+            // The footer: the dictionary and the offsets
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, size - 8);
+            long footer = trailer.getLong(0);
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(footer))));
+            String[] labels = new String[in.readInt()];
+            for (int id = 0; id < labels.length; id++) {
+                labels[id] = in.readUTF();
+            }
+            long[] offsets = new long[in.readInt() + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+
+            // Map the streams, all of them now
+            long dataEnd = offsets[offsets.length - 1];
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((dataEnd + chunkSize - 1) / chunkSize)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = c * chunkSize;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, dataEnd - start));
+            }
+
+            return new TokenCorpus(channel, chunks, Long.numberOfTrailingZeros(chunkSize), labels, symbols, offsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of streams
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param i - a stream
+     * @return how many bytes it takes up in the file
+     */
+    public long byteSizeOf(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * The tokens of a stream, for a parse. Decodes them from the mapping as they're pulled; nothing is copied.
+     * @param i - the stream, 0 to size() - 1
+     * @return its tokens, ending with $
+     */
+    public TokenSource stream(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("No stream " + i + " in a corpus of " + size());
+        }
+
+        return new Slice(offsets[i], offsets[i + 1]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int byteAt(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].get((int) (offset & chunkMask)) & 0xFF;
+    }
+
+    /**
+     * One stream of the corpus
+     */
+    private class Slice implements TokenSource {
+        private long position;
+        private final long end;
+
+        // The corpus id of the last token, or -1 once the stream is done
+        private int id;
+
+        Slice(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int next() {
+            if (position >= end) {
+                id = -1;
+                return SymbolTable.EOF_ID;
+            }
+
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = byteAt(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            id = value;
+            return toGrammar[value];
+        }
+
+        @Override
+        public AlphabetCharacter token() {
+            if (id < 0) {
+                return symbols.get(SymbolTable.EOF_ID);
+            }
+
+            return toGrammar[id] >= 0 ? symbols.get(toGrammar[id]) : new AlphabetCharacter(labels[id]);
+        }
+    }
+
+    /**
+     * Counts the bytes written through it
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
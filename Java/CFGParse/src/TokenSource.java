@@ -0,0 +1,25 @@
+import java.io.IOException;
+
+/**
+ * A stream of tokens that a parser pulls from one at a time, as ids in the grammar's SymbolTable, so the input never
+ * has to be read into memory as a whole.
+ *  <p>See MappedTokenSource for .tok files and QueueTokenSource for a Queue of AlphabetCharacters.</p>
+ */
+public interface TokenSource extends AutoCloseable {
+    /**
+     * Moves on to the next token
+     * @return its id; SymbolTable.EOF_ID once the input has run out (and on every call after that), or -1 if the
+     * token isn't a symbol of the grammar
+     */
+    int next() throws IOException;
+
+    /**
+     * The token the last call to next() returned, for error messages
+     * @return the grammar's symbol for it, or a new AlphabetCharacter if the grammar doesn't have one
+     */
+    AlphabetCharacter token();
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchParserTest {
+
+    /**
+     * Writes 30 .tok files, every third of them invalid, into a new directory
+     */
+    private static Path directory() throws Exception {
+        Path directory = Files.createTempDirectory("batch");
+        directory.toFile().deleteOnExit();
+        for (int i = 0; i < 30; i++) {
+            Path file = directory.resolve("input" + i + ".tok");
+            file.toFile().deleteOnExit();
+            String contents = i % 3 == 2 ? "a\nq\n" : "a\n" + "b\n".repeat(i) + "d\nc\n";
+            Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return directory;
+    }
+
+    /**
+     * Tests a batch with the LL(1) parser and with a shift-reduce parser
+     * @throws Exception
+     */
+    @Test
+    void testParseAll() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        Path directory = directory();
+        ExecutorService pool = new ForkJoinPool(4);
+
+        try {
+            BatchParser ll1 = new BatchParser(new LL1Parser(cfg.generateParsingTable()), cfg, pool, 3);
+            BatchParser shiftReduce = new BatchParser(new ShiftReduceParser(new LALRParser(cfg)), cfg, pool, 8);
+
+            for (BatchParser batchParser : List.of(ll1, shiftReduce)) {
+                Map<String, BatchParser.Result> results = new HashMap<>();
+                int failures;
+                try (Stream<Path> files = BatchParser.tokenFiles(directory)) {
+                    failures = batchParser.parseAll(files.iterator(), result -> results.put(result.file.getFileName().toString(), result));
+                }
+
+                assertEquals(10, failures);
+                assertEquals(30, results.size());
+                for (int i = 0; i < 30; i++) {
+                    BatchParser.Result result = results.get("input" + i + ".tok");
+                    if (i % 3 == 2) {
+                        assertFalse(result.succeeded());
+                        assertEquals(-1, result.nodes);
+                    } else {
+                        // S, A, a, a b and a B per b, the last B, C, d, C, c and $
+                        assertTrue(result.succeeded(), result.toString());
+                        assertEquals(9 + 2 * i, result.nodes);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that no more than maxInFlight files are taken from the iterator before their results are handed back
+     * @throws Exception
+     */
+    @Test
+    void testBoundedInFlight() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        Path directory = directory();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            BatchParser batchParser = new BatchParser(new LL1Parser(cfg.generateParsingTable()), cfg, pool, 5);
+            List<Path> files;
+            try (Stream<Path> stream = BatchParser.tokenFiles(directory)) {
+                files = stream.collect(java.util.stream.Collectors.toList());
+            }
+
+            int[] taken = new int[1];
+            int[] maxOutstanding = new int[1];
+            List<BatchParser.Result> results = new ArrayList<>();
+            batchParser.parseAll(files.stream().peek(file -> {
+                taken[0]++;
+                maxOutstanding[0] = Math.max(maxOutstanding[0], taken[0] - results.size());
+            }).iterator(), results::add);
+
+            assertEquals(30, results.size());
+            assertTrue(maxOutstanding[0] <= 5, "outstanding: " + maxOutstanding[0]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,8 +1,16 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -152,6 +160,140 @@ class CFGTest {
         }
     }
 
+    /**
+     * Removes and re-adds a rule, checking the incrementally updated sets against the ones computed from scratch
+     * @throws Exception
+     */
+    @Test
+    void testIncrementalEditing() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        CFG original = new CFG("fisher-5-2-predict-set-example.cfg");
+        AlphabetCharacter Q = new AlphabetCharacter("Q");
+        ProductionRule qToLambda = cfg.getProductionsOf(Q).get(1);
+        AlphabetCharacter c = new AlphabetCharacter("c");
+        LL1ParsingTable table = cfg.generateParsingTable();
+
+        // Without Q -> lambda, neither Q nor A (A -> B Q) derive to lambda
+        GrammarChange change = cfg.removeProductionRule(qToLambda);
+        assertEquals("{B, C}", createStringFromSet(cfg.getDerivesToLambdaSet()));
+        assertEquals("{a, b, q}", createStringFromSet(cfg.firstSetOf(new AlphabetCharacter("S"))));
+        assertEquals("{c, d, q}", createStringFromSet(cfg.deriveFollowSetOfNonTerminal(new AlphabetCharacter("B"), new HashSet<>())));
+        assertTrue(change.affectedNonTerminals.get(cfg.getSymbolTable().idOf(Q)));
+
+        // Patching makes a new table, and leaves the old one as it was for whoever's still using it
+        LL1ParsingTable patched = cfg.patchParsingTable(table, change);
+        assertNull(patched.getProductionRuleOf(Q, c));
+        assertEquals(qToLambda, table.getProductionRuleOf(Q, c));
+
+        // Putting it back gets us the original grammar again
+        change = cfg.addProductionRule(Q, new ArrayList<>());
+        assertEquals(createStringFromSet(original.getDerivesToLambdaSet()), createStringFromSet(cfg.getDerivesToLambdaSet()));
+        for (AlphabetCharacter l : original.getNonTerminals()) {
+            assertEquals(createStringFromSet(original.firstSetOf(l)), createStringFromSet(cfg.firstSetOf(l)));
+            assertEquals(createStringFromSet(original.deriveFollowSetOfNonTerminal(l, new HashSet<>())),
+                    createStringFromSet(cfg.deriveFollowSetOfNonTerminal(l, new HashSet<>())));
+        }
+        assertTrue(change.added);
+    }
+
+    /**
+     * Makes random edits to a grammar, patching its LL(1) table and SLR and LALR item sets and action tables after
+     * each one, and checks them against the ones built from scratch for the edited grammar
+     * @throws Exception
+     */
+    @Test
+    void testPatchedTablesMatchRebuiltTables() throws Exception {
+        Random random = new Random(3);
+
+        for (int run = 0; run < 300; run++) {
+            CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+            LL1ParsingTable ll1Table = cfg.generateParsingTable();
+            SLRParser slrParser = new SLRParser(cfg);
+            LALRParser lalrParser = new LALRParser(cfg);
+
+            for (int edit = 0; edit < 8; edit++) {
+                GrammarChange change = randomEdit(cfg, random);
+                String where = "run " + run + ", edit " + edit + ": " + change.rule + "\n" + cfg;
+
+                if (ll1Table != null) {
+                    try {
+                        ll1Table = cfg.patchParsingTable(ll1Table, change);
+                    } catch (Exception e) {
+                        // Not LL(1) anymore
+                        ll1Table = null;
+                    }
+                }
+                LL1ParsingTable rebuiltLL1Table;
+                try {
+                    rebuiltLL1Table = cfg.generateParsingTable();
+                } catch (Exception e) {
+                    rebuiltLL1Table = null;
+                }
+                if (ll1Table != null && rebuiltLL1Table != null) {
+                    for (int row = 0; row < cfg.getSymbolTable().size(); row++) {
+                        for (int column = 0; column < cfg.getSymbolTable().size(); column++) {
+                            assertEquals(rebuiltLL1Table.getProductionRuleOf(row, column),
+                                    ll1Table.getProductionRuleOf(row, column), where);
+                        }
+                    }
+                }
+
+                slrParser.applyGrammarChange(change);
+                SLRParser rebuiltSLRParser = new SLRParser(cfg);
+                assertEquals(rebuiltSLRParser.canonicalItemSets, slrParser.canonicalItemSets, where);
+                assertEquals(rebuiltSLRParser.slrActionTable, slrParser.slrActionTable, where);
+
+                lalrParser.applyGrammarChange(change);
+                LALRParser rebuiltLALRParser = new LALRParser(cfg);
+                assertEquals(rebuiltLALRParser.canonicalItemSets, lalrParser.canonicalItemSets, where);
+                assertEquals(rebuiltLALRParser.slrActionTable, lalrParser.slrActionTable, where);
+            }
+        }
+    }
+
+    /**
+     * Adds a random rule for A, B, C or Q, or removes one of theirs
+     */
+    private static GrammarChange randomEdit(CFG cfg, Random random) throws Exception {
+        String[] nonTerminals = {"A", "B", "C", "Q"};
+        String[] terminals = {"a", "b", "c", "d", "q"};
+
+        List<ProductionRule> removable = new ArrayList<>();
+        for (ProductionRule p : cfg.getProductionRules()) {
+            if (p.lhs != cfg.getStartingSymbol()) {
+                removable.add(p);
+            }
+        }
+        if (!removable.isEmpty() && random.nextBoolean()) {
+            return cfg.removeProductionRule(removable.get(random.nextInt(removable.size())));
+        }
+
+        List<AlphabetCharacter> rhs = new ArrayList<>();
+        for (int length = random.nextInt(4); rhs.size() < length; ) {
+            String[] from = random.nextBoolean() ? nonTerminals : terminals;
+            rhs.add(new AlphabetCharacter(from[random.nextInt(from.length)]));
+        }
+
+        return cfg.addProductionRule(new AlphabetCharacter(nonTerminals[random.nextInt(nonTerminals.length)]), rhs);
+    }
+
+    /**
+     * A grammar read from a stream (with Windows line endings) should be the same as the one read from the file
+     * @throws Exception
+     */
+    @Test
+    void testStreamingLoad() throws Exception {
+        CFG fromFile = new CFG("fisher-5-2-predict-set-example.cfg");
+        String text = new String(Files.readAllBytes(Paths.get("fisher-5-2-predict-set-example.cfg")), StandardCharsets.UTF_8);
+
+        CFG fromReader = new CFG(new StringReader(text.replace("\n", "\r\n")));
+        CFG fromStream = new CFG(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(fromFile.toString(), fromReader.toString());
+        assertEquals(fromFile.toString(), fromStream.toString());
+
+        assertThrows(Exception.class, () -> new CFG(new StringReader("S -> a $\nnot a rule\n")));
+    }
+
     @Test
     void testParseTable() throws Exception {
         CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
@@ -164,6 +306,40 @@ class CFGTest {
         B    6 7 7 7 7
         Q      9   8 9
          */
-        // TODO: Complete this unit test
+        String[] nonTerminals = {"S", "A", "C", "B", "Q"};
+        String[] terminals = {"a", "b", "c", "d", "q", "$"};
+        int[][] expected = {
+                {1, 1, 1, 0, 1, 1},
+                {4, 5, 5, 0, 5, 5},
+                {0, 0, 2, 3, 0, 3},
+                {0, 6, 7, 7, 7, 7},
+                {0, 0, 9, 0, 8, 9},
+        };
+
+        SymbolTable symbols = cfg.getSymbolTable();
+        for (int row = 0; row < nonTerminals.length; row++) {
+            for (int column = 0; column < terminals.length; column++) {
+                int A = symbols.idOf(new AlphabetCharacter(nonTerminals[row]));
+                int t = symbols.idOf(new AlphabetCharacter(terminals[column]));
+
+                // Rules are numbered from 1 above, and from 0 in the grammar
+                assertEquals(expected[row][column] - 1, actual.predict(A, t), nonTerminals[row] + ", " + terminals[column]);
+                assertEquals(actual.predict(A, t), actual.predictAt(actual.rowOf(A), actual.columnOf(t)));
+            }
+        }
+
+        // A -> a B C d, flattened
+        int rule = actual.predict(symbols.idOf(new AlphabetCharacter("A")), symbols.idOf(new AlphabetCharacter("a")));
+        assertEquals(4, actual.rhsEnd(rule) - actual.rhsStart(rule));
+        assertEquals(symbols.idOf(new AlphabetCharacter("B")), actual.rhsSymbol(actual.rhsStart(rule) + 1));
+
+        // Two rules for A on a: a conflict, not just any failure
+        CFG notLL1 = new CFG(new StringReader("S -> A $\nA -> a\n   | a b\n"));
+        assertThrows(LL1ConflictException.class, notLL1::generateParsingTable);
+        assertNull(CompiledGrammar.build(notLL1).ll1Table);
+
+        // C -> lambda pushes nothing
+        rule = actual.predict(symbols.idOf(new AlphabetCharacter("C")), SymbolTable.EOF_ID);
+        assertEquals(actual.rhsStart(rule), actual.rhsEnd(rule));
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrammarCacheTest {
+    /**
+     * A grammar read back from the cache should be indistinguishable from one built from scratch
+     * @throws Exception
+     */
+    @Test
+    void testRoundTrip() throws Exception {
+        Path directory = Files.createTempDirectory("cfgc");
+        Path grammarFile = Paths.get("fisher-5-2-predict-set-example.cfg");
+        GrammarCache cache = new GrammarCache(directory);
+
+        CompiledGrammar built = cache.load(grammarFile);
+        Path cacheFile = cache.cacheFileFor(grammarFile, GrammarCache.hashOf(Files.readAllBytes(grammarFile)));
+        assertTrue(Files.isRegularFile(cacheFile));
+
+        CompiledGrammar cached = CompiledGrammar.read(cacheFile, GrammarCache.hashOf(Files.readAllBytes(grammarFile)));
+        assertNotNull(cached);
+        assertEquals(built.grammar.toString(), cached.grammar.toString());
+        assertEquals(built.grammar.getDerivesToLambdaSet(), cached.grammar.getDerivesToLambdaSet());
+        for (AlphabetCharacter A : built.grammar.getNonTerminals()) {
+            assertEquals(built.grammar.firstSetOf(A), cached.grammar.firstSetOf(A));
+            assertEquals(built.grammar.getAnalysis().getFollowSet(A.id), cached.grammar.getAnalysis().getFollowSet(A.id));
+
+            for (AlphabetCharacter t : built.grammar.getTerminals()) {
+                assertEquals(built.ll1Table.getProductionRuleOf(A, t), cached.ll1Table.getProductionRuleOf(A, t));
+            }
+        }
+        assertEquals(built.getSLRParser().canonicalItemSets, cached.getSLRParser().canonicalItemSets);
+        assertEquals(built.getSLRParser().slrActionTable, cached.getSLRParser().slrActionTable);
+        assertEquals(built.lrTable.getActionTable(), cached.lrTable.getActionTable());
+
+        // The LL(1) table's flattened RHSs were stored too
+        for (ProductionRule p : built.grammar.getProductionRules()) {
+            if (built.ll1Table.getRule(p.index) != null) {
+                assertEquals(built.ll1Table.rhsEnd(p.index) - built.ll1Table.rhsStart(p.index),
+                        cached.ll1Table.rhsEnd(p.index) - cached.ll1Table.rhsStart(p.index));
+                for (int k = built.ll1Table.rhsStart(p.index); k < built.ll1Table.rhsEnd(p.index); k++) {
+                    assertEquals(built.ll1Table.rhsSymbol(k), cached.ll1Table.rhsSymbol(k));
+                }
+            }
+        }
+
+        // A different grammar (i.e. hash) never gets this entry
+        assertNull(CompiledGrammar.read(cacheFile, GrammarCache.hashOf(new byte[0])));
+
+        Files.delete(cacheFile);
+        Files.delete(directory);
+    }
+
+    /**
+     * A truncated or corrupt file is caught by read(), where GrammarCache can fall back to rebuilding it, and not by
+     * the first getSLRParser() or parse that uses it
+     * @throws Exception
+     */
+    @Test
+    void testCorruptFilesFailOnRead() throws Exception {
+        CompiledGrammar built = CompiledGrammar.build(new CFG("fisher-5-2-predict-set-example.cfg"));
+        byte[] hash = {1, 2, 3};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        built.write(out, hash);
+        byte[] file = out.toByteArray();
+
+        for (int length = 0; length < file.length; length += 7) {
+            byte[] truncated = Arrays.copyOf(file, length);
+            try {
+                assertNull(CompiledGrammar.read(ByteBuffer.wrap(truncated), hash));
+            } catch (Exception e) {
+                // Found on read, as it should be
+            }
+        }
+
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupt = file.clone();
+            int at = random.nextInt(corrupt.length / 4) * 4;
+            ByteBuffer.wrap(corrupt).putInt(at, random.nextBoolean() ? random.nextInt() : random.nextInt(64));
+
+            CompiledGrammar read;
+            try {
+                read = CompiledGrammar.read(ByteBuffer.wrap(corrupt), hash);
+            } catch (Exception e) {
+                continue;
+            }
+            if (read == null) {
+                continue;
+            }
+
+            // Whatever got past read() has to be usable
+            read.getSLRParser();
+            int symbolCount = read.grammar.getSymbolTable().size();
+            for (int state = 0; state < read.lrTable.getStateCount(); state++) {
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    read.lrTable.action(state, symbol);
+                    read.lrTable.goTo(state, symbol);
+                }
+            }
+        }
+    }
+}
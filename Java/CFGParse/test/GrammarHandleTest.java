@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrammarHandleTest {
+    private static final String PLUS = "START -> E $\nE -> plus E E\n  | num\n";
+    private static final String PLUS_MINUS = "START -> E $\nE -> plus E E\n  | minus E E\n  | num\n";
+
+    private static boolean parses(GrammarHandle.Snapshot snapshot, String text) {
+        try {
+            snapshot.ll1Parser.LLTabularParsing(TestUtil.tokens(text.split(" ")), snapshot.grammar.getStartingSymbol());
+            snapshot.shiftReduceParser.parse(TestUtil.tokens(text.split(" ")));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Path grammarFile(String text) throws Exception {
+        Path file = Files.createTempFile("handle", ".cfg");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    @Test
+    void testReload() throws Exception {
+        Path file = grammarFile(PLUS);
+        GrammarHandle handle = new GrammarHandle(file, null);
+        GrammarHandle.Snapshot first = handle.current();
+        assertEquals(1, first.version);
+        assertFalse(parses(first, "minus num num $"));
+
+        Files.writeString(file, PLUS_MINUS);
+        GrammarHandle.Snapshot second = handle.reload();
+        assertEquals(2, handle.getVersion());
+        assertSame(second, handle.current());
+        assertTrue(parses(second, "minus num num $"));
+        assertEquals(1, handle.getReloadCount());
+
+        // The old version is left as it was
+        assertFalse(parses(first, "minus num num $"));
+        assertTrue(parses(first, "plus num num $"));
+    }
+
+    /**
+     * Tests that a parse that started on the old version still finishes on it, when the grammar's reloaded while
+     * it's waiting for its input
+     * @throws Exception
+     */
+    @Test
+    void testReloadMidParse() throws Exception {
+        Path file = grammarFile(PLUS);
+        GrammarHandle handle = new GrammarHandle(file, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+
+        // Hands out its first token, then waits for the reload before the rest
+        GrammarHandle.Snapshot first = handle.current();
+        TokenSource blocking = new TokenSource() {
+            private final TokenSource tokens = new QueueTokenSource(TestUtil.tokens("plus", "num", "num", "$"),
+                    first.grammar.getSymbolTable());
+
+            @Override
+            public int next() throws IOException {
+                if (started.getCount() == 0) {
+                    try {
+                        reloaded.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                started.countDown();
+                return tokens.next();
+            }
+
+            @Override
+            public AlphabetCharacter token() {
+                return tokens.token();
+            }
+        };
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ParseTreeNode> parse = pool.submit(() -> first.shiftReduceParser.parse(blocking));
+            assertTrue(started.await(20, TimeUnit.SECONDS));
+
+            Files.writeString(file, PLUS_MINUS);
+            handle.reload();
+            reloaded.countDown();
+
+            assertEquals(2, handle.getVersion());
+            assertEquals("START(E(plus E(num) E(num)) $)", TestUtil.toString(parse.get(20, TimeUnit.SECONDS)));
+            assertEquals(1, first.version);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailedReload() throws Exception {
+        Path file = grammarFile(PLUS);
+        GrammarHandle handle = new GrammarHandle(file, null);
+        GrammarHandle.Snapshot first = handle.current();
+
+        Files.writeString(file, "this is not a grammar\n");
+        assertThrows(Exception.class, handle::reload);
+        assertSame(first, handle.current());
+        assertEquals(1, handle.getVersion());
+        assertEquals(1, handle.getFailedReloadCount());
+        assertNotNull(handle.getLastError());
+    }
+
+    @Test
+    void testWatch() throws Exception {
+        Path file = grammarFile(PLUS);
+        try (GrammarHandle handle = new GrammarHandle(file, null)) {
+            handle.watch();
+            Files.writeString(file, PLUS_MINUS);
+
+            long deadline = System.currentTimeMillis() + 20000;
+            while (handle.getVersion() == 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(handle.getVersion() > 1);
+            assertTrue(parses(handle.current(), "minus num num $"));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrammarRegistryTest {
+    private static final Path FISHER = Paths.get("fisher-5-2-predict-set-example.cfg");
+    private static final Path RENAS = Paths.get("renasexample.cfg");
+    private static final Path POSTFIX = Paths.get("postfix-grammar.cfg");
+
+    /**
+     * The same grammar from two files is one entry, and nothing is built until it's asked for
+     * @throws Exception
+     */
+    @Test
+    void testDeduplication() throws Exception {
+        Path copy = Files.createTempFile("copy", ".cfg");
+        copy.toFile().deleteOnExit();
+        Files.copy(FISHER, copy, StandardCopyOption.REPLACE_EXISTING);
+
+        GrammarRegistry registry = new GrammarRegistry(null, Long.MAX_VALUE, 100);
+        String key = registry.register(FISHER);
+        assertEquals(key, registry.register(copy));
+        assertEquals(key, registry.register(Files.readAllBytes(FISHER)));
+        assertEquals(1, registry.size());
+        assertFalse(registry.isResident(key));
+        assertEquals(0, registry.getBuildCount());
+
+        CompiledGrammar compiled = registry.get(key);
+        assertSame(compiled, registry.load(copy));
+        assertTrue(registry.isResident(key));
+        assertEquals(1, registry.getBuildCount());
+        assertEquals(1, registry.getHitCount());
+        assertTrue(registry.getResidentBytes() > 0);
+    }
+
+    /**
+     * Many threads asking for the same grammar at once build it once, and all get that one
+     * @throws Exception
+     */
+    @Test
+    void testSingleBuild() throws Exception {
+        GrammarRegistry registry = new GrammarRegistry(null, Long.MAX_VALUE, 100);
+        String key = registry.register(RENAS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CompiledGrammar>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit(() -> registry.get(key)));
+            }
+
+            CompiledGrammar first = results.get(0).get();
+            for (Future<CompiledGrammar> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(1, registry.getBuildCount());
+    }
+
+    /**
+     * Over the budget, the least recently used grammars are dropped and built again when they're next needed
+     * @throws Exception
+     */
+    @Test
+    void testEviction() throws Exception {
+        GrammarRegistry registry = new GrammarRegistry(null, Long.MAX_VALUE, 2);
+        String fisher = registry.register(FISHER);
+        String renas = registry.register(RENAS);
+        String postfix = registry.register(POSTFIX);
+
+        CompiledGrammar fisherGrammar = registry.get(fisher);
+        registry.get(renas);
+        registry.get(fisher);
+        registry.get(postfix);
+
+        // renas was the least recently used
+        assertTrue(registry.isResident(fisher));
+        assertFalse(registry.isResident(renas));
+        assertTrue(registry.isResident(postfix));
+        assertEquals(1, registry.getEvictionCount());
+        assertSame(fisherGrammar, registry.get(fisher));
+
+        registry.get(renas);
+        assertEquals(4, registry.getBuildCount());
+        assertEquals(2, registry.getResidentCount());
+
+        // A byte budget smaller than any grammar keeps just the latest one
+        GrammarRegistry tiny = new GrammarRegistry(null, 1, 100);
+        tiny.load(FISHER);
+        tiny.load(RENAS);
+        assertEquals(1, tiny.getResidentCount());
+        assertTrue(tiny.isResident(tiny.register(RENAS)));
+    }
+
+    /**
+     * A grammar that doesn't build fails every get(), without being kept
+     * @throws Exception
+     */
+    @Test
+    void testFailedBuild() throws Exception {
+        GrammarRegistry registry = new GrammarRegistry(null, Long.MAX_VALUE, 100);
+        String key = registry.register("this is not a grammar\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(Exception.class, () -> registry.get(key));
+        assertThrows(Exception.class, () -> registry.get(key));
+        assertFalse(registry.isResident(key));
+        assertThrows(Exception.class, () -> registry.get("no such grammar"));
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LALRParserTest {
+
+    // The classic grammar that is LALR(1) but not SLR(1): Follow(R) contains eq, but after an L on its own only $ can
+    private static final String GRAMMAR =
+            "S -> A $\n" +
+            "A -> L eq R\n" +
+            "   | R\n" +
+            "L -> star R\n" +
+            "   | id\n" +
+            "R -> L\n";
+
+    /**
+     * Tests that LALRParser resolves the shift/reduce conflict SLRParser has on eq
+     * @throws Exception
+     */
+    @Test
+    void testLookaheads() throws Exception {
+        AlphabetCharacter L = new AlphabetCharacter("L");
+        AlphabetCharacter eq = new AlphabetCharacter("eq");
+        AlphabetCharacter end = new AlphabetCharacter("$");
+
+        SLRParser slrParser = new SLRParser(new CFG(new StringReader(GRAMMAR)));
+        int slrState = slrParser.getTransitions(0).get(L);
+        assertEquals(SLRAction.SLRActionEnum.ReduceWith, slrParser.slrActionTable.get(slrState).get(eq).action);
+
+        LALRParser lalrParser = new LALRParser(new CFG(new StringReader(GRAMMAR)));
+        int lalrState = lalrParser.getTransitions(0).get(L);
+        Map<AlphabetCharacter, SLRAction> row = lalrParser.slrActionTable.get(lalrState);
+        assertEquals(SLRAction.SLRActionEnum.ShiftAndGoTo, row.get(eq).action);
+        assertEquals(SLRAction.SLRActionEnum.ReduceWith, row.get(end).action);
+        assertEquals(new AlphabetCharacter("R"), row.get(end).productionRuleReducedWith.lhs);
+
+        // Same LR(0) automaton either way
+        assertEquals(slrParser.canonicalItemSets.size(), lalrParser.canonicalItemSets.size());
+    }
+
+    /**
+     * Tests that a non-terminal without rules isn't taken for a terminal: it can never be read, so nothing is reduced
+     * on it
+     * @throws Exception
+     */
+    @Test
+    void testUndefinedNonTerminalIsNotALookahead() throws Exception {
+        AlphabetCharacter b = new AlphabetCharacter("b");
+        AlphabetCharacter c = new AlphabetCharacter("c");
+        AlphabetCharacter X = new AlphabetCharacter("X");
+
+        // X never gets any rules
+        LALRParser lalrParser = new LALRParser(new CFG(new StringReader("S -> A $\nA -> B X\n   | B c\nB -> b\n")));
+        Map<AlphabetCharacter, SLRAction> row = lalrParser.slrActionTable.get(lalrParser.getTransitions(0).get(b));
+        assertEquals(SLRAction.SLRActionEnum.ReduceWith, row.get(c).action);
+        assertNull(row.get(X));
+    }
+}
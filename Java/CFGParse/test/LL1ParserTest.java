@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LL1ParserTest {
+
+    /**
+     * Tests that one parser can be used over and over, and that every parse gets a tree of its own
+     * @throws Exception
+     */
+    @Test
+    void testReuse() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+
+        ParseTreeNode first = parser.LLTabularParsing(TestUtil.tokens("a", "b", "b", "d", "c", "$"), cfg.getStartingSymbol());
+        ParseTreeNode second = parser.LLTabularParsing(TestUtil.tokens("q", "$"), cfg.getStartingSymbol());
+
+        assertEquals("S(A(a B(b B(b B)) C d) C(c) $)", TestUtil.toString(first));
+        assertEquals("S(A(B Q(q)) C $)", TestUtil.toString(second));
+        assertThrows(LLParseException.class, () -> parser.LLTabularParsing(TestUtil.tokens("a", "q", "$"), cfg.getStartingSymbol()));
+        assertEquals("S(A(B Q(q)) C $)", TestUtil.toString(parser.LLTabularParsing(TestUtil.tokens("q", "$"), cfg.getStartingSymbol())));
+    }
+
+    /**
+     * Tests one parser shared by several threads
+     * @throws Exception
+     */
+    @Test
+    void testConcurrentParses() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String[] input = i % 2 == 0 ? new String[] {"a", "b", "d", "$"} : new String[] {"b", "b", "c", "$"};
+                results.add(pool.submit(() -> TestUtil.toString(parser.LLTabularParsing(TestUtil.tokens(input), cfg.getStartingSymbol()))));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i % 2 == 0 ? "S(A(a B(b B) C d) C $)" : "S(A(B(b B(b B)) Q) C(c) $)", results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests the events a listener gets, and that they match the tree
+     * @throws Exception
+     */
+    @Test
+    void testListener() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        StringBuilder events = new StringBuilder();
+
+        parser.parse(TestUtil.tokens("a", "b", "d", "$"), cfg.getStartingSymbol(), new ParseListener() {
+            @Override
+            public void enterNonterminal(AlphabetCharacter nonTerminal, ProductionRule rule) {
+                assertEquals(nonTerminal, rule.lhs);
+                events.append(nonTerminal).append("(");
+            }
+
+            @Override
+            public void terminal(AlphabetCharacter terminal) {
+                events.append(terminal).append(" ");
+            }
+
+            @Override
+            public void exitNonterminal(AlphabetCharacter nonTerminal) {
+                events.append(")").append(nonTerminal).append(" ");
+            }
+        });
+
+        assertEquals("S(A(a B(b B()B )B C()C d )A C()C $ )S ", events.toString());
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LR1ParserTest {
+
+    // LR(1) but not LALR(1): after "a e" and "b e" the same LR(0) state has to reduce E on c in one, F on c in the other
+    private static final String GRAMMAR =
+            "S -> X $\n" +
+            "X -> a E c\n" +
+            "   | a F d\n" +
+            "   | b F c\n" +
+            "   | b E d\n" +
+            "E -> e\n" +
+            "F -> e\n";
+
+    /**
+     * Tests that the state LALR(1) would merge stays split, and the reductions it needs are there
+     * @throws Exception
+     */
+    @Test
+    void testSplitsIncompatibleStates() throws Exception {
+        LR1Parser lr1Parser = new LR1Parser(new CFG(new StringReader(GRAMMAR)));
+        AlphabetCharacter c = new AlphabetCharacter("c");
+        AlphabetCharacter d = new AlphabetCharacter("d");
+        AlphabetCharacter e = new AlphabetCharacter("e");
+
+        assertEquals(0, lr1Parser.getConflictCount());
+        assertEquals(lr1Parser.getLR0StateCount() + 1, lr1Parser.getStateCount());
+
+        int afterAE = lr1Parser.getTransitions(lr1Parser.getTransitions(0).get(new AlphabetCharacter("a"))).get(e);
+        int afterBE = lr1Parser.getTransitions(lr1Parser.getTransitions(0).get(new AlphabetCharacter("b"))).get(e);
+        assertNotEquals(afterAE, afterBE);
+
+        Map<AlphabetCharacter, SLRAction> row = lr1Parser.actionTable.get(afterAE);
+        assertEquals(new AlphabetCharacter("E"), row.get(c).productionRuleReducedWith.lhs);
+        assertEquals(new AlphabetCharacter("F"), row.get(d).productionRuleReducedWith.lhs);
+
+        row = lr1Parser.actionTable.get(afterBE);
+        assertEquals(new AlphabetCharacter("F"), row.get(c).productionRuleReducedWith.lhs);
+        assertEquals(new AlphabetCharacter("E"), row.get(d).productionRuleReducedWith.lhs);
+    }
+
+    /**
+     * Tests that an LALR(1) grammar doesn't get any more states than its LR(0) automaton
+     * @throws Exception
+     */
+    @Test
+    void testMergesCompatibleStates() throws Exception {
+        CFG cfg = new CFG("postfix-grammar.cfg");
+        LR1Parser lr1Parser = new LR1Parser(cfg);
+
+        assertEquals(new SLRParser(cfg).canonicalItemSets.size(), lr1Parser.getStateCount());
+        assertEquals(lr1Parser.getLR0StateCount(), lr1Parser.getStateCount());
+        assertEquals(0, lr1Parser.getConflictCount());
+    }
+
+    /**
+     * Tests that a grammar whose starting symbol has more than one rule is rejected, since there's no augmented
+     * starting rule to accept with
+     * @throws Exception
+     */
+    @Test
+    void testRejectsSeveralStartingRules() throws Exception {
+        CFG cfg = new CFG(new StringReader("S -> a $\n   | b $\n"));
+        Exception e = assertThrows(Exception.class, () -> new LR1Parser(cfg));
+        assertTrue(e.getMessage().contains("exactly one rule"), e.getMessage());
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LRTableTest {
+
+    /**
+     * Tests that every action of the map-based table survives compression, both through the int lookups and the
+     * map adapter
+     * @throws Exception
+     */
+    @Test
+    void testCompress() throws Exception {
+        CFG cfg = new CFG("biglanguage.cfg");
+        SLRParser slrParser = new SLRParser(cfg);
+        LRTable table = LRTable.compress(slrParser);
+        SymbolTable symbols = cfg.getSymbolTable();
+
+        assertEquals(slrParser.canonicalItemSets.size(), table.getStateCount());
+        for (Map.Entry<Integer, Map<AlphabetCharacter, SLRAction>> row : slrParser.slrActionTable.entrySet()) {
+            int state = row.getKey();
+            for (Map.Entry<AlphabetCharacter, SLRAction> cell : row.getValue().entrySet()) {
+                SLRAction expected = cell.getValue();
+                int symbol = symbols.idOf(cell.getKey());
+                assertEquals(expected, table.getActionTable().get(state).get(cell.getKey()));
+
+                int action = table.action(state, symbol);
+                switch (expected.action) {
+                    case ShiftAndGoTo:
+                        if (cfg.getProductionsOf(symbol) != null) {
+                            assertEquals(expected.goToItemSet, table.goTo(state, symbol));
+                        } else {
+                            assertEquals(LRTable.SHIFT, LRTable.kindOf(action));
+                            assertEquals(expected.goToItemSet, LRTable.argumentOf(action));
+                        }
+                        break;
+
+                    case ReduceWith:
+                        assertEquals(LRTable.REDUCE, LRTable.kindOf(action));
+                        assertEquals(expected.productionRuleReducedWith.getIndex(), LRTable.argumentOf(action));
+                        break;
+
+                    case ReduceWithAndAccept:
+                        assertEquals(LRTable.ACCEPT, LRTable.kindOf(table.defaultAction(state)));
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the encoding of actions, and that a state without any reductions still reports errors
+     * @throws Exception
+     */
+    @Test
+    void testEncoding() throws Exception {
+        int shift = LRTable.encode(LRTable.SHIFT, 12345);
+        assertEquals(LRTable.SHIFT, LRTable.kindOf(shift));
+        assertEquals(12345, LRTable.argumentOf(shift));
+
+        int accept = LRTable.encode(LRTable.ACCEPT, 0);
+        assertEquals(LRTable.ACCEPT, LRTable.kindOf(accept));
+        assertEquals(0, LRTable.argumentOf(accept));
+
+        // State 0 of postfix-grammar.cfg only shifts
+        CFG cfg = new CFG("postfix-grammar.cfg");
+        LRTable table = LRTable.compress(new SLRParser(cfg));
+        assertEquals(LRTable.ERROR, table.action(0, cfg.getSymbolTable().idOf(new AlphabetCharacter("$"))));
+        assertEquals(LRTable.ERROR, table.defaultAction(0));
+    }
+}
@@ -0,0 +1,184 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazySLRTableTest {
+
+    private static String parse(ShiftReduceParser parser, Queue<AlphabetCharacter> tokens) {
+        try {
+            return TestUtil.toString(parser.parse(new ArrayDeque<>(tokens)));
+        } catch (LRParseException e) {
+            return "error";
+        }
+    }
+
+    /**
+     * A random sentence of the grammar: a leftmost derivation that takes the rule that ends soonest once it's deep
+     * enough
+     */
+    private static Queue<AlphabetCharacter> sentence(CFG cfg, Random random) {
+        // symbol -> the height of its shortest derivation tree (0 for terminals)
+        int[] height = new int[cfg.getSymbolTable().size()];
+        for (AlphabetCharacter A : cfg.getNonTerminals()) {
+            height[A.id] = Integer.MAX_VALUE;
+        }
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (ProductionRule p : cfg.getProductionRules()) {
+                int h = heightOf(p, height);
+                if (h < height[p.lhs.id]) {
+                    height[p.lhs.id] = h;
+                    changed = true;
+                }
+            }
+        }
+
+        Queue<AlphabetCharacter> result = new ArrayDeque<>();
+        derive(cfg, cfg.getStartingSymbol(), 0, height, random, result);
+        return result;
+    }
+
+    private static int heightOf(ProductionRule p, int[] height) {
+        int h = 0;
+        for (AlphabetCharacter x : p.rhs) {
+            h = Math.max(h, height[x.id]);
+        }
+
+        return h == Integer.MAX_VALUE ? h : h + 1;
+    }
+
+    private static void derive(CFG cfg, AlphabetCharacter symbol, int depth, int[] height, Random random,
+                               Queue<AlphabetCharacter> out) {
+        List<ProductionRule> rules = cfg.getProductionsOf(symbol);
+        if (rules == null) {
+            if (!symbol.isLambda()) {
+                out.add(new AlphabetCharacter(symbol.toString()));
+            }
+            return;
+        }
+
+        ProductionRule p = rules.get(random.nextInt(rules.size()));
+        if (depth > 6) {
+            for (ProductionRule q : rules) {
+                if (heightOf(q, height) < heightOf(p, height)) {
+                    p = q;
+                }
+            }
+        }
+        for (AlphabetCharacter x : p.rhs) {
+            derive(cfg, x, depth + 1, height, random, out);
+        }
+    }
+
+    /**
+     * The lazy table parses the same sentences to the same trees as the one SLRParser builds, and rejects the same
+     * ones
+     * @throws Exception
+     */
+    @Test
+    void testSameTreesAsSLRParser() throws Exception {
+        String[] grammars = {
+                "fisher-5-2-predict-set-example.cfg",
+                "renasexample.cfg",
+                "postfix-grammar.cfg",
+        };
+        Random random = new Random(25);
+
+        for (String file : grammars) {
+            CFG cfg = new CFG(file);
+            ShiftReduceParser eager = new ShiftReduceParser(new SLRParser(cfg));
+            ShiftReduceParser lazy = new ShiftReduceParser(new LazySLRTable(cfg));
+
+            for (int i = 0; i < 200; i++) {
+                // renasexample.cfg isn't SLR(1), so some of its sentences are rejected; both should agree on which
+                Queue<AlphabetCharacter> tokens = sentence(cfg, random);
+                assertEquals(parse(eager, tokens), parse(lazy, tokens), file + " " + tokens);
+
+                // Dropping a token almost never leaves a sentence
+                List<AlphabetCharacter> broken = new ArrayList<>(tokens);
+                broken.remove(random.nextInt(broken.size()));
+                assertEquals(parse(eager, new ArrayDeque<>(broken)), parse(lazy, new ArrayDeque<>(broken)),
+                        file + " " + broken);
+            }
+        }
+    }
+
+    /**
+     * States are only built as parses reach them, and the rows are kept for the next parse
+     * @throws Exception
+     */
+    @Test
+    void testStatesBuiltOnDemand() throws Exception {
+        CFG cfg = new CFG(new StringReader("S -> E $\nE -> E plus T\n   | T\nT -> num\n   | lparen E rparen\n"));
+        LazySLRTable table = new LazySLRTable(cfg);
+        ShiftReduceParser parser = new ShiftReduceParser(table);
+        int allStates = new SLRParser(cfg).canonicalItemSets.size();
+
+        assertEquals(0, table.getMaterializedStateCount());
+        assertEquals("S(E(T(num)) $)", TestUtil.toString(parser.parse(TestUtil.tokens("num", "$"))));
+        int used = table.getMaterializedStateCount();
+        assertTrue(used > 0 && used < allStates, used + " of " + allStates);
+
+        // The same input again needs nothing new
+        parser.parse(TestUtil.tokens("num", "$"));
+        assertEquals(used, table.getMaterializedStateCount());
+
+        assertEquals("S(E(E(T(lparen E(T(num)) rparen)) plus T(num)) $)",
+                TestUtil.toString(parser.parse(TestUtil.tokens("lparen", "num", "rparen", "plus", "num", "$"))));
+        assertTrue(table.getStateCount() <= allStates);
+        assertThrows(LRParseException.class, () -> parser.parse(TestUtil.tokens("num", "plus", "$")));
+    }
+
+    /**
+     * Parses on many threads at once share one table, and all get the right trees
+     * @throws Exception
+     */
+    @Test
+    void testConcurrentParses() throws Exception {
+        CFG cfg = new CFG(new StringReader("S -> E $\nE -> E plus T\n   | T\nT -> num\n   | lparen E rparen\n"));
+        ShiftReduceParser eager = new ShiftReduceParser(new SLRParser(cfg));
+        ShiftReduceParser lazy = new ShiftReduceParser(new LazySLRTable(cfg));
+
+        List<Queue<AlphabetCharacter>> sentences = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 400; i++) {
+            sentences.add(sentence(cfg, random));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (Queue<AlphabetCharacter> sentence : sentences) {
+                results.add(pool.submit(() -> parse(lazy, sentence)));
+            }
+
+            for (int i = 0; i < sentences.size(); i++) {
+                assertEquals(parse(eager, sentences.get(i)), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a grammar whose starting symbol has more than one rule is rejected, since there's no augmented
+     * starting rule to accept with
+     * @throws Exception
+     */
+    @Test
+    void testRejectsSeveralStartingRules() throws Exception {
+        CFG cfg = new CFG(new StringReader("S -> a $\n   | b $\n"));
+        Exception e = assertThrows(Exception.class, () -> new LazySLRTable(cfg));
+        assertTrue(e.getMessage().contains("exactly one rule"), e.getMessage());
+    }
+}
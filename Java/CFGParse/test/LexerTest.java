@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexerTest {
+
+    private static List<String> lex(TokenSource tokens) throws Exception {
+        List<String> result = new ArrayList<>();
+        for (int id = tokens.next(); id != SymbolTable.EOF_ID; id = tokens.next()) {
+            result.add(id < 0 ? "?" : tokens.token().toString());
+        }
+
+        return result;
+    }
+
+    /**
+     * Tests longest match and priority. Nothing's skipped, so whitespace is an error token each time.
+     * @throws Exception
+     */
+    @Test
+    void testTokens() throws Exception {
+        CFG cfg = new CFG("renasexample.cfg");
+        Lexer lexer = new Lexer(cfg.getSymbolTable(),
+                List.of("a", "b", "c", "d", "f"),
+                List.of("zero", "=", "\\+", "[a-z]+", "[0-9]+(\\.[0-9]*)?|\\.[0-9]+"));
+
+        List<String> tokens = lex(lexer.tokens("zero zeros=x+ 1.5+.25\n\tzer0"));
+        assertEquals(List.of("a", "?", "d", "b", "d", "c", "?", "f", "c", "f", "?", "?", "d", "f"), tokens);
+    }
+
+    /**
+     * Tests skipping, offsets and text
+     * @throws Exception
+     */
+    @Test
+    void testSkip() throws Exception {
+        CFG cfg = new CFG("postfix-grammar.cfg");
+        Lexer lexer = new Lexer(cfg.getSymbolTable(), java.util.Arrays.asList("plus", "num", null),
+                List.of("\\+", "\\d+", "\\s+|#[^\\n]*"));
+
+        LexerTokenSource tokens = lexer.tokens("+ 12 # comment\n  345");
+        assertEquals(cfg.getSymbolTable().idOf("plus"), tokens.next());
+        assertEquals(cfg.getSymbolTable().idOf("num"), tokens.next());
+        assertEquals("12", tokens.text());
+        assertEquals(2, tokens.getTokenStart());
+        assertEquals(4, tokens.getTokenEnd());
+        assertEquals(cfg.getSymbolTable().idOf("num"), tokens.next());
+        assertEquals("345", tokens.text());
+        assertEquals(SymbolTable.EOF_ID, tokens.next());
+        assertEquals(SymbolTable.EOF_ID, tokens.next());
+    }
+
+    /**
+     * Tests parsing text with a lexer, from a file too
+     * @throws Exception
+     */
+    @Test
+    void testParse() throws Exception {
+        CFG cfg = new CFG("postfix-grammar.cfg");
+        Path spec = Files.createTempFile("postfix", ".lex");
+        spec.toFile().deleteOnExit();
+        Files.write(spec, "# postfix\nplus \\+\nnum [0-9]+\n%skip \\s+\n".getBytes(StandardCharsets.UTF_8));
+        Lexer lexer = Lexer.read(spec, cfg);
+
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        ParseTreeNode tree = parser.LLTabularParsing(lexer.tokens("+ 1 + 22 3"), cfg.getStartingSymbol());
+        assertEquals("START", tree.data.toString());
+        assertEquals("plus", tree.children.get(0).children.get(0).data.toString());
+
+        Path input = Files.createTempFile("input", ".txt");
+        input.toFile().deleteOnExit();
+        Files.write(input, "+ 1 + 22 3\n".getBytes(StandardCharsets.UTF_8));
+        for (long windowSize : new long[] {1, 4, 1 << 20}) {
+            try (LexerTokenSource tokens = new LexerTokenSource(lexer, input, windowSize)) {
+                assertEquals(List.of("plus", "num", "plus", "num", "num"), lex(tokens));
+            }
+        }
+        try (LexerTokenSource tokens = lexer.tokens(input)) {
+            assertEquals("START", new ShiftReduceParser(new SLRParser(cfg)).parse(tokens).data.toString());
+        }
+
+        assertThrows(LLParseException.class, () -> parser.LLTabularParsing(lexer.tokens("+ 1 - 2"), cfg.getStartingSymbol()));
+        assertThrows(Exception.class, () -> new Lexer(cfg.getSymbolTable(), List.of("E"), List.of("e")));
+        assertThrows(Exception.class, () -> new Lexer(cfg.getSymbolTable(), List.of("num"), List.of("[0-9")));
+    }
+}
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedTokenSourceTest {
+    /**
+     * Tests reading tokens, across window boundaries too
+     * @throws Exception
+     */
+    @Test
+    void testNext() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        SymbolTable symbols = cfg.getSymbolTable();
+        Path file = Files.createTempFile("input", ".tok");
+        file.toFile().deleteOnExit();
+        Files.write(file, "a\n\n  b line 2\r\nzzz\ncafé\nd".getBytes(StandardCharsets.UTF_8));
+
+        for (long windowSize : new long[] {1, 3, 1 << 20}) {
+            try (MappedTokenSource tokens = new MappedTokenSource(file, symbols, windowSize)) {
+                assertEquals(symbols.idOf("a"), tokens.next());
+                assertEquals(symbols.idOf("b"), tokens.next());
+                assertEquals("b", tokens.token().toString());
+                assertEquals(-1, tokens.next());
+                assertEquals("zzz", tokens.token().toString());
+                assertEquals(-1, tokens.next());
+                assertEquals("café", tokens.token().toString());
+                assertEquals(symbols.idOf("d"), tokens.next());
+                assertEquals(SymbolTable.EOF_ID, tokens.next());
+                assertEquals(SymbolTable.EOF_ID, tokens.next());
+                assertTrue(tokens.token().isEOF());
+            }
+        }
+    }
+
+    /**
+     * Tests that both parsers give the same trees from a TokenSource as from a Queue
+     * @throws Exception
+     */
+    @Test
+    void testParse() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        Path file = Files.createTempFile("input", ".tok");
+        file.toFile().deleteOnExit();
+        Files.write(file, "a\nb\nb\nd\nc\n".getBytes(StandardCharsets.UTF_8));
+
+        LL1Parser ll1 = new LL1Parser(cfg.generateParsingTable());
+        ShiftReduceParser shiftReduce = new ShiftReduceParser(new SLRParser(cfg));
+        String expected = TestUtil.toString(ll1.LLTabularParsing(ShiftReduceParser.readTokens(file), cfg.getStartingSymbol()));
+
+        try (MappedTokenSource tokens = new MappedTokenSource(file, cfg.getSymbolTable())) {
+            assertEquals(expected, TestUtil.toString(ll1.LLTabularParsing(tokens, cfg.getStartingSymbol())));
+        }
+        assertEquals(expected, TestUtil.toString(shiftReduce.parse(file)));
+
+        Files.write(file, "a\nq\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(LRParseException.class, () -> shiftReduce.parse(file));
+        try (MappedTokenSource tokens = new MappedTokenSource(file, cfg.getSymbolTable())) {
+            assertThrows(LLParseException.class, () -> ll1.LLTabularParsing(tokens, cfg.getStartingSymbol()));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseServerTest {
+
+    private static byte[] parseRequest(int id, String grammar, String... tokens) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(id);
+        out.writeUTF(grammar);
+        out.writeByte(ParseServer.PARSE_TOKENS);
+        out.writeInt(tokens.length);
+        for (String token : tokens) {
+            out.writeUTF(token);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    private static byte[] symbolsRequest(int id, String grammar) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(id);
+        out.writeUTF(grammar);
+        out.writeByte(ParseServer.SYMBOLS);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decodes a response. A tree is written out with its labels, like "S(A(a B C d) C $)", symbols as their labels
+     * (labels == null), and an error as its status and message.
+     */
+    private static String decode(byte[] frame, String[] labels) throws IOException {
+        DataInputStream response = new DataInputStream(new ByteArrayInputStream(frame));
+        response.readInt();
+        byte status = response.readByte();
+        if (status != ParseServer.OK) {
+            return status + " " + response.readUTF();
+        }
+
+        int size = response.readInt();
+        if (labels == null) {
+            StringBuilder symbols = new StringBuilder();
+            for (int s = 0; s < size; s++) {
+                symbols.append(response.readUTF()).append(" ");
+            }
+            return symbols.toString().trim();
+        }
+
+        int[] nodes = new int[2 * size];
+        for (int n = 0; n < 2 * size; n++) {
+            nodes[n] = response.readInt();
+        }
+        StringBuilder tree = new StringBuilder();
+        writeTree(nodes, new int[1], labels, tree);
+        return tree.toString();
+    }
+
+    private static int idOf(byte[] frame) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(frame)).readInt();
+    }
+
+    private static String[] labels(ParseServer server, String grammar) throws IOException {
+        return decode(server.handle(symbolsRequest(0, grammar)), null).split(" ");
+    }
+
+    private static void writeTree(int[] nodes, int[] next, String[] labels, StringBuilder out) {
+        int node = next[0]++;
+        out.append(labels[nodes[2 * node]]);
+        int children = nodes[2 * node + 1];
+        if (children > 0) {
+            out.append("(");
+            for (int c = 0; c < children; c++) {
+                if (c > 0) {
+                    out.append(" ");
+                }
+                writeTree(nodes, next, labels, out);
+            }
+            out.append(")");
+        }
+    }
+
+    private static ParseServer server(ExecutorService pool) throws Exception {
+        ParseServer server = new ParseServer(pool);
+        server.addGrammar("fisher", CompiledGrammar.build(new CFG("fisher-5-2-predict-set-example.cfg")));
+        // Not LL(1), so parsed with its SLR table
+        server.addGrammar("renas", CompiledGrammar.build(new CFG("renasexample.cfg")));
+        return server;
+    }
+
+    /**
+     * Tests a client sending several requests at once over a stream
+     * @throws Exception
+     */
+    @Test
+    void testServe() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ParseServer server = server(pool);
+            String[] fisher = labels(server, "fisher");
+            String[] renas = labels(server, "renas");
+            assertEquals("lambda", fisher[0]);
+            assertEquals("$", fisher[1]);
+
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(requests);
+            ParseServer.writeFrame(out, symbolsRequest(1, "fisher"));
+            ParseServer.writeFrame(out, parseRequest(2, "fisher", "a", "b", "d", "$"));
+            ParseServer.writeFrame(out, parseRequest(3, "fisher", "a", "q"));
+            ParseServer.writeFrame(out, parseRequest(4, "nope", "a"));
+            ParseServer.writeFrame(out, parseRequest(5, "renas", "a", "b"));
+            ParseServer.writeFrame(out, parseRequest(6, "renas", "a", "b", "b", "q"));
+
+            ByteArrayOutputStream responses = new ByteArrayOutputStream();
+            server.serve(new ByteArrayInputStream(requests.toByteArray()), responses);
+
+            // They can come back in any order
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+            Map<Integer, String> results = new HashMap<>();
+            for (int r = 0; r < 6; r++) {
+                byte[] response = ParseServer.readFrame(in);
+                int id = idOf(response);
+                results.put(id, decode(response, id == 1 ? null : id >= 5 ? renas : fisher));
+            }
+            assertEquals(-1, in.read());
+
+            assertEquals(String.join(" ", fisher), results.get(1));
+            assertEquals("S(A(a B(b B) C d) C $)", results.get(2));
+            assertTrue(results.get(3).startsWith(ParseServer.PARSE_ERROR + " "), results.get(3));
+            assertTrue(results.get(4).startsWith(ParseServer.BAD_REQUEST + " "), results.get(4));
+            assertEquals("S(a b A $)", results.get(5));
+            assertTrue(results.get(6).startsWith(ParseServer.PARSE_ERROR + " "), results.get(6));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests a client on a loopback socket
+     * @throws Exception
+     */
+    @Test
+    void testSocket() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            ParseServer server = server(pool);
+            Thread listener = new Thread(() -> {
+                try {
+                    server.listen(socket);
+                } catch (IOException e) {
+                    // Closed
+                }
+            });
+            listener.start();
+
+            String[] labels = labels(server, "fisher");
+            try (Socket client = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort())) {
+                DataOutputStream out = new DataOutputStream(client.getOutputStream());
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                for (int i = 0; i < 20; i++) {
+                    ParseServer.writeFrame(out, parseRequest(i, "fisher", "q"));
+                }
+                out.flush();
+
+                Map<Integer, String> results = new HashMap<>();
+                for (int r = 0; r < 20; r++) {
+                    byte[] response = ParseServer.readFrame(in);
+                    results.put(idOf(response), decode(response, labels));
+                }
+                assertEquals(20, results.size());
+                for (String tree : results.values()) {
+                    assertEquals("S(A(B Q(q)) C $)", tree);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that an error message too long for writeUTF() is cut short rather than lost
+     * @throws Exception
+     */
+    @Test
+    void testLongErrorMessage() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            ParseServer server = server(pool);
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 65000; i++) {
+                name.append('x');
+            }
+
+            byte[] response = server.handle(parseRequest(7, name.toString(), "a"));
+            assertEquals(7, idOf(response));
+            String result = decode(response, null);
+            assertTrue(result.startsWith(ParseServer.BAD_REQUEST + " No grammar called xxx"), result.substring(0, 40));
+
+            // A surrogate pair that doesn't fit isn't split
+            while (name.length() < 65532) {
+                name.append('x');
+            }
+            String cut = ParseServer.truncate(name + "\uD83D\uDE00");
+            assertEquals(65532, cut.length());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that requests the pool won't take are answered, instead of being waited for forever
+     * @throws Exception
+     */
+    @Test
+    void testRejectedRequests() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ParseServer server = server(pool);
+        pool.shutdown();
+
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(requests);
+        ParseServer.writeFrame(out, parseRequest(1, "fisher", "a", "b", "d", "$"));
+        ParseServer.writeFrame(out, parseRequest(2, "fisher", "q"));
+
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream(requests.toByteArray()), responses);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(responses.toByteArray()));
+        for (int id = 1; id <= 2; id++) {
+            byte[] response = ParseServer.readFrame(in);
+            assertEquals(id, idOf(response));
+            assertTrue(decode(response, null).startsWith(ParseServer.BAD_REQUEST + " "));
+        }
+        assertEquals(-1, in.read());
+    }
+}
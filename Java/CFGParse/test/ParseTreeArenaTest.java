@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseTreeArenaTest {
+
+    /**
+     * Tests navigating an arena filled in by LL1Parser
+     * @throws Exception
+     */
+    @Test
+    void testNavigation() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        ParseTreeArena arena = new ParseTreeArena(cfg.getSymbolTable());
+
+        // S(A(a B(b B) C d) C $)
+        parser.parse(TestUtil.tokens("a", "b", "d", "$"), cfg.getStartingSymbol(), arena);
+
+        assertEquals(10, arena.size());
+        assertEquals(4, arena.getTokenCount());
+
+        int s = arena.getRoot();
+        assertEquals("S", arena.getSymbol(s).toString());
+        assertEquals(ParseTreeArena.NONE, arena.parentOf(s));
+        assertEquals(3, arena.childCountOf(s));
+
+        int a = arena.firstChildOf(s);
+        assertEquals("A", arena.getSymbol(a).toString());
+        assertFalse(arena.isToken(a));
+        assertEquals(s, arena.parentOf(a));
+
+        int terminalA = arena.firstChildOf(a);
+        assertEquals("a", arena.getSymbol(terminalA).toString());
+        assertEquals(0, arena.tokenIndexOf(terminalA));
+
+        int d = arena.nextSiblingOf(arena.nextSiblingOf(arena.nextSiblingOf(terminalA)));
+        assertEquals("d", arena.getSymbol(d).toString());
+        assertEquals(2, arena.tokenIndexOf(d));
+        assertEquals(ParseTreeArena.NONE, arena.nextSiblingOf(d));
+
+        int eof = arena.nextSiblingOf(arena.nextSiblingOf(a));
+        assertEquals(SymbolTable.EOF_ID, arena.symbolOf(eof));
+        assertEquals(3, arena.tokenIndexOf(eof));
+        assertEquals(eof, arena.subtreeEnd(arena.nextSiblingOf(a)));
+        assertEquals(arena.size(), arena.subtreeEnd(s));
+    }
+
+    /**
+     * Tests that the adapter gives the same tree as LLTabularParsing, and that the arena can be reused
+     * @throws Exception
+     */
+    @Test
+    void testToParseTreeNode() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        ParseTreeArena arena = new ParseTreeArena(cfg.getSymbolTable());
+
+        String[][] inputs = {{"a", "b", "b", "d", "c", "$"}, {"q", "$"}, {"a", "d", "$"}};
+        for (String[] input : inputs) {
+            arena.clear();
+            parser.parse(TestUtil.tokens(input), cfg.getStartingSymbol(), arena);
+
+            ParseTreeNode expected = parser.LLTabularParsing(TestUtil.tokens(input), cfg.getStartingSymbol());
+            assertEquals(TestUtil.toString(expected), TestUtil.toString(arena.toParseTreeNode()));
+        }
+
+        // A subtree: A(a B C d) of the last parse
+        assertEquals("A(a B C d)", TestUtil.toString(arena.toParseTreeNode(arena.firstChildOf(arena.getRoot()))));
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -72,6 +73,25 @@ class SLRParserTest {
         assertEquals(expected.size(), canonicalItemSets.size());
     }
 
+    /**
+     * Every recorded transition should lead to GoTo() of its item set, and no item set should be built twice
+     * @throws Exception
+     */
+    @Test
+    void testTransitions() throws Exception {
+        CFG cfg = new CFG("biglanguage.cfg");
+        SLRParser slrParser = new SLRParser(cfg);
+        ArrayList<Set<SLRItem>> canonicalItemSets = slrParser.canonicalItemSets;
+
+        assertEquals(canonicalItemSets.size(), new HashSet<>(canonicalItemSets).size());
+        for (int i = 0; i < canonicalItemSets.size(); i++) {
+            for (Map.Entry<AlphabetCharacter, Integer> transition : slrParser.getTransitions(i).entrySet()) {
+                Set<SLRItem> expected = slrParser.gotoItem(canonicalItemSets.get(i), transition.getKey());
+                assertEquals(expected, canonicalItemSets.get(transition.getValue()));
+            }
+        }
+    }
+
     @Test
     void testSLRActionTable() throws Exception {
         CFG cfg = new CFG("postfix-grammar.cfg");
@@ -129,4 +149,26 @@ class SLRParserTest {
         Set<SLRItem> goto_0_num = slrParser.gotoItem(itemSet0, new AlphabetCharacter("num"));
         assertEquals(expected, goto_0_num);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that building on a ForkJoinPool numbers the item sets and fills the table exactly like building on one thread
+     * @throws Exception
+     */
+    @Test
+    void testParallelConstruction() throws Exception {
+        CFG cfg = new CFG("biglanguage.cfg");
+        SLRParser sequential = new SLRParser(cfg);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            SLRParser parallel = new SLRParser(cfg, pool);
+            assertEquals(sequential.canonicalItemSets, parallel.canonicalItemSets);
+            assertEquals(sequential.slrActionTable, parallel.slrActionTable);
+            for (int i = 0; i < sequential.canonicalItemSets.size(); i++) {
+                assertEquals(sequential.getTransitions(i), parallel.getTransitions(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
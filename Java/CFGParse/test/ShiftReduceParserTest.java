@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShiftReduceParserTest {
+
+    /**
+     * Tests that the shift-reduce parser builds the same tree as LL1Parser on an LL(1) grammar
+     * @throws Exception
+     */
+    @Test
+    void testSameTreeAsLL1Parser() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        ShiftReduceParser parser = new ShiftReduceParser(new SLRParser(cfg));
+
+        ParseTreeNode actual = parser.parse(TestUtil.tokens("a", "b", "b", "d", "c", "$"));
+        ParseTreeNode expected = new LL1Parser(cfg.generateParsingTable())
+                .LLTabularParsing(TestUtil.tokens("a", "b", "b", "d", "c", "$"), cfg.getStartingSymbol());
+
+        assertEquals("S(A(a B(b B(b B)) C d) C(c) $)", TestUtil.toString(actual));
+        assertEquals(TestUtil.toString(expected), TestUtil.toString(actual));
+    }
+
+    /**
+     * Tests a grammar that isn't LL(1) (it's left-recursive), and a syntax error
+     * @throws Exception
+     */
+    @Test
+    void testLeftRecursion() throws Exception {
+        CFG cfg = new CFG(new StringReader("S -> E $\nE -> E plus num\n   | num\n"));
+        ShiftReduceParser parser = new ShiftReduceParser(new LALRParser(cfg));
+
+        assertEquals("S(E(E(E(num) plus num) plus num) $)",
+                TestUtil.toString(parser.parse(TestUtil.tokens("num", "plus", "num", "plus", "num", "$"))));
+        assertThrows(LRParseException.class, () -> parser.parse(TestUtil.tokens("num", "plus", "plus", "$")));
+        assertThrows(LRParseException.class, () -> parser.parse(TestUtil.tokens("num", "times", "num", "$")));
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Helpers the parser tests share
+ */
+final class TestUtil {
+    private TestUtil() {
+    }
+
+    /**
+     * @param labels - the tokens' labels
+     * @return a token stream with those tokens, in order
+     */
+    static Queue<AlphabetCharacter> tokens(String... labels) {
+        Queue<AlphabetCharacter> result = new ArrayDeque<>();
+        for (String label : labels) {
+            result.add(new AlphabetCharacter(label));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param node - the root of a parse tree
+     * @return the tree as "label(child child ...)", e.g. "S(E(T(num)) $)"
+     */
+    static String toString(ParseTreeNode node) {
+        StringBuilder result = new StringBuilder(node.data.toString());
+        if (!node.children.isEmpty()) {
+            result.append("(");
+            for (ParseTreeNode child : node.children) {
+                result.append(toString(child)).append(" ");
+            }
+            result.setLength(result.length() - 1);
+            result.append(")");
+        }
+
+        return result.toString();
+    }
+}
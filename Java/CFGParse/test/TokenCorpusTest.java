@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCorpusTest {
+
+    private static Path tokFile(String contents) throws Exception {
+        Path file = Files.createTempFile("input", ".tok");
+        file.toFile().deleteOnExit();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Tests that a corpus gives back the tokens of the .tok files it was made from, across chunks too
+     * @throws Exception
+     */
+    @Test
+    void testRoundTrip() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        SymbolTable symbols = cfg.getSymbolTable();
+        List<Path> files = List.of(tokFile("a\nb\nb\nd\nc\n"), tokFile(""), tokFile("q\nzzz\nq\n"));
+        Path corpusFile = Files.createTempFile("corpus", ".tokc");
+        corpusFile.toFile().deleteOnExit();
+
+        TokenCorpus.write(corpusFile, symbols, files);
+
+        for (long chunkSize : new long[] {4, 1 << 20}) {
+            try (TokenCorpus corpus = TokenCorpus.open(corpusFile, symbols, chunkSize)) {
+                assertEquals(3, corpus.size());
+                assertEquals(5, corpus.byteSizeOf(0));
+                assertEquals(0, corpus.byteSizeOf(1));
+
+                for (int i = 0; i < corpus.size(); i++) {
+                    List<String> expected = new ArrayList<>();
+                    try (MappedTokenSource tokens = new MappedTokenSource(files.get(i), symbols)) {
+                        for (int id = tokens.next(); id != SymbolTable.EOF_ID; id = tokens.next()) {
+                            expected.add(id + " " + tokens.token());
+                        }
+                    }
+
+                    List<String> actual = new ArrayList<>();
+                    TokenSource tokens = corpus.stream(i);
+                    for (int id = tokens.next(); id != SymbolTable.EOF_ID; id = tokens.next()) {
+                        actual.add(id + " " + tokens.token());
+                    }
+                    assertEquals(expected, actual);
+                    assertEquals(SymbolTable.EOF_ID, tokens.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests parsing streams of a corpus, with a grammar other than the one it was made with
+     * @throws Exception
+     */
+    @Test
+    void testParse() throws Exception {
+        CFG cfg = new CFG("fisher-5-2-predict-set-example.cfg");
+        Path corpusFile = Files.createTempFile("corpus", ".tokc");
+        corpusFile.toFile().deleteOnExit();
+        TokenCorpus.write(corpusFile, new SymbolTable(), List.of(tokFile("a\nb\nb\nd\nc\n"), tokFile("a\nq\n")));
+
+        LL1Parser parser = new LL1Parser(cfg.generateParsingTable());
+        ShiftReduceParser shiftReduce = new ShiftReduceParser(new SLRParser(cfg));
+        try (TokenCorpus corpus = TokenCorpus.open(corpusFile, cfg.getSymbolTable())) {
+            ParseTreeNode ll = parser.LLTabularParsing(corpus.stream(0), cfg.getStartingSymbol());
+            ParseTreeNode lr = shiftReduce.parse(corpus.stream(0));
+            assertEquals("S", ll.data.toString());
+            assertEquals(5, ll.children.get(0).children.size() + ll.children.get(1).children.size());
+            assertEquals(ll.children.size(), lr.children.size());
+
+            assertThrows(LLParseException.class, () -> parser.LLTabularParsing(corpus.stream(1), cfg.getStartingSymbol()));
+            assertThrows(LRParseException.class, () -> shiftReduce.parse(corpus.stream(1)));
+            assertThrows(IndexOutOfBoundsException.class, () -> corpus.stream(2));
+        }
+    }
+}